@@ -0,0 +1,364 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import net.webtide.github.releasedrafter.discovery.PullRequestStore;
+import net.webtide.github.releasedrafter.http.RateLimitScheduler;
+import net.webtide.github.releasedrafter.http.RequestMeter;
+import net.webtide.github.releasedrafter.release.ReleaseIndex;
+import org.kohsuke.github.GHBranch;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GitHub;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Refresh the drafts of all the branches matching a glob, in one run.
+ * <p>
+ * Only the branches that already have a draft are refreshed, unless {@link #setCreateDrafts(boolean) asked to create them},
+ * so a wide glob doesn't create a draft for every feature (or dependabot) branch.
+ * </p>
+ * <p>
+ * The releases are scanned once for all the branches, the connection (and its rate limit budget)
+ * and the store of the pull requests already seen are shared, and the config of branches pointing
+ * to the same file is parsed once.
+ * The branches are refreshed {@code concurrency} at a time. Once the budget reserved for writes is reached,
+ * the branches not started yet are skipped.
+ * </p>
+ * <p>
+ * In the glob, {@code *} and {@code ?} don't match {@code /}, {@code **} matches anything.
+ * </p>
+ */
+public class BranchBatch implements Closeable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(BranchBatch.class);
+    public static final String ALL_BRANCHES = "**";
+    public static final int DEFAULT_CONCURRENCY = 2;
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    private final GitHub github;
+    private final GHRepository repo;
+    private final GHRepository draftRepo;
+    private final Pattern branches;
+    private final Map<String, String> heads = new TreeMap<>();
+    private int concurrency = DEFAULT_CONCURRENCY;
+    private boolean createDrafts;
+    private ReleaseIndex releases;
+    private PullRequestStore store;
+    private long startNanos;
+    private long elapsedNanos;
+
+    /**
+     * @param github the connection
+     * @param repo the repository of the branches
+     * @param draftRepo the repository the drafts are kept in
+     * @param branchGlob the branches to refresh (eg: {@code jetty-*.x}, or {@link #ALL_BRANCHES})
+     */
+    public BranchBatch(GitHub github, GHRepository repo, GHRepository draftRepo, String branchGlob)
+    {
+        this.github = github;
+        this.repo = repo;
+        this.draftRepo = draftRepo;
+        this.branches = toPattern(branchGlob);
+    }
+
+    static Pattern toPattern(String glob)
+    {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++)
+        {
+            char c = glob.charAt(i);
+            if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*')
+            {
+                regex.append(".*");
+                i++;
+            }
+            else if (c == '*')
+                regex.append("[^/]*");
+            else if (c == '?')
+                regex.append("[^/]");
+            else
+                regex.append(Pattern.quote(String.valueOf(c)));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    public GHRepository getRepository()
+    {
+        return repo;
+    }
+
+    public void setConcurrency(int concurrency)
+    {
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * @param createDrafts true to also refresh the matching branches without a draft, creating it
+     */
+    public void setCreateDrafts(boolean createDrafts)
+    {
+        this.createDrafts = createDrafts;
+    }
+
+    public boolean matches(String branch)
+    {
+        return branches.matcher(branch).matches();
+    }
+
+    /**
+     * List the matching branches, scan the releases and open the pull request store,
+     * for the branches to be {@link #refresh(String) refreshed}.
+     *
+     * @return the matching branches (with a draft, unless creating them), in name order
+     */
+    public synchronized List<String> prepare() throws IOException
+    {
+        if (releases != null)
+            return new ArrayList<>(heads.keySet());
+
+        startNanos = System.nanoTime();
+        for (GHBranch branch : repo.getBranches().values())
+        {
+            if (matches(branch.getName()))
+                heads.put(branch.getName(), branch.getSHA1());
+        }
+
+        // One scan of the releases for all the branches
+        releases = ReleaseIndex.build(draftRepo);
+        if (!createDrafts)
+        {
+            int matching = heads.size();
+            heads.keySet().removeIf((name) -> releases.getActiveDraft("refs/heads/" + name) == null);
+            if (heads.size() < matching)
+                LOG.info("Skipping {} matching branches without a draft", matching - heads.size());
+        }
+        LOG.info("Refreshing the drafts of {} branches matching {} in {}", heads.size(), branches, draftRepo.getFullName());
+        store = GitHubUtil.openPullRequestStore(repo.getFullName());
+        return new ArrayList<>(heads.keySet());
+    }
+
+    /**
+     * Refresh the drafts of the matching branches.
+     *
+     * @return the result of each branch, in branch name order
+     */
+    public List<Result> run() throws IOException
+    {
+        List<String> names = prepare();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency, (runnable) ->
+        {
+            Thread thread = new Thread(runnable, "branch-" + THREADS.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try
+        {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (String branch : names)
+            {
+                futures.add(executor.submit(() -> refresh(branch)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : futures)
+            {
+                results.add(future.get());
+            }
+            return results;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted refreshing the branches", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new IOException(e.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+            close();
+        }
+    }
+
+    /**
+     * Refresh the draft of one of the {@link #prepare() prepared} branches.
+     * Can be called concurrently for different branches.
+     *
+     * @param branch the branch
+     * @return the result, failed (or skipped) rather than thrown
+     */
+    public Result refresh(String branch) throws IOException
+    {
+        RateLimitScheduler scheduler = GitHubUtil.getRateLimitScheduler();
+        Result result = new Result(branch);
+        if (!scheduler.hasReadBudget("core"))
+        {
+            result.failure = "skipped, rate limit reserve reached";
+            return result;
+        }
+
+        long start = System.nanoTime();
+        try
+        {
+            result.updated = result.meter.call(() ->
+            {
+                GithubDraftUpdate draftUpdate = new GithubDraftUpdate();
+                draftUpdate.setPullRequestStore(store);
+                return draftUpdate.update(github, repo, draftRepo, releases, "refs/heads/" + branch, heads.get(branch));
+            });
+        }
+        catch (Exception e)
+        {
+            LOG.warn("Unable to refresh the draft of {}", branch, e);
+            result.failure = RateLimitScheduler.isBudgetExhausted(e) ? "rate limit reserve reached" : String.valueOf(e.getMessage());
+        }
+        result.nanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * Close the pull request store, once all the branches are refreshed.
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (elapsedNanos == 0 && startNanos != 0)
+            elapsedNanos = System.nanoTime() - startNanos;
+        if (store != null)
+            store.close();
+    }
+
+    /**
+     * @param results the results of {@link #run()}
+     * @return true if the draft of at least one branch was written
+     */
+    public static boolean isAnyUpdated(List<Result> results)
+    {
+        for (Result result : results)
+        {
+            if (result.isUpdated())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Print a line per branch, with its time, API requests and whether its draft was written, and the totals
+     * (the time of the whole run, including the release scan).
+     *
+     * @param out the stream to print to
+     * @param results the results of {@link #run()}
+     */
+    public void printSummary(PrintStream out, List<Result> results)
+    {
+        out.printf("%-30s %10s %8s %8s %8s  %s%n", "branch", "time (ms)", "reads", "writes", "updated", "status");
+        long reads = 0;
+        long writes = 0;
+        int updated = 0;
+        int failures = 0;
+        for (Result result : results)
+        {
+            out.printf("%-30s %10d %8d %8d %8s  %s%n", result.getBranch(), result.getMillis(), result.getReadCount(), result.getWriteCount(),
+                result.isUpdated() ? "yes" : "no", result.isSuccess() ? "ok" : result.getFailure());
+            reads += result.getReadCount();
+            writes += result.getWriteCount();
+            if (result.isUpdated())
+                updated++;
+            if (!result.isSuccess())
+                failures++;
+        }
+        out.printf("%-30s %10d %8d %8d %8d  %d failed%n", results.size() + " branches", TimeUnit.NANOSECONDS.toMillis(elapsedNanos), reads, writes, updated, failures);
+    }
+
+    /**
+     * The refresh of one branch.
+     */
+    public static class Result
+    {
+        private final String branch;
+        private final RequestMeter meter;
+        private long nanos;
+        private boolean updated;
+        private String failure;
+
+        Result(String branch)
+        {
+            this.branch = branch;
+            this.meter = new RequestMeter(branch);
+        }
+
+        public String getBranch()
+        {
+            return branch;
+        }
+
+        public long getMillis()
+        {
+            return TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+
+        public long getReadCount()
+        {
+            return meter.getReadCount();
+        }
+
+        public long getWriteCount()
+        {
+            return meter.getWriteCount();
+        }
+
+        /**
+         * @return true if the draft was written, false when its body would have been the same (or the refresh failed)
+         */
+        public boolean isUpdated()
+        {
+            return updated;
+        }
+
+        public boolean isSuccess()
+        {
+            return failure == null;
+        }
+
+        /**
+         * @return why the branch was not refreshed, or null if it was
+         */
+        public String getFailure()
+        {
+            return failure;
+        }
+    }
+}
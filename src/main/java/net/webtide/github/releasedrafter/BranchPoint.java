@@ -0,0 +1,135 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.kohsuke.github.GHCompare;
+import org.kohsuke.github.GHFileNotFoundException;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GitUser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The commit a branch was created from, on its parent line of development
+ * (the default branch, or the configured upstream branch).
+ * <p>
+ * A branch without a release yet only has the changes merged since it was created,
+ * so the branch point bounds the pull request search (by date), and the compare (by commit).
+ * </p>
+ */
+public class BranchPoint
+{
+    private static final Logger LOG = LoggerFactory.getLogger(BranchPoint.class);
+
+    private final String parent;
+    private final String sha;
+    private final Date date;
+
+    public BranchPoint(String parent, String sha, Date date)
+    {
+        this.parent = parent;
+        this.sha = sha;
+        this.date = date;
+    }
+
+    /**
+     * Find the merge base of the branch and its parent, with a single compare.
+     *
+     * @param repo the repository
+     * @param branch the branch name
+     * @param parent the branch name of the parent line
+     * @return the branch point, or null if the branch is the parent, or it has no common history with it
+     */
+    public static BranchPoint find(GHRepository repo, String branch, String parent) throws IOException
+    {
+        if (StringUtils.isBlank(parent) || parent.equals(branch))
+            return null;
+
+        GHCompare compare;
+        try
+        {
+            compare = repo.getCompare(parent, branch);
+        }
+        catch (GHFileNotFoundException e)
+        {
+            LOG.info("No common history between {} and {}", parent, branch);
+            return null;
+        }
+
+        GHCompare.Commit mergeBase = compare.getMergeBaseCommit();
+        if (mergeBase == null || mergeBase.getCommit() == null)
+            return null;
+        GitUser committer = mergeBase.getCommit().getCommitter();
+        if (committer == null || committer.getDate() == null)
+            return null;
+        BranchPoint branchPoint = new BranchPoint(parent, mergeBase.getSHA1(), committer.getDate());
+        LOG.info("Branch {} was created from {}", branch, branchPoint);
+        return branchPoint;
+    }
+
+    /**
+     * @param checkpoint the draft checkpoint
+     * @param parent the branch name of the parent line
+     * @return the branch point recorded in the draft, if it was found from the same parent
+     */
+    public static BranchPoint fromCheckpoint(DraftCheckpoint checkpoint, String parent)
+    {
+        String sha = checkpoint.get(DraftCheckpoint.BRANCH_POINT_COMMIT);
+        Date date = checkpoint.getDate(DraftCheckpoint.BRANCH_POINT_DATE);
+        if (sha == null || date == null || !StringUtils.equals(parent, checkpoint.get(DraftCheckpoint.BRANCH_POINT_PARENT)))
+            return null;
+        return new BranchPoint(parent, sha, date);
+    }
+
+    /**
+     * Record the branch point in the draft markers.
+     */
+    public void addTo(Map<String, String> props)
+    {
+        props.put(DraftCheckpoint.BRANCH_POINT_PARENT, parent);
+        props.put(DraftCheckpoint.BRANCH_POINT_COMMIT, sha);
+        props.put(DraftCheckpoint.BRANCH_POINT_DATE, date.toInstant().toString());
+    }
+
+    public String getParent()
+    {
+        return parent;
+    }
+
+    public String getSha()
+    {
+        return sha;
+    }
+
+    public Date getDate()
+    {
+        return date;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%s (%s)", parent, sha, date.toInstant());
+    }
+}
@@ -0,0 +1,187 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.webtide.github.releasedrafter.discovery.ChangeSubscriber;
+import net.webtide.github.releasedrafter.release.Category;
+import net.webtide.github.releasedrafter.release.CategoryIndex;
+import net.webtide.github.releasedrafter.release.ReleaseDraft;
+
+/**
+ * The changes of a release draft, each with its category as they are found.
+ * <p>
+ * The category comes from the {@link CategoryIndex} compiled from the release draft config:
+ * the first category with one of the labels of the change, otherwise without a category.
+ * A change with one of the {@code exclude-labels} is dropped.
+ * A change with the same pull request number as one already there replaces it.
+ * </p>
+ * <p>
+ * The changes are sorted (oldest first) once, then split into their categories in a single pass,
+ * when they are first read after a modification.
+ * Changes with the same date (eg: the entries read back from the draft) keep the order they were added in.
+ * </p>
+ */
+public class ChangeBuckets extends ChangeSubscriber
+{
+    private static final Comparator<Placed> BY_DATE = Comparator.<Placed>comparingLong((placed) -> placed.change.getDateMillis())
+        .thenComparingLong((placed) -> placed.sequence);
+
+    private final CategoryIndex categoryIndex;
+    private final Map<Integer, Placed> changes = new LinkedHashMap<>();
+    private long sequence;
+    private int excluded;
+    private List<List<ChangeEntry>> buckets;
+
+    /**
+     * @param releaseDraft the release draft config (can be null, everything is then without a category)
+     */
+    public ChangeBuckets(ReleaseDraft releaseDraft)
+    {
+        this(CategoryIndex.compile(releaseDraft));
+    }
+
+    public ChangeBuckets(CategoryIndex categoryIndex)
+    {
+        this.categoryIndex = categoryIndex;
+    }
+
+    @Override
+    protected void onChange(ChangeEntry change)
+    {
+        add(change);
+    }
+
+    /**
+     * @param change the change to add, or to drop if it has one of the {@code exclude-labels}
+     * @return false if the change was excluded (and removed, if it was there)
+     */
+    public synchronized boolean add(ChangeEntry change)
+    {
+        buckets = null;
+        int ordinal = categoryIndex.ordinalOf(change.getLabels());
+        if (ordinal == CategoryIndex.EXCLUDED)
+        {
+            excluded++;
+            changes.remove(change.getPullRequestId());
+            return false;
+        }
+        changes.put(change.getPullRequestId(), new Placed(change, ordinal, sequence++));
+        return true;
+    }
+
+    public synchronized void addAll(Collection<ChangeEntry> changes)
+    {
+        for (ChangeEntry change : changes)
+        {
+            add(change);
+        }
+    }
+
+    /**
+     * @param pullRequestId the pull request number
+     * @return true if the change was there
+     */
+    public synchronized boolean remove(int pullRequestId)
+    {
+        if (changes.remove(pullRequestId) == null)
+            return false;
+        buckets = null;
+        return true;
+    }
+
+    public synchronized int size()
+    {
+        return changes.size();
+    }
+
+    /**
+     * @return the number of changes dropped because of their labels
+     */
+    public synchronized int getExcludedCount()
+    {
+        return excluded;
+    }
+
+    public List<Category> getCategories()
+    {
+        return categoryIndex.getCategories();
+    }
+
+    /**
+     * @param index the index of the category in the release draft config
+     * @return the changes of the category, oldest first
+     */
+    public synchronized List<ChangeEntry> getChanges(int index)
+    {
+        return getBuckets().get(index);
+    }
+
+    /**
+     * @return the changes without a category, oldest first
+     */
+    public synchronized List<ChangeEntry> getUncategorized()
+    {
+        return getBuckets().get(categoryIndex.size());
+    }
+
+    /**
+     * @return the changes of each category, then the ones without a category last
+     */
+    private List<List<ChangeEntry>> getBuckets()
+    {
+        if (buckets == null)
+        {
+            List<Placed> sorted = new ArrayList<>(changes.values());
+            sorted.sort(BY_DATE);
+            List<List<ChangeEntry>> split = new ArrayList<>(categoryIndex.size() + 1);
+            for (int i = 0; i <= categoryIndex.size(); i++)
+            {
+                split.add(new ArrayList<>());
+            }
+            int uncategorized = categoryIndex.size();
+            for (Placed placed : sorted)
+            {
+                split.get(placed.ordinal == CategoryIndex.UNCATEGORIZED ? uncategorized : placed.ordinal).add(placed.change);
+            }
+            buckets = split;
+        }
+        return buckets;
+    }
+
+    private static class Placed
+    {
+        private final ChangeEntry change;
+        private final int ordinal;
+        private final long sequence;
+
+        private Placed(ChangeEntry change, int ordinal, long sequence)
+        {
+            this.change = change;
+            this.ordinal = ordinal;
+            this.sequence = sequence;
+        }
+    }
+}
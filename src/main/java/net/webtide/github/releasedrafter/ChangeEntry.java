@@ -18,9 +18,8 @@
 
 package net.webtide.github.releasedrafter;
 
-import java.net.URL;
+import java.util.Collection;
 import java.util.Date;
-import java.util.List;
 
 /**
  * Represents a raw (unsorted) entry suitable for addition to the
@@ -29,34 +28,56 @@ import java.util.List;
  * This represents a pull request that is, not a draft, is closed, is merged,
  * and against the base branch that we are interested in.
  * </p>
+ * <p>
+ * Immutable, and kept compact as there can be many of them (and they are stored):
+ * the date is in epoch milliseconds, the labels a {@link LabelSet},
+ * and the branch, logins and labels are interned.
+ * </p>
  */
 public class ChangeEntry
 {
-    private final URL pullRequestURI;
+    private final String pullRequestUrl;
     private final int pullRequestId;
     private final String branch;
     private final String title;
-    private final Date date;
-    private final List<String> labels;
+    private final long date;
+    private final LabelSet labels;
     private final String committer;
     private final String author;
-    private boolean available = true;
 
-    public ChangeEntry(URL pullRequestURI, int pullRequestId, String branch, String title, Date date, List<String> labels, String committer, String author)
+    /**
+     * @param pullRequestUrl the API URL of the pull request (can be null)
+     * @param pullRequestId the pull request number
+     * @param branch the base branch label ({@code owner:branch})
+     * @param title the pull request title
+     * @param date the date of the change (the merge), in epoch milliseconds
+     * @param labels the label names (lower case)
+     * @param committer the login of the committer (can be null)
+     * @param author the login of the author (can be null)
+     */
+    public ChangeEntry(String pullRequestUrl, int pullRequestId, String branch, String title, long date, Collection<String> labels, String committer, String author)
     {
-        this.pullRequestURI = pullRequestURI;
+        this.pullRequestUrl = pullRequestUrl;
         this.pullRequestId = pullRequestId;
-        this.branch = branch;
+        this.branch = intern(branch);
         this.title = title;
         this.date = date;
-        this.labels = labels;
-        this.committer = committer;
-        this.author = author;
+        this.labels = LabelSet.of(labels);
+        this.committer = intern(committer);
+        this.author = intern(author);
+    }
+
+    private static String intern(String value)
+    {
+        return (value == null) ? null : value.intern();
     }
 
-    public URL getPullRequestURI()
+    /**
+     * @return the API URL of the pull request, or null if not known (eg: read back from a draft)
+     */
+    public String getPullRequestUrl()
     {
-        return pullRequestURI;
+        return pullRequestUrl;
     }
 
     public int getPullRequestId()
@@ -74,12 +95,23 @@ public class ChangeEntry
         return title;
     }
 
-    public Date getDate()
+    /**
+     * @return the date of the change, in epoch milliseconds
+     */
+    public long getDateMillis()
     {
         return date;
     }
 
-    public List<String> getLabels()
+    public Date getDate()
+    {
+        return new Date(date);
+    }
+
+    /**
+     * @return the labels, in name order
+     */
+    public LabelSet getLabels()
     {
         return labels;
     }
@@ -94,24 +126,14 @@ public class ChangeEntry
         return author;
     }
 
-    public boolean isAvailable()
-    {
-        return available;
-    }
-
-    public void setAvailable(boolean flag)
-    {
-        this.available = flag;
-    }
-
     @Override
     public String toString()
     {
         final StringBuilder sb = new StringBuilder("ChangeEntry{");
-        sb.append("pullRequestURI=").append(pullRequestURI);
+        sb.append("pullRequestUrl=").append(pullRequestUrl);
         sb.append(", pullRequestId=").append(pullRequestId);
         sb.append(", branch='").append(branch).append('\'');
-        sb.append(", date=").append(date);
+        sb.append(", date=").append(getDate());
         sb.append(", labels=").append(String.join(", ", labels));
         sb.append(", committer='").append(committer).append('\'');
         sb.append(", author='").append(author).append('\'');
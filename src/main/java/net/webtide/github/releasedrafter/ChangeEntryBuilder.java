@@ -19,11 +19,12 @@
 package net.webtide.github.releasedrafter;
 
 import java.io.IOException;
-import java.net.URL;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import org.apache.commons.lang3.StringUtils;
 import org.kohsuke.github.GHCommit;
 import org.kohsuke.github.GHLabel;
@@ -34,7 +35,7 @@ public class ChangeEntryBuilder
 {
     public static ChangeEntry from(GHRepository repo, GHPullRequest pullRequest) throws IOException
     {
-        URL pullRequestURI = pullRequest.getUrl();
+        String pullRequestUrl = pullRequest.getUrl().toExternalForm();
         int pullRequestId = pullRequest.getNumber();
         String branch = pullRequest.getBase().getLabel();
         String title = pullRequest.getTitle();
@@ -63,6 +64,47 @@ public class ChangeEntryBuilder
             }
         }
 
-        return new ChangeEntry(pullRequestURI, pullRequestId, branch, title, date, labels, committer, author);
+        return new ChangeEntry(pullRequestUrl, pullRequestId, branch, title, date.getTime(), labels, committer, author);
+    }
+
+    /**
+     * Build the entry from a {@code pull_request} event payload, without any API call.
+     * <p>
+     * The payload doesn't have the merge commit, so the author is the pull request author
+     * and the committer the user that merged it.
+     * The labels are given from the raw payload, as {@link GHPullRequest#getLabels()} would fetch the issue.
+     * </p>
+     *
+     * @param pullRequest the pull request of the event
+     * @param labelNames the names of the labels in the payload, see {@link #toEventLabels(JsonNode)}
+     */
+    public static ChangeEntry fromEvent(GHPullRequest pullRequest, List<String> labelNames) throws IOException
+    {
+        Date date = (pullRequest.getMergedAt() != null) ? pullRequest.getMergedAt() : pullRequest.getClosedAt();
+        List<String> labels = labelNames.stream()
+            .map(NameUtil::toLowerCaseUS)
+            .sorted()
+            .collect(Collectors.toList());
+        String committer = (pullRequest.getMergedBy() != null) ? pullRequest.getMergedBy().getLogin() : null;
+        String author = (pullRequest.getUser() != null) ? pullRequest.getUser().getLogin() : null;
+
+        return new ChangeEntry(pullRequest.getUrl().toExternalForm(), pullRequest.getNumber(), pullRequest.getBase().getLabel(), pullRequest.getTitle(),
+            date.getTime(), labels, committer, author);
+    }
+
+    /**
+     * @param event the {@code pull_request} event payload
+     * @return the names of the labels of the pull request
+     */
+    public static List<String> toEventLabels(JsonNode event)
+    {
+        List<String> names = new ArrayList<>();
+        for (JsonNode label : event.path("pull_request").path("labels"))
+        {
+            String name = label.path("name").asText(null);
+            if (name != null)
+                names.add(name);
+        }
+        return names;
     }
 }
@@ -0,0 +1,146 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.webtide.github.releasedrafter.http.RequestMeter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lookups that don't depend on each other, run concurrently so the caller waits
+ * for the longest of them instead of their sum.
+ * <p>
+ * The first lookup to fail cancels the others (interrupting them, which stops a lookup at its next
+ * rate limit wait), and its failure is the one thrown by {@link #get(Future)}, whichever lookup is asked for.
+ * Closing the group cancels the lookups still running.
+ * </p>
+ */
+public class ConcurrentLookups implements AutoCloseable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ConcurrentLookups.class);
+    private static final AtomicInteger THREADS = new AtomicInteger();
+    private static final ExecutorService LOOKUPS = Executors.newCachedThreadPool((runnable) ->
+    {
+        Thread thread = new Thread(runnable, "lookup-" + THREADS.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<Future<?>> futures = new CopyOnWriteArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * @param name the name of the lookup, for the logs
+     * @param lookup the lookup
+     * @param <T> the result type
+     * @return the future result, to {@link #get(Future)}
+     */
+    public <T> Future<T> submit(String name, Callable<T> lookup)
+    {
+        // Submitted after a failure, don't run it
+        if (failure.get() != null)
+            return CompletableFuture.failedFuture(failure.get());
+
+        Callable<T> metered = RequestMeter.wrap(lookup);
+        Future<T> future = LOOKUPS.submit(() ->
+        {
+            long start = System.nanoTime();
+            try
+            {
+                T result = metered.call();
+                LOG.debug("Lookup {} took {} ms", name, (System.nanoTime() - start) / 1_000_000);
+                return result;
+            }
+            catch (Throwable x)
+            {
+                if (failure.compareAndSet(null, x))
+                {
+                    LOG.debug("Lookup {} failed, cancelling the others", name, x);
+                    cancel();
+                }
+                throw x;
+            }
+        });
+        futures.add(future);
+        return future;
+    }
+
+    /**
+     * Wait for a lookup.
+     *
+     * @param future the lookup, as submitted
+     * @param <T> the result type
+     * @return the result of the lookup
+     * @throws IOException the first failure of the lookups
+     */
+    public <T> T get(Future<T> future) throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            cancel();
+            throw new InterruptedIOException("Interrupted waiting on lookups");
+        }
+        catch (ExecutionException | CancellationException e)
+        {
+            Throwable cause = failure.get();
+            if (cause == null)
+                cause = (e instanceof ExecutionException) ? e.getCause() : e;
+            if (cause instanceof IOException)
+                throw (IOException)cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            if (cause instanceof Error)
+                throw (Error)cause;
+            throw new IOException(cause);
+        }
+    }
+
+    private void cancel()
+    {
+        for (Future<?> future : futures)
+        {
+            future.cancel(true);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        cancel();
+    }
+}
@@ -0,0 +1,237 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.webtide.github.releasedrafter.release.BodyRenderer;
+import net.webtide.github.releasedrafter.release.BodyTemplate;
+import net.webtide.github.releasedrafter.release.Category;
+import net.webtide.github.releasedrafter.release.ReleaseDraft;
+
+/**
+ * The state of a previous run, read back from the release draft body.
+ * <p>
+ * The body ends with markdown "comments" ({@code [//]: # (key: value)}) written by
+ * {@link GithubDraftUpdate}, which record what the draft was built from, and holds the
+ * change entries that were written (by category), read back with the templates of the release draft config.
+ * </p>
+ */
+public class DraftCheckpoint
+{
+    public static final String HEAD_COMMIT = "push.headCommit";
+    public static final String DATE_TO = "dateTo";
+    public static final String LAST_RELEASE_TAG = "lastRelease.tagName";
+    public static final String CONFIG_HASH = "config.hash";
+    public static final String BRANCH_POINT_PARENT = "branchPoint.parent";
+    public static final String BRANCH_POINT_COMMIT = "branchPoint.commit";
+    public static final String BRANCH_POINT_DATE = "branchPoint.date";
+    public static final String BODY_TRUNCATED = "body.truncated";
+    public static final String BODY_HASH = "body.hash";
+    public static final String CHANGES_INCOMPLETE = "changes.incomplete";
+
+    private static final Pattern MARKER = Pattern.compile("^\\[//]: # \\(([^:]+): (.*)\\)$");
+
+    private final Map<String, String> props;
+    private final List<ChangeEntry> entries;
+
+    private DraftCheckpoint(Map<String, String> props, List<ChangeEntry> entries)
+    {
+        this.props = props;
+        this.entries = entries;
+    }
+
+    /**
+     * Read the markers and change entries of a draft body.
+     * <p>
+     * Entries are given the labels written with them when the change template has {@code $LABELS},
+     * otherwise the labels of their category, so they are written in the same category again.
+     * Their real labels are then lost, which doesn't show in the body (it doesn't have them),
+     * nor in the JSON changelog asset (only written for a truncated body, which is always rebuilt).
+     * They are given the date of the checkpoint (or the epoch), so they stay (in the same order) before the changes found after it.
+     * </p>
+     *
+     * @param body the release draft body (can be null)
+     * @param releaseDraft the release draft config, to map the section titles back to categories (can be null)
+     * @param branch the branch label for the entries
+     * @return the checkpoint (possibly without markers or entries)
+     */
+    public static DraftCheckpoint parse(String body, ReleaseDraft releaseDraft, String branch)
+    {
+        String[] lines = (body == null) ? new String[0] : body.split("\r?\n");
+
+        // The markers are at the end, but the entries need the date
+        Map<String, String> props = new TreeMap<>();
+        for (String line : lines)
+        {
+            Matcher matcher = MARKER.matcher(line);
+            if (matcher.matches())
+                props.put(matcher.group(1), matcher.group(2));
+        }
+
+        Date date = toDate(props.get(DATE_TO));
+        if (date == null)
+            date = new Date(0);
+        List<ChangeEntry> entries = new ArrayList<>();
+        List<String> labels = Collections.emptyList();
+        BodyRenderer renderer = BodyRenderer.of(releaseDraft);
+        if (!renderer.canReadBack())
+            return new DraftCheckpoint(props, entries);
+        for (String line : lines)
+        {
+            if (renderer.getUncategorizedTemplate().match(line) != null)
+            {
+                labels = Collections.emptyList();
+                continue;
+            }
+            Map<BodyTemplate.Placeholder, String> section = renderer.getCategoryTemplate().match(line);
+            if (section != null)
+            {
+                labels = findCategoryLabels(releaseDraft, section.get(BodyTemplate.Placeholder.TITLE));
+                continue;
+            }
+
+            Map<BodyTemplate.Placeholder, String> entry = renderer.getChangeTemplate().match(line);
+            if (entry != null)
+            {
+                String author = entry.get(BodyTemplate.Placeholder.AUTHOR);
+                if ("null".equals(author))
+                    author = null;
+                List<String> entryLabels = labels;
+                String written = entry.get(BodyTemplate.Placeholder.LABELS);
+                if (written != null)
+                    entryLabels = written.isEmpty() ? Collections.emptyList() : Arrays.asList(written.split(", "));
+                entries.add(new ChangeEntry(null, Integer.parseInt(entry.get(BodyTemplate.Placeholder.NUMBER)), branch,
+                    entry.get(BodyTemplate.Placeholder.TITLE), date.getTime(), entryLabels, null, author));
+            }
+        }
+        return new DraftCheckpoint(props, entries);
+    }
+
+    private static List<String> findCategoryLabels(ReleaseDraft releaseDraft, String title)
+    {
+        if (releaseDraft == null || releaseDraft.getCategories() == null)
+            return Collections.emptyList();
+        for (Category category : releaseDraft.getCategories())
+        {
+            if (title.equals(category.getTitle()))
+                return category.getLabels();
+        }
+        // eg: the "N Changes Found" section of changes without a category
+        return Collections.emptyList();
+    }
+
+    private static Date toDate(String value)
+    {
+        if (value == null)
+            return null;
+        try
+        {
+            return Date.from(Instant.parse(value));
+        }
+        catch (DateTimeParseException e)
+        {
+            // Written by an older version (Date.toString())
+            return null;
+        }
+    }
+
+    public Map<String, String> getProps()
+    {
+        return props;
+    }
+
+    public String get(String key)
+    {
+        return props.get(key);
+    }
+
+    /**
+     * @return the date of the head commit the draft was last built for, or null if not known
+     */
+    public Date getDateTo()
+    {
+        return toDate(props.get(DATE_TO));
+    }
+
+    /**
+     * @param key the marker name
+     * @return the marker value as a date, or null if not known
+     */
+    public Date getDate(String key)
+    {
+        return toDate(props.get(key));
+    }
+
+    /**
+     * @return the change entries written in the draft
+     */
+    public List<ChangeEntry> getEntries()
+    {
+        return entries;
+    }
+
+    /**
+     * @return the hash of the body (and of its non volatile markers) the last time it was written, or null if not known
+     */
+    public String getBodyHash()
+    {
+        return props.get(BODY_HASH);
+    }
+
+    /**
+     * A volatile marker moves on every run (eg: the head commit), without the changes being any different.
+     * The draft isn't written again when only those changed.
+     *
+     * @param key the marker name
+     * @return true if the marker is volatile
+     */
+    public static boolean isVolatile(String key)
+    {
+        return HEAD_COMMIT.equals(key) || DATE_TO.equals(key) || BODY_HASH.equals(key);
+    }
+
+    /**
+     * @return true if the body was cut at its size limit, so it doesn't have all the entries
+     */
+    public boolean isTruncated()
+    {
+        return Boolean.parseBoolean(props.get(BODY_TRUNCATED));
+    }
+
+    /**
+     * @return true if the draft has enough markers to continue from,
+     * and its changes were all found (the discovery didn't stop early)
+     */
+    public boolean isComplete()
+    {
+        return getDateTo() != null && props.get(HEAD_COMMIT) != null && props.get(CONFIG_HASH) != null &&
+            !Boolean.parseBoolean(props.get(CHANGES_INCOMPLETE));
+    }
+}
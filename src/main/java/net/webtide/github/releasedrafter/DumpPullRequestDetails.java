@@ -53,7 +53,6 @@ public class DumpPullRequestDetails
             int pullRequestNumber = args.getInteger("pr");
 
             GitHub github = GitHubUtil.smartConnect();
-            GitHubUtil.showCurrentRateLimit(github);
 
             LOG.info("Fetching repo to [{}]", repoName);
             GHRepository repo = github.getRepository(repoName);
@@ -68,6 +67,7 @@ public class DumpPullRequestDetails
             {
                 logPullRequest(LOG, repo, pullRequest);
             }
+            GitHubUtil.showCurrentRateLimit(github);
         }
         catch (Args.ArgException e)
         {
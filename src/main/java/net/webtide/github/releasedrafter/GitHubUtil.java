@@ -19,13 +19,26 @@
 package net.webtide.github.releasedrafter;
 
 import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.Instant;
 
+import net.webtide.github.releasedrafter.discovery.HydrationExecutor;
+import net.webtide.github.releasedrafter.discovery.PullRequestStore;
+import net.webtide.github.releasedrafter.http.CachingHttpConnector;
+import net.webtide.github.releasedrafter.http.GraphQLClient;
+import net.webtide.github.releasedrafter.http.HttpClientConnector;
+import net.webtide.github.releasedrafter.http.HttpResponseCache;
+import net.webtide.github.releasedrafter.http.RateLimitScheduler;
 import net.webtide.github.releasedrafter.logging.Logging;
 import org.apache.commons.lang3.StringUtils;
-import org.kohsuke.github.GHRateLimit;
 import org.kohsuke.github.GitHub;
 import org.kohsuke.github.GitHubBuilder;
+import org.kohsuke.github.HttpConnector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,28 +50,229 @@ public final class GitHubUtil
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(GitHubUtil.class);
+    private static final long DEFAULT_CACHE_MAX_SIZE_MB = 50;
+    private static final long DEFAULT_REQUESTS_PER_SECOND = 10;
+    private static final long DEFAULT_REQUESTS_BURST = 20;
+    private static final long DEFAULT_RATE_LIMIT_RESERVE = 25;
+    private static HttpClientConnector httpClientConnector;
+    private static RateLimitScheduler rateLimitScheduler;
+    private static HttpConnector connector;
 
     public static GitHub smartConnect() throws IOException
     {
+        GitHubBuilder builder;
         String githubAppToken = System.getenv("GITHUB_TOKEN");
         if (StringUtils.isNotBlank(githubAppToken))
         {
             LOG.info("Connecting to GitHub with AppInstallation Token");
-            return new GitHubBuilder().withAppInstallationToken(githubAppToken).build();
+            builder = new GitHubBuilder().withAppInstallationToken(githubAppToken);
         }
         else
         {
             LOG.info("Connecting to GitHub with environment / properties file configuration");
-            return GitHub.connect();
+            builder = fromCredentials();
         }
+        return builder.withConnector(getConnector()).build();
     }
 
+    /**
+     * Same lookup as {@link GitHub#connect()}, environment first, then {@code ~/.github}
+     */
+    private static GitHubBuilder fromCredentials() throws IOException
+    {
+        if (StringUtils.isNotBlank(System.getenv("GITHUB_OAUTH")) ||
+            StringUtils.isNotBlank(System.getenv("GITHUB_LOGIN")) ||
+            StringUtils.isNotBlank(System.getenv("GITHUB_JWT")))
+        {
+            return GitHubBuilder.fromEnvironment();
+        }
+
+        try
+        {
+            return GitHubBuilder.fromPropertyFile();
+        }
+        catch (IOException e)
+        {
+            throw new IOException("Failed to resolve credentials from ~/.github or the environment.", e);
+        }
+    }
+
+    /**
+     * The {@link HttpConnector} used for all GitHub API calls, shared by every {@link GitHub} instance in the process.
+     * <p>
+     * {@code INPUT_HTTP_CONNECTOR} selects the transport, either {@code urlconnection} (the default)
+     * or {@code httpclient} (pooled HTTP/2 connections via {@link HttpClientConnector}).
+     * </p>
+     * <p>
+     * All requests are scheduled by the {@link RateLimitScheduler}, paced at {@code INPUT_REQUESTS_PER_SECOND}
+     * and keeping {@code INPUT_RATE_LIMIT_RESERVE} requests for writes.
+     * </p>
+     * <p>
+     * If {@code INPUT_CACHE_DIR} is set, responses are kept in that directory
+     * (bounded by {@code INPUT_CACHE_MAX_SIZE} megabytes) and replayed as conditional requests.
+     * </p>
+     */
+    public static synchronized HttpConnector getConnector() throws IOException
+    {
+        if (connector == null)
+            connector = newConnector();
+        return connector;
+    }
+
+    /**
+     * @return the scheduler all GitHub API calls go through
+     */
+    public static RateLimitScheduler getRateLimitScheduler() throws IOException
+    {
+        getConnector();
+        return rateLimitScheduler;
+    }
+
+    private static HttpConnector newConnector() throws IOException
+    {
+        HttpConnector connector = HttpConnector.DEFAULT;
+
+        String transport = System.getenv("INPUT_HTTP_CONNECTOR");
+        if ("httpclient".equalsIgnoreCase(StringUtils.trim(transport)))
+        {
+            LOG.info("Using HttpClient (HTTP/2) connector");
+            connector = getHttpClientConnector();
+        }
+        else if (StringUtils.isNotBlank(transport) && !"urlconnection".equalsIgnoreCase(transport.trim()))
+        {
+            LOG.warn("Unrecognized INPUT_HTTP_CONNECTOR [{}], using urlconnection", transport);
+        }
+
+        // Under the cache, a 304 response still counts towards pacing, but its headers show no quota used
+        rateLimitScheduler = new RateLimitScheduler(connector,
+            getEnvLong("INPUT_REQUESTS_PER_SECOND", DEFAULT_REQUESTS_PER_SECOND),
+            (int)getEnvLong("INPUT_REQUESTS_BURST", DEFAULT_REQUESTS_BURST),
+            (int)getEnvLong("INPUT_RATE_LIMIT_RESERVE", DEFAULT_RATE_LIMIT_RESERVE));
+        connector = rateLimitScheduler;
+
+        String cacheDir = System.getenv("INPUT_CACHE_DIR");
+        if (StringUtils.isNotBlank(cacheDir))
+        {
+            long maxSize = getEnvLong("INPUT_CACHE_MAX_SIZE", DEFAULT_CACHE_MAX_SIZE_MB) * 1024 * 1024;
+            LOG.info("Using HTTP response cache {} (max {} MB)", cacheDir, maxSize / (1024 * 1024));
+            HttpResponseCache cache = new HttpResponseCache(Paths.get(cacheDir), maxSize);
+            connector = new CachingHttpConnector(connector, cache);
+        }
+
+        return connector;
+    }
+
+    /**
+     * The executor for the per pull request lookups, running up to {@code INPUT_CONCURRENCY} of them at once,
+     * throttled by the {@link RateLimitScheduler}.
+     */
+    public static HydrationExecutor newHydrationExecutor() throws IOException
+    {
+        int concurrency = (int)getEnvLong("INPUT_CONCURRENCY", HydrationExecutor.DEFAULT_CONCURRENCY);
+        return new HydrationExecutor(concurrency, getRateLimitScheduler());
+    }
+
+    /**
+     * The pull requests already seen in the repository, kept in {@code INPUT_CACHE_DIR} (under {@code pull-requests/})
+     * so it is restored / saved along with the HTTP responses. Without a cache directory, the store is in memory only.
+     *
+     * @param repoFullName the repository ({@code owner/name})
+     */
+    public static PullRequestStore openPullRequestStore(String repoFullName) throws IOException
+    {
+        String cacheDir = System.getenv("INPUT_CACHE_DIR");
+        if (StringUtils.isBlank(cacheDir))
+            return new PullRequestStore();
+        Path file = Paths.get(cacheDir).resolve("pull-requests").resolve(repoFullName.replace('/', '_') + ".prs");
+        return PullRequestStore.open(file);
+    }
+
+    /**
+     * A client for the GraphQL API of the same server as {@code github}, sharing its {@link HttpConnector}.
+     * <p>
+     * The endpoint is {@code GITHUB_GRAPHQL_URL} (set by GitHub Actions), or derived from the API url.
+     * GraphQL requires authentication, with {@code GITHUB_TOKEN} or {@code GITHUB_OAUTH}.
+     * </p>
+     */
+    public static GraphQLClient newGraphQLClient(GitHub github) throws IOException
+    {
+        String endpoint = System.getenv("GITHUB_GRAPHQL_URL");
+        if (StringUtils.isBlank(endpoint))
+        {
+            // https://api.github.com/graphql or (for GitHub Enterprise) https://host/api/graphql
+            endpoint = StringUtils.removeEnd(StringUtils.removeEnd(github.getApiUrl(), "/"), "/v3") + "/graphql";
+        }
+
+        String token = StringUtils.defaultIfBlank(System.getenv("GITHUB_TOKEN"), System.getenv("GITHUB_OAUTH"));
+        if (StringUtils.isBlank(token))
+            throw new IOException("GraphQL API needs a GITHUB_TOKEN or GITHUB_OAUTH token");
+
+        return new GraphQLClient(getConnector(), new URL(endpoint), "token " + token);
+    }
+
+    /**
+     * The process wide {@link HttpClientConnector}, so that every {@link GitHub} instance
+     * shares the same connection pool.
+     * The connection to the API server is started (in the background) on first use.
+     */
+    private static synchronized HttpClientConnector getHttpClientConnector()
+    {
+        if (httpClientConnector == null)
+        {
+            httpClientConnector = new HttpClientConnector();
+            httpClientConnector.warmUp(StringUtils.defaultIfBlank(System.getenv("GITHUB_API_URL"), "https://api.github.com"));
+        }
+        return httpClientConnector;
+    }
+
+    static long getEnvLong(String name, long defValue)
+    {
+        String value = System.getenv(name);
+        if (StringUtils.isBlank(value))
+            return defValue;
+        try
+        {
+            return Long.parseLong(value.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            LOG.warn("Ignoring invalid number for {}: {}", name, value);
+            return defValue;
+        }
+    }
+
+    /**
+     * Set a step output of the action, appended to the {@code GITHUB_OUTPUT} file
+     * (only logged when not run as an action).
+     *
+     * @param name the output name
+     * @param value the output value (a single line)
+     */
+    public static void setOutput(String name, String value) throws IOException
+    {
+        LOG.info("Output {}={}", name, value);
+        String outputFile = System.getenv("GITHUB_OUTPUT");
+        if (StringUtils.isBlank(outputFile))
+            return;
+        Files.writeString(Paths.get(outputFile), name + "=" + value + System.lineSeparator(), StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Log the rate limit, as last seen in the response headers (this doesn't make an API call).
+     */
     public static void showCurrentRateLimit(GitHub github) throws IOException
     {
-        GHRateLimit rateLimit = github.getRateLimit();
+        RateLimitScheduler scheduler = getRateLimitScheduler();
+        RateLimitScheduler.Budget core = scheduler.getBudget("core");
+        if (core == null)
+        {
+            LOG.info("RateLimit [not known yet, requests={}]", scheduler.getRequestCount());
+            return;
+        }
         long epochSecNow = Instant.now().getEpochSecond();
-        long epochReset = rateLimit.getResetEpochSeconds();
-        long resetInSeconds = epochReset - epochSecNow;
-        LOG.info("RateLimit [limit={}, remaining={}, resetInSeconds={}]", rateLimit.getLimit(), rateLimit.getRemaining(), resetInSeconds);
+        long resetInSeconds = core.getResetEpochSeconds() - epochSecNow;
+        LOG.info("RateLimit [limit={}, remaining={}, resetInSeconds={}, requests={}, writes={}]",
+            core.getLimit(), core.getRemaining(), resetInSeconds, scheduler.getRequestCount(), scheduler.getWriteCount());
     }
 }
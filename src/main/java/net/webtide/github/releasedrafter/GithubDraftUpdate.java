@@ -19,25 +19,35 @@
 package net.webtide.github.releasedrafter;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.PrintWriter;
-import java.io.StringWriter;
-import java.net.URL;
-import java.util.Collections;
-import java.util.Comparator;
+import java.nio.file.Paths;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-
-import net.webtide.github.releasedrafter.release.Category;
+import java.util.TreeMap;
+import java.util.concurrent.Future;
+
+import net.webtide.github.releasedrafter.discovery.ChangeDiscovery;
+import net.webtide.github.releasedrafter.discovery.ChangeWindow;
+import net.webtide.github.releasedrafter.discovery.CompareChangeDiscovery;
+import net.webtide.github.releasedrafter.discovery.GraphQLChangeDiscovery;
+import net.webtide.github.releasedrafter.discovery.HydrationExecutor;
+import net.webtide.github.releasedrafter.discovery.LocalGitChangeDiscovery;
+import net.webtide.github.releasedrafter.discovery.PullRequestAssociations;
+import net.webtide.github.releasedrafter.discovery.PullRequestHydrator;
+import net.webtide.github.releasedrafter.discovery.PullRequestStore;
+import net.webtide.github.releasedrafter.discovery.RestChangeDiscovery;
+import net.webtide.github.releasedrafter.discovery.SearchChangeDiscovery;
+import net.webtide.github.releasedrafter.release.BodyRenderer;
+import net.webtide.github.releasedrafter.release.BoundedBodyWriter;
+import net.webtide.github.releasedrafter.release.ChangelogAsset;
 import net.webtide.github.releasedrafter.release.GHReleaseFinder;
 import net.webtide.github.releasedrafter.release.ReleaseDraft;
+import net.webtide.github.releasedrafter.release.ReleaseDraftCache;
+import net.webtide.github.releasedrafter.release.ReleaseIndex;
 import org.apache.commons.lang3.StringUtils;
-import org.kohsuke.github.GHBranch;
 import org.kohsuke.github.GHCommit;
-import org.kohsuke.github.GHContent;
+import org.kohsuke.github.GHCompare;
 import org.kohsuke.github.GHFileNotFoundException;
 import org.kohsuke.github.GHRelease;
 import org.kohsuke.github.GHRepository;
@@ -48,6 +58,10 @@ import org.slf4j.LoggerFactory;
 public class GithubDraftUpdate
 {
     private static final Logger LOG = LoggerFactory.getLogger(GithubDraftUpdate.class);
+    // The markers, and the note pointing to the changelog asset
+    private static final int BODY_TRAILER_LENGTH = 4096;
+
+    private PullRequestStore pullRequestStore;
 
     public static void main(String[] commandLine)
     {
@@ -56,12 +70,13 @@ public class GithubDraftUpdate
             Args args = new Args(commandLine);
 
             String repoName = args.getRequired("repo");
-            String pushRef = args.getRequired("push-ref");
-            String commitHeadSha = args.getRequired("commit-sha");
+            // Either one branch, or a batch of them
+            String branchGlob = args.containsKey("all-branches") ? BranchBatch.ALL_BRANCHES : args.get("branches");
+            String pushRef = (branchGlob == null) ? args.getRequired("push-ref") : null;
+            String commitHeadSha = (branchGlob == null) ? args.getRequired("commit-sha") : null;
             String draftRepoName = args.get("draft-repo");
 
             GitHub github = GitHubUtil.smartConnect();
-            GitHubUtil.showCurrentRateLimit(github);
 
             GHRepository repo = github.getRepository(repoName);
             GHRepository draftRepo = repo;
@@ -71,8 +86,23 @@ public class GithubDraftUpdate
                 draftRepo = github.getRepository(draftRepoName);
             }
 
-            GithubDraftUpdate draftUpdate = new GithubDraftUpdate();
-            draftUpdate.update(github, repo, draftRepo, pushRef, commitHeadSha);
+            if (branchGlob != null)
+            {
+                BranchBatch batch = new BranchBatch(github, repo, draftRepo, branchGlob);
+                if (args.containsKey("concurrency"))
+                    batch.setConcurrency(args.getInteger("concurrency"));
+                batch.setCreateDrafts(args.containsKey("create-drafts"));
+                List<BranchBatch.Result> results = batch.run();
+                batch.printSummary(System.out, results);
+                GitHubUtil.setOutput("updated", Boolean.toString(BranchBatch.isAnyUpdated(results)));
+            }
+            else
+            {
+                GithubDraftUpdate draftUpdate = new GithubDraftUpdate();
+                boolean updated = draftUpdate.update(github, repo, draftRepo, pushRef, commitHeadSha);
+                GitHubUtil.setOutput("updated", Boolean.toString(updated));
+            }
+            GitHubUtil.showCurrentRateLimit(github);
         }
         catch (Args.ArgException e)
         {
@@ -86,160 +116,404 @@ public class GithubDraftUpdate
         }
     }
 
-    public void update(GitHub github, GHRepository repo, GHRepository draftRepo, String pushRef, String commitHeadSha) throws IOException
+    /**
+     * @param pullRequestStore the store of the pull requests already seen, shared by the updates of a repository
+     * (not closed by the update), or null for the update to open its own
+     */
+    public void setPullRequestStore(PullRequestStore pullRequestStore)
+    {
+        this.pullRequestStore = pullRequestStore;
+    }
+
+    /**
+     * @return true if the draft was written, false when its body would have been the same
+     */
+    public boolean update(GitHub github, GHRepository repo, GHRepository draftRepo, String pushRef, String commitHeadSha) throws IOException
+    {
+        return update(github, repo, draftRepo, null, pushRef, commitHeadSha);
+    }
+
+    /**
+     * @param releases the releases of the draft repository, or null to scan them (eg: shared by the branches of a {@link BranchBatch})
+     * @return true if the draft was written, false when its body would have been the same
+     */
+    public boolean update(GitHub github, GHRepository repo, GHRepository draftRepo, ReleaseIndex releases, String pushRef, String commitHeadSha) throws IOException
     {
+        // The releases, the head commit and the config don't depend on each other
+        GHCommit headCommit;
+        ReleaseDraft releaseDraft;
+        try (ConcurrentLookups lookups = new ConcurrentLookups())
+        {
+            // One scan of the releases for both lookups
+            Future<ReleaseIndex> releasesLookup = (releases != null) ? null : lookups.submit("releases", () -> ReleaseIndex.build(draftRepo));
+            Future<GHCommit> headCommitLookup = lookups.submit("head commit", () -> repo.getCommit(commitHeadSha));
+            Future<ReleaseDraft> releaseDraftLookup = lookups.submit("release config", () -> loadReleaseDraft(repo, pushRef));
+            if (releasesLookup != null)
+                releases = lookups.get(releasesLookup);
+            headCommit = lookups.get(headCommitLookup);
+            releaseDraft = lookups.get(releaseDraftLookup);
+        }
+
         // What was the last release (non-draft) on this commitish?
-        GHRelease lastRelease = GHReleaseFinder.findLastReleaseOn(draftRepo, pushRef);
-        Date dateOfLastRelease = getDateOfLastRelease(draftRepo, lastRelease, pushRef);
+        GHRelease lastRelease = releases.getLastRelease(pushRef);
 
         // Find the latest active Draft for this commitish
-        GHRelease draft = GHReleaseFinder.getActiveDraft(draftRepo, pushRef);
+        GHRelease draft = GHReleaseFinder.getActiveDraft(draftRepo, releases, pushRef);
 
         // Query the pull requests to find the change set.
-        GHCommit headCommit = repo.getCommit(commitHeadSha);
         Date dateTo = headCommit.getCommitDate();
         int maxPullRequestsToSearchThrough = 400; // TODO: this should be configurable
 
-        List<ChangeEntry> changeSet = QueryPullRequests.findClosedAndMergedPullRequests(repo, pushRef, dateOfLastRelease, dateTo, maxPullRequestsToSearchThrough);
+        String branch = NameUtil.toBranchName(pushRef);
+        String configHash = (releaseDraft != null) ? releaseDraft.getConfigHash() : "";
+        String lastReleaseTag = (lastRelease != null) ? lastRelease.getTagName() : "";
+
+        // Continue from where the previous run left the draft, if possible
+        DraftCheckpoint checkpoint = DraftCheckpoint.parse(draft.getBody(), releaseDraft, repo.getOwnerName() + ":" + branch);
+        boolean incremental = canContinueFrom(repo, checkpoint, releaseDraft, configHash, lastReleaseTag, commitHeadSha);
+
+        // Without a release, the changes start where the branch was created
+        BranchPoint branchPoint = null;
+        if (lastRelease == null)
+        {
+            String parent = getParentBranch(repo);
+            branchPoint = BranchPoint.fromCheckpoint(checkpoint, parent);
+            if (branchPoint == null)
+                branchPoint = BranchPoint.find(repo, branch, parent);
+        }
+        Date dateOfLastRelease = getDateOfLastRelease(repo, lastRelease, branchPoint);
+
+        ChangeWindow window;
+        if (incremental)
+        {
+            window = new ChangeWindow(branch, checkpoint.getDateTo(), dateTo);
+            window.setBaseRef(checkpoint.get(DraftCheckpoint.HEAD_COMMIT));
+        }
+        else
+        {
+            window = new ChangeWindow(branch, dateOfLastRelease, dateTo);
+            window.setBaseRef(getBaseRef(repo, draftRepo, lastRelease, branchPoint));
+        }
+        window.setMaxPullRequestsToSearchThrough(maxPullRequestsToSearchThrough);
+        if (releaseDraft != null)
+            window.setExcludeLabels(releaseDraft.getExcludeLabels());
+        window.setHeadSha(commitHeadSha);
+
+        // The changes are put in their category as they are found
+        ChangeBuckets changeSet = new ChangeBuckets(releaseDraft);
+        if (incremental)
+            changeSet.addAll(checkpoint.getEntries());
+        PullRequestStore store = (pullRequestStore != null) ? pullRequestStore : GitHubUtil.openPullRequestStore(repo.getFullName());
+        try (HydrationExecutor executor = GitHubUtil.newHydrationExecutor())
+        {
+            newChangeDiscovery(github, repo, store, executor).publishChanges(window).subscribe(changeSet);
+            changeSet.await();
+        }
+        finally
+        {
+            if (store != pullRequestStore)
+                store.close();
+        }
+        if (incremental)
+            LOG.info("Draft has {} changes, from {} in the checkpoint", changeSet.size(), checkpoint.getEntries().size());
+        if (changeSet.getExcludedCount() > 0)
+            LOG.info("Excluded {} changes by their labels: {}", changeSet.getExcludedCount(), releaseDraft.getExcludeLabels());
 
-        // FIXME: base this off the yaml template / ReleaseDraft effort
-        Map<String, String> props = new HashMap<>();
+        Map<String, String> props = new TreeMap<>();
         props.put("repoName", repo.getFullName());
         props.put("push.ref", pushRef);
-        props.put("push.headCommit", commitHeadSha);
-        props.put("lastRelease.tagName", (lastRelease != null) ? lastRelease.getTagName() : "");
-        props.put("lastRelease.publishedAt", (lastRelease != null) ? lastRelease.getPublished_at().toString() : "");
-        props.put("priorRelease.date", dateOfLastRelease.toString());
-        props.put("dateTo", dateTo.toString());
+        props.put(DraftCheckpoint.HEAD_COMMIT, commitHeadSha);
+        props.put(DraftCheckpoint.LAST_RELEASE_TAG, lastReleaseTag);
+        props.put("lastRelease.publishedAt", (lastRelease != null) ? lastRelease.getPublished_at().toInstant().toString() : "");
+        props.put("priorRelease.date", dateOfLastRelease.toInstant().toString());
+        props.put(DraftCheckpoint.DATE_TO, dateTo.toInstant().toString());
+        props.put(DraftCheckpoint.CONFIG_HASH, configHash);
+        if (window.isIncomplete())
+        {
+            // Not a checkpoint to continue from, the pull requests that were never looked at would be left out for good
+            LOG.warn("Changes of {} are incomplete (rate limit reserve reached), the next run rebuilds the draft", branch);
+            props.put(DraftCheckpoint.CHANGES_INCOMPLETE, "true");
+        }
+        if (branchPoint != null)
+            branchPoint.addTo(props);
 
-        updateReleaseDraft(repo, draft, changeSet, pushRef, props);
+        return updateReleaseDraft(draft, releaseDraft, changeSet, pushRef, props, checkpoint.getBodyHash());
     }
 
-    private static void updateReleaseDraft(GHRepository repo, GHRelease draft, List<ChangeEntry> changeSet, String branchRef, Map<String, String> props) throws IOException
+    /**
+     * The discovery selected with {@code INPUT_DISCOVERY}: {@code rest} (the default), {@code graphql}, {@code search}, {@code compare}
+     * or {@code local} (the git checkout at {@code INPUT_GIT_DIR}, or {@code GITHUB_WORKSPACE}).
+     * The REST and search discoveries skip the pull requests already in the {@code store},
+     * the REST lookups run on the {@code executor}.
+     */
+    private static ChangeDiscovery newChangeDiscovery(GitHub github, GHRepository repo, PullRequestStore store, HydrationExecutor executor) throws IOException
     {
-        try (StringWriter bodyWriter = new StringWriter();
-             PrintWriter out = new PrintWriter(bodyWriter))
+        String mode = StringUtils.defaultIfBlank(System.getenv("INPUT_DISCOVERY"), "rest").trim();
+        switch (NameUtil.toLowerCaseUS(mode))
         {
-
-            ReleaseDraft releaseDraft = loadReleaseDraft(repo, branchRef);
-
-            if (releaseDraft != null)
+            case "graphql":
+                return new GraphQLChangeDiscovery(GitHubUtil.newGraphQLClient(github), repo.getFullName(), repo.getUrl().toExternalForm());
+            case "search":
+                return new SearchChangeDiscovery(github, repo.getFullName(), newHydrator(github, repo, store, executor), store);
+            case "compare":
+            case "local":
             {
-                for (Category category : releaseDraft.getCategories())
-                {
-                    List<ChangeEntry> subset = changeSet.stream()
-                        .filter(ChangeEntry::isAvailable)
-                        .filter((change) -> !Collections.disjoint(change.getLabels(), category.getLabels()))
-                        .sorted(Comparator.comparingLong((c) -> c.getDate().getTime()))
-                        .collect(Collectors.toList());
-
-                    if (subset.isEmpty())
-                        continue; // skip this category
-
-                    System.out.println(String.format("entries for category labels %s: %s", category.getLabels(), subset));
-
-                    out.printf("## %s%n", category.getTitle());
-                    subset.stream().forEach( change ->
-                    {
-                        out.printf(" * %s @%s (#%d)%n", change.getTitle(), change.getAuthor(), change.getPullRequestId());
-                        change.setAvailable(false); // disable this change from other categories
-                    });
-                }
+                PullRequestHydrator hydrator = newHydrator(github, repo, store, executor);
+                PullRequestAssociations associations = (hydrator instanceof PullRequestAssociations) ? (PullRequestAssociations)hydrator : null;
+                ChangeDiscovery fallback = new SearchChangeDiscovery(github, repo.getFullName(), hydrator, store);
+                if ("compare".equalsIgnoreCase(mode))
+                    return new CompareChangeDiscovery(repo, hydrator, associations, fallback);
+                String gitDir = StringUtils.defaultIfBlank(System.getenv("INPUT_GIT_DIR"), StringUtils.defaultIfBlank(System.getenv("GITHUB_WORKSPACE"), "."));
+                return new LocalGitChangeDiscovery(Paths.get(gitDir), hydrator, associations, fallback);
             }
+            case "rest":
+                return new RestChangeDiscovery(repo, store, executor);
+            default:
+                LOG.warn("Unrecognized INPUT_DISCOVERY [{}], using rest", mode);
+                return new RestChangeDiscovery(repo, store, executor);
+        }
+    }
 
-            // Any changeset entries with no matching categories (even ones with no labels)
-            List<ChangeEntry> unwritten = changeSet.stream()
-                .filter(ChangeEntry::isAvailable)
-                .sorted(Comparator.comparingLong((c) -> c.getDate().getTime()))
-                .collect(Collectors.toList());
+    /**
+     * GraphQL (100 pull requests per request) when there is a token for it, otherwise REST.
+     */
+    private static PullRequestHydrator newHydrator(GitHub github, GHRepository repo, PullRequestStore store, HydrationExecutor executor)
+    {
+        try
+        {
+            return new GraphQLChangeDiscovery(GitHubUtil.newGraphQLClient(github), repo.getFullName(), repo.getUrl().toExternalForm());
+        }
+        catch (IOException e)
+        {
+            LOG.info("Using REST for pull request details: {}", e.getMessage());
+            return new RestChangeDiscovery(repo, store, executor);
+        }
+    }
 
-            System.out.println( "entries unwritten: "+ unwritten);
+    /**
+     * Write the draft body, unless it would say the same as it already does.
+     *
+     * @return true if the draft was written
+     */
+    private static boolean updateReleaseDraft(GHRelease draft, ReleaseDraft releaseDraft, ChangeBuckets changeSet, String branchRef, Map<String, String> props, String previousHash) throws IOException
+    {
+        BodyRenderer renderer = BodyRenderer.of(releaseDraft);
+        // Leave room for the truncation note and the markers
+        BoundedBodyWriter bodyWriter = new BoundedBodyWriter(BoundedBodyWriter.MAX_BODY_LENGTH - BODY_TRAILER_LENGTH);
+        try (PrintWriter out = new PrintWriter(bodyWriter))
+        {
+            renderer.render(out, changeSet);
+        }
 
-            if (!unwritten.isEmpty())
-            {
-                out.printf("## %,d Changes Found%n", unwritten.size());
-                unwritten.stream()
-                    .forEach(change ->
-                                 out.printf(" * %s @%s (#%d)%n", change.getTitle(), change.getAuthor(), change.getPullRequestId()));
-            }
+        Map<String, String> markers = new TreeMap<>(props);
+        markers.remove(DraftCheckpoint.BODY_TRUNCATED);
+        if (bodyWriter.isTruncated())
+        {
+            // The entries can't all be read back from the body
+            markers.put(DraftCheckpoint.BODY_TRUNCATED, "true");
+        }
 
-            // Add some markdown "comments" to track what was done.
-            // See https://stackoverflow.com/questions/4823468/comments-in-markdown for hokey syntax
-            out.println();
-            out.printf("[//]: # (Release %s)%n", branchRef);
-            for (Map.Entry<String, String> entry : props.entrySet())
-            {
-                out.printf("[//]: # (%s: %s)%n", entry.getKey(), entry.getValue());
-            }
+        Map<String, String> stableMarkers = new TreeMap<>(markers);
+        stableMarkers.keySet().removeIf(DraftCheckpoint::isVolatile);
+        if (bodyWriter.isTruncated())
+            stableMarkers.put("body.droppedLines", Integer.toString(bodyWriter.getDroppedLines()));
+        String bodyHash = BodyRenderer.hash(bodyWriter.toString(), stableMarkers);
+        if (bodyHash.equals(previousHash))
+        {
+            LOG.info("Draft body unchanged ({}), not updating: {}", bodyHash, draft.getHtmlUrl());
+            return false;
+        }
+        markers.put(DraftCheckpoint.BODY_HASH, bodyHash);
 
-            out.flush();
-            // Only update once all of the release body has been successfully generated
-            draft.update().body(bodyWriter.toString()).update();
-            System.out.println("Updated draft: " + draft);
+        StringBuilder body = new StringBuilder(bodyWriter.toString());
+        if (bodyWriter.isTruncated())
+        {
+            String branch = NameUtil.toBranchName(branchRef);
+            ChangelogAsset asset = new ChangelogAsset(ChangelogAsset.Format.of(System.getenv("INPUT_CHANGELOG_ASSET_FORMAT")));
+            LOG.warn("Release body over {} chars, {} lines left out, writing the full changelog to {}",
+                BoundedBodyWriter.MAX_BODY_LENGTH, bodyWriter.getDroppedLines(), asset.getName(branch));
+            String url = asset.upload(draft, branch, renderer, changeSet);
+            body.append(String.format("%n_%,d more lines not shown, see the full changelog: [%s](%s)_%n", bodyWriter.getDroppedLines(), asset.getName(branch), url));
+        }
+        LOG.debug("Release body is {} chars ({} bytes)", bodyWriter.getLength(), bodyWriter.getEncodedLength());
+
+        // Add some markdown "comments" to track what was done.
+        // See https://stackoverflow.com/questions/4823468/comments-in-markdown for hokey syntax
+        body.append(System.lineSeparator());
+        body.append(String.format("[//]: # (Release %s)%n", branchRef));
+        for (Map.Entry<String, String> entry : markers.entrySet())
+        {
+            body.append(String.format("[//]: # (%s: %s)%n", entry.getKey(), entry.getValue()));
         }
+
+        // Only update once all of the release body has been successfully generated
+        draft.update().body(body.toString()).update();
+        System.out.println("Updated draft: " + draft);
+        return true;
     }
 
     private static ReleaseDraft loadReleaseDraft(GHRepository repo, String ref) throws IOException
+    {
+        return ReleaseDraftCache.getDefault().get(repo, getDraftConfigPath(), NameUtil.toBranchName(ref));
+    }
+
+    static String getDraftConfigPath()
     {
         String draftRepoPath = System.getenv("INPUT_DRAFT_CONFIG");
         LOG.debug( "INPUT_DRAFT_CONFIG '{}'", draftRepoPath);
         if(StringUtils.isEmpty(draftRepoPath)){
-            draftRepoPath = ".github/release-config.yml";
+            draftRepoPath = ReleaseDraftCache.DEFAULT_PATH;
         }
-        try
+        return draftRepoPath;
+    }
+
+    /**
+     * Add (or replace) a single merged pull request in the draft of its base branch.
+     * <p>
+     * The entry is built from the event payload, so this costs the same few API calls
+     * however many changes the draft already has. The checkpoint markers are kept as they are,
+     * so the next push still reconciles the draft from the recorded head commit.
+     * </p>
+     *
+     * @param repo the repository of the pull request
+     * @param draftRepo the repository the drafts are kept in
+     * @param branch the base branch of the pull request
+     * @param change the merged pull request, built from the event payload
+     * @return true if the draft was written, false when it was left as it is
+     */
+    public boolean addChange(GHRepository repo, GHRepository draftRepo, String branch, ChangeEntry change) throws IOException
+    {
+        String branchRef = "refs/heads/" + branch;
+
+        GHRelease draft;
+        ReleaseDraft releaseDraft;
+        try (ConcurrentLookups lookups = new ConcurrentLookups())
         {
-            ref = NameUtil.toBranchName(ref);
-            LOG.info("get releaseDraft {}, {}", draftRepoPath, ref);
-            GHContent drafterContent = repo.getFileContent(draftRepoPath, ref);
-            if (drafterContent.isFile())
-            {
-                try (InputStream input = drafterContent.read())
-                {
-                    ReleaseDraft releaseDraft = ReleaseDraft.load(input);
-                    return releaseDraft;
-                }
-            }
+            Future<GHRelease> draftLookup = lookups.submit("active draft", () -> GHReleaseFinder.getActiveDraft(draftRepo, branchRef));
+            Future<ReleaseDraft> releaseDraftLookup = lookups.submit("release config", () -> loadReleaseDraft(repo, branchRef));
+            draft = lookups.get(draftLookup);
+            releaseDraft = lookups.get(releaseDraftLookup);
         }
-        catch (GHFileNotFoundException e)
+        if (!BodyRenderer.of(releaseDraft).canReadBack())
         {
-            // Not found in GitHub, use default
-            LOG.debug("Not found on github: {}", draftRepoPath);
+            // Can't keep the other entries, leave it to the next push
+            LOG.warn("Change template doesn't have $TITLE and $NUMBER, not adding PR #{} to the {} draft", change.getPullRequestId(), branch);
+            return false;
         }
+        DraftCheckpoint checkpoint = DraftCheckpoint.parse(draft.getBody(), releaseDraft, change.getBranch());
+        if (checkpoint.isTruncated())
+        {
+            LOG.warn("Draft body of {} was truncated, not adding PR #{}, leaving it to the next push", branch, change.getPullRequestId());
+            return false;
+        }
+
+        ChangeBuckets changeSet = new ChangeBuckets(releaseDraft);
+        changeSet.addAll(checkpoint.getEntries());
+        if (!changeSet.add(change))
+            LOG.info("Excluded PR #{} - {}", change.getPullRequestId(), change.getTitle());
 
-        String jarResource = "release-config.yml";
+        LOG.info("Adding PR #{} to the {} changes of the {} draft", change.getPullRequestId(), checkpoint.getEntries().size(), branch);
+        return updateReleaseDraft(draft, releaseDraft, changeSet, branchRef, new TreeMap<>(checkpoint.getProps()), checkpoint.getBodyHash());
+    }
 
-        URL url = Main.class.getClassLoader().getResource(jarResource);
-        if (url != null)
+    /**
+     * The draft can be updated from its checkpoint, instead of being rebuilt, if it was built
+     * with the same config and previous release, from a commit the new head commit is based on.
+     */
+    private static boolean canContinueFrom(GHRepository repo, DraftCheckpoint checkpoint, ReleaseDraft releaseDraft, String configHash, String lastReleaseTag, String commitHeadSha) throws IOException
+    {
+        if (!checkpoint.isComplete())
         {
-            try (InputStream input = url.openStream())
-            {
-                ReleaseDraft releaseDraft = ReleaseDraft.load(input);
-                return releaseDraft;
-            }
+            LOG.info("No checkpoint in the draft, rebuilding");
+            return false;
+        }
+        if (!BodyRenderer.of(releaseDraft).canReadBack())
+        {
+            LOG.info("Change template doesn't have $TITLE and $NUMBER, the entries can't be read back, rebuilding");
+            return false;
+        }
+        if (checkpoint.isTruncated())
+        {
+            LOG.info("Draft body was truncated, the entries can't all be read back, rebuilding");
+            return false;
+        }
+        if (!configHash.equals(checkpoint.get(DraftCheckpoint.CONFIG_HASH)))
+        {
+            LOG.info("Release draft config changed, rebuilding");
+            return false;
+        }
+        if (!lastReleaseTag.equals(checkpoint.get(DraftCheckpoint.LAST_RELEASE_TAG)))
+        {
+            LOG.info("New release since the checkpoint, rebuilding");
+            return false;
         }
 
-        // TODO: create raw ReleaseDraft in code?
+        String previousHead = checkpoint.get(DraftCheckpoint.HEAD_COMMIT);
+        if (previousHead.equals(commitHeadSha))
+            return true;
+        GHCompare.Status status;
+        try
+        {
+            status = repo.getCompare(previousHead, commitHeadSha).getStatus();
+        }
+        catch (GHFileNotFoundException e)
+        {
+            LOG.info("Checkpoint commit {} not found, rebuilding", previousHead);
+            return false;
+        }
+        if (status != GHCompare.Status.ahead && status != GHCompare.Status.identical)
+        {
+            LOG.info("History rewritten since the checkpoint {} ({}), rebuilding", previousHead, status);
+            return false;
+        }
+        LOG.info("Continuing from checkpoint {}", previousHead);
+        return true;
+    }
+
+    /**
+     * The reference to compare the head commit with: {@code INPUT_BASE_REF} (any reference
+     * {@link RefUtil#findReference(GHRepository, String)} supports), or the tag of the last release.
+     *
+     * @return the base reference, or null if there is none
+     */
+    private static String getBaseRef(GHRepository repo, GHRepository draftRepo, GHRelease lastRelease, BranchPoint branchPoint) throws IOException
+    {
+        String baseRef = System.getenv("INPUT_BASE_REF");
+        if (StringUtils.isNotBlank(baseRef))
+            return RefUtil.findReference(repo, baseRef.trim()).getSHA1();
+
+        // The release tag is only in the repository when the drafts are kept in it
+        if (lastRelease != null && repo.getFullName().equals(draftRepo.getFullName()))
+            return lastRelease.getTagName();
+        if (branchPoint != null)
+            return branchPoint.getSha();
         return null;
     }
 
-    private static Date getDateOfLastRelease(GHRepository repo, GHRelease lastRelease, String targetCommitish) throws IOException
+    /**
+     * @return the branch new branches are created from, {@code INPUT_UPSTREAM_BRANCH} or the default branch of the repository
+     */
+    private static String getParentBranch(GHRepository repo)
+    {
+        String upstream = System.getenv("INPUT_UPSTREAM_BRANCH");
+        if (StringUtils.isNotBlank(upstream))
+            return NameUtil.toBranchName(upstream.trim());
+        return repo.getDefaultBranch();
+    }
+
+    private static Date getDateOfLastRelease(GHRepository repo, GHRelease lastRelease, BranchPoint branchPoint) throws IOException
     {
         if (lastRelease != null)
         {
             return lastRelease.getPublished_at();
         }
 
-        // TODO: if there is no last release, we should find a reasonable Date to
-        //       limit the search of pull requests from.
-        //       This can either be the start of the branch (first commit in branch)
-        //       or based on some kind of information present in the draft below
-        //       which would let the devs manage the "last release" within the draft
-        //       itself with some kind of parseable text.
-
-        GHBranch branch = repo.getBranch(NameUtil.toBranchName(targetCommitish));
-        // TODO: we have a branch, we should be able to query git to find the first branch point
+        if (branchPoint != null)
+        {
+            return branchPoint.getDate();
+        }
 
-        // Fallback to Repository Creation Date
+        // The default branch (or a branch with no common history), all of it is new
         return repo.getCreatedAt();
     }
 }
@@ -51,12 +51,12 @@ public class HandleEvent
         try
         {
             LOG.info("Connecting to GitHub");
-            GitHub github = GitHub.connect();
-
-            GitHubUtil.showCurrentRateLimit(github);
+            GitHub github = GitHubUtil.smartConnect();
 
             LOG.info("Fetching repo to [{}]", repoName);
             GHRepository repo = github.getRepository(repoName);
+
+            GitHubUtil.showCurrentRateLimit(github);
         }
         catch (IOException e)
         {
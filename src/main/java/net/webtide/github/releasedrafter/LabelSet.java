@@ -0,0 +1,106 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+import java.util.TreeSet;
+
+import net.webtide.github.releasedrafter.release.CategoryIndex;
+
+/**
+ * An immutable set of labels, in name order.
+ * <p>
+ * Kept compact as every change has one: the names are interned (shared by all the changes with the label)
+ * and held in a sorted array. There is no process wide dictionary of the labels,
+ * the bits category matching works with are assigned per run, by the {@link CategoryIndex}.
+ * </p>
+ */
+public final class LabelSet extends AbstractList<String> implements RandomAccess
+{
+    public static final LabelSet EMPTY = new LabelSet(new String[0]);
+
+    private final String[] names;
+
+    private LabelSet(String[] names)
+    {
+        this.names = names;
+    }
+
+    /**
+     * @param labels the label names (can be null)
+     * @return the set of the labels
+     */
+    public static LabelSet of(Collection<String> labels)
+    {
+        if (labels == null || labels.isEmpty())
+            return EMPTY;
+        if (labels instanceof LabelSet)
+            return (LabelSet)labels;
+        TreeSet<String> sorted = new TreeSet<>(labels);
+        String[] names = new String[sorted.size()];
+        int i = 0;
+        for (String label : sorted)
+        {
+            names[i++] = label.intern();
+        }
+        return new LabelSet(names);
+    }
+
+    /**
+     * @param other another set
+     * @return true if the sets have a label in common
+     */
+    public boolean intersects(LabelSet other)
+    {
+        int i = 0;
+        int j = 0;
+        while (i < names.length && j < other.names.length)
+        {
+            int compare = names[i].compareTo(other.names[j]);
+            if (compare == 0)
+                return true;
+            if (compare < 0)
+                i++;
+            else
+                j++;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean contains(Object label)
+    {
+        return label instanceof String && Arrays.binarySearch(names, label) >= 0;
+    }
+
+    @Override
+    public String get(int index)
+    {
+        return names[index];
+    }
+
+    @Override
+    public int size()
+    {
+        return names.length;
+    }
+}
@@ -20,22 +20,28 @@ package net.webtide.github.releasedrafter;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Map;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.webtide.github.releasedrafter.PrefetchingIterable.PrefetchingIterator;
 import net.webtide.github.releasedrafter.logging.Logging;
+import net.webtide.github.releasedrafter.release.DraftJanitor;
+import net.webtide.github.releasedrafter.release.ReleaseDraftCache;
 import org.apache.commons.lang3.StringUtils;
 import org.kohsuke.github.GHBranch;
 import org.kohsuke.github.GHCommit;
 import org.kohsuke.github.GHEventPayload;
+import org.kohsuke.github.GHPullRequest;
 import org.kohsuke.github.GHRef;
 import org.kohsuke.github.GHRelease;
 import org.kohsuke.github.GHRepository;
 import org.kohsuke.github.GHTag;
 import org.kohsuke.github.GitHub;
-import org.kohsuke.github.PagedIterable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,18 +53,34 @@ public class Main
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(Main.class);
+    // The info dump shows (up to) 100 of each
+    private static final PageSizeAdvisor INFO_PAGES = new PageSizeAdvisor("info", 100, 100);
 
     public static void main(String[] commandLine)
     {
         try
         {
             GitHub github = GitHubUtil.smartConnect();
-            GitHubUtil.showCurrentRateLimit(github);
 
             String eventType = System.getenv("GITHUB_EVENT_NAME");
             if (eventType.equalsIgnoreCase("push"))
             {
                 Main.handlePushEvent(github);
+                GitHubUtil.showCurrentRateLimit(github);
+            }
+            else if (eventType.equalsIgnoreCase("pull_request"))
+            {
+                Main.handlePullRequestEvent(github);
+                GitHubUtil.showCurrentRateLimit(github);
+            }
+            else if (StringUtils.isNotBlank(System.getenv("INPUT_BRANCHES")) || StringUtils.isNotBlank(System.getenv("INPUT_JANITOR")))
+            {
+                // eg: on schedule, or workflow_dispatch
+                if (StringUtils.isNotBlank(System.getenv("INPUT_BRANCHES")))
+                    Main.handleBranchBatch(github);
+                if (StringUtils.isNotBlank(System.getenv("INPUT_JANITOR")))
+                    Main.handleJanitor(github);
+                GitHubUtil.showCurrentRateLimit(github);
             }
             else
             {
@@ -83,17 +105,31 @@ public class Main
             boolean showReleases = args.containsKey("show-releases");
             boolean showTags = args.containsKey("show-tags");
             boolean showRefs = args.containsKey("show-refs");
+            boolean janitor = args.containsKey("janitor");
             String repoName = args.getRequired("repo");
 
             LOG.info("Fetching repo to [{}]", repoName);
             GHRepository repo = github.getRepository(repoName);
 
+            if (janitor)
+            {
+                LOG.info("--- Draft Janitor");
+                GHRepository draftRepo = args.containsKey("draft-repo") ? github.getRepository(args.get("draft-repo")) : repo;
+                DraftJanitor draftJanitor = new DraftJanitor(repo, draftRepo, !args.containsKey("delete"));
+                if (args.containsKey("max-deletes"))
+                    draftJanitor.setMaxDeletes(args.getInteger("max-deletes"));
+                draftJanitor.run();
+            }
+
             if (showRefs)
             {
                 LOG.info("--- Refs");
-                for (GHRef ref : repo.getRefs())
+                try (PrefetchingIterator<GHRef> refs = PrefetchingIterable.of(repo.listRefs(), INFO_PAGES).iterator())
                 {
-                    LOG.info("ref: {}", ref.getRef());
+                    while (refs.hasNext())
+                    {
+                        LOG.info("ref: {}", refs.next().getRef());
+                    }
                 }
             }
 
@@ -127,37 +163,39 @@ public class Main
             {
                 LOG.info("--- Releases");
                 int maxReleasesToShow = 100;
-                PagedIterable<GHRelease> releases = repo.listReleases();
-                for (GHRelease release : releases.withPageSize(100))
+                try (PrefetchingIterator<GHRelease> releases = PrefetchingIterable.of(repo.listReleases(), INFO_PAGES).iterator())
                 {
-                    if (maxReleasesToShow <= 0)
-                        break;
-                    String label = "";
-                    if (release.isDraft())
-                        label += " DRAFT";
-                    if (release.isPrerelease())
-                        label += " PRERELEASE";
-                    LOG.info("Release {} tag=[{}] targetCommitish=[{}] {}",
-                        release.getName(),
-                        release.getTagName(),
-                        release.getTargetCommitish(),
-                        label);
-                    maxReleasesToShow--;
+                    while (releases.hasNext() && maxReleasesToShow > 0)
+                    {
+                        GHRelease release = releases.next();
+                        String label = "";
+                        if (release.isDraft())
+                            label += " DRAFT";
+                        if (release.isPrerelease())
+                            label += " PRERELEASE";
+                        LOG.info("Release {} tag=[{}] targetCommitish=[{}] {}",
+                            release.getName(),
+                            release.getTagName(),
+                            release.getTargetCommitish(),
+                            label);
+                        maxReleasesToShow--;
+                    }
                 }
             }
 
             if (showTags)
             {
                 LOG.info("--- Tags");
-                PagedIterable<GHTag> tags = repo.listTags();
                 int maxTagsToShow = 100;
-                for (GHTag tag : tags)
+                try (PrefetchingIterator<GHTag> tags = PrefetchingIterable.of(repo.listTags(), INFO_PAGES).iterator())
                 {
-                    if (maxTagsToShow <= 0)
-                        break;
-                    GHCommit commit = tag.getCommit();
-                    LOG.info("Tag {}: {}", tag.getName(), commit.getSHA1());
-                    maxTagsToShow--;
+                    while (tags.hasNext() && maxTagsToShow > 0)
+                    {
+                        GHTag tag = tags.next();
+                        GHCommit commit = tag.getCommit();
+                        LOG.info("Tag {}: {}", tag.getName(), commit.getSHA1());
+                        maxTagsToShow--;
+                    }
                 }
             }
         }
@@ -169,6 +207,96 @@ public class Main
         }
     }
 
+    private static void handlePullRequestEvent(GitHub github) throws IOException
+    {
+        String eventPathEnv = System.getenv("GITHUB_EVENT_PATH");
+        if (StringUtils.isBlank(eventPathEnv))
+        {
+            throw new RuntimeException("No GITHUB_EVENT_PATH env value found");
+        }
+
+        String draftRepoName = System.getenv("INPUT_DRAFT_REPO");
+
+        Path eventPath = Paths.get(eventPathEnv);
+        String payload = Files.readString(eventPath);
+        GHEventPayload.PullRequest event = github.parseEventPayload(new StringReader(payload), GHEventPayload.PullRequest.class);
+        GHPullRequest pullRequest = event.getPullRequest();
+        if (!"closed".equals(event.getAction()) || !pullRequest.isMerged())
+        {
+            LOG.info("Skipping pull_request event: action={}, merged={}", event.getAction(), pullRequest.isMerged());
+            return;
+        }
+        ChangeEntry change = ChangeEntryBuilder.fromEvent(pullRequest, ChangeEntryBuilder.toEventLabels(new ObjectMapper().readTree(payload)));
+
+        GHRepository repo = event.getRepository();
+        GHRepository draftRepo = repo;
+        if (StringUtils.isNotBlank(draftRepoName))
+        {
+            draftRepo = github.getRepository(draftRepoName);
+        }
+        LOG.info("repoName {} with draftRepo fullName: {}", repo.getFullName(), draftRepo.getFullName());
+
+        GithubDraftUpdate githubDraftUpdate = new GithubDraftUpdate();
+        boolean updated = githubDraftUpdate.addChange(repo, draftRepo, pullRequest.getBase().getRef(), change);
+        GitHubUtil.setOutput("updated", Boolean.toString(updated));
+    }
+
+    private static void handleBranchBatch(GitHub github) throws IOException
+    {
+        String branchGlob = System.getenv("INPUT_BRANCHES").trim();
+        String repoName = System.getenv("GITHUB_REPOSITORY");
+        if (StringUtils.isBlank(repoName))
+        {
+            throw new RuntimeException("No GITHUB_REPOSITORY env value found");
+        }
+        String draftRepoName = System.getenv("INPUT_DRAFT_REPO");
+
+        GHRepository repo = github.getRepository(repoName);
+        GHRepository draftRepo = repo;
+        if (StringUtils.isNotBlank(draftRepoName))
+        {
+            draftRepo = github.getRepository(draftRepoName);
+        }
+
+        BranchBatch batch = new BranchBatch(github, repo, draftRepo, branchGlob);
+        batch.setConcurrency((int)GitHubUtil.getEnvLong("INPUT_BRANCH_CONCURRENCY", BranchBatch.DEFAULT_CONCURRENCY));
+        batch.setCreateDrafts("true".equalsIgnoreCase(StringUtils.trim(System.getenv("INPUT_BRANCH_CREATE_DRAFTS"))));
+        List<BranchBatch.Result> results = batch.run();
+        batch.printSummary(System.out, results);
+        GitHubUtil.setOutput("updated", Boolean.toString(BranchBatch.isAnyUpdated(results)));
+    }
+
+    private static void handleJanitor(GitHub github) throws IOException
+    {
+        String mode = System.getenv("INPUT_JANITOR").trim();
+        boolean dryRun;
+        if (mode.equalsIgnoreCase("dry-run"))
+            dryRun = true;
+        else if (mode.equalsIgnoreCase("delete"))
+            dryRun = false;
+        else
+            throw new RuntimeException("Unknown janitor mode (expected 'dry-run' or 'delete'): " + mode);
+
+        String repoName = System.getenv("GITHUB_REPOSITORY");
+        if (StringUtils.isBlank(repoName))
+        {
+            throw new RuntimeException("No GITHUB_REPOSITORY env value found");
+        }
+        String draftRepoName = System.getenv("INPUT_DRAFT_REPO");
+
+        GHRepository repo = github.getRepository(repoName);
+        GHRepository draftRepo = repo;
+        if (StringUtils.isNotBlank(draftRepoName))
+        {
+            draftRepo = github.getRepository(draftRepoName);
+        }
+        LOG.info("Cleaning up the drafts of {} in {} ({})", repoName, draftRepo.getFullName(), mode);
+
+        DraftJanitor draftJanitor = new DraftJanitor(repo, draftRepo, dryRun);
+        draftJanitor.setMaxDeletes((int)GitHubUtil.getEnvLong("INPUT_JANITOR_MAX_DELETES", DraftJanitor.DEFAULT_MAX_DELETES));
+        draftJanitor.run();
+    }
+
     private static void handlePushEvent(GitHub github) throws IOException
     {
         String eventPathEnv = System.getenv("GITHUB_EVENT_PATH");
@@ -193,9 +321,11 @@ public class Main
                 draftRepo = github.getRepository(draftRepoName);
             }
             LOG.info("repoName {} with draftRepo fullName: {}", repoName, draftRepo.getFullName());
+            ReleaseDraftCache.getDefault().onPush(push, GithubDraftUpdate.getDraftConfigPath());
 
             GithubDraftUpdate githubDraftUpdate = new GithubDraftUpdate();
-            githubDraftUpdate.update(github, repo, draftRepo, push.getRef(), push.getHead());
+            boolean updated = githubDraftUpdate.update(github, repo, draftRepo, push.getRef(), push.getHead());
+            GitHubUtil.setOutput("updated", Boolean.toString(updated));
         }
     }
 }
@@ -0,0 +1,499 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import net.webtide.github.releasedrafter.PrefetchingIterable.PrefetchingIterator;
+import net.webtide.github.releasedrafter.http.RateLimitScheduler;
+import net.webtide.github.releasedrafter.http.RequestMeter;
+import net.webtide.github.releasedrafter.release.ReleaseDraftCache;
+import org.apache.commons.lang3.StringUtils;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GitHub;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Refresh the drafts of many repositories (eg: all the repositories of an organization with a release config), in one run.
+ * <p>
+ * The connection, its rate limit budget and the caches are shared by all the repositories.
+ * The work (setting up a repository: its branches and releases, then refreshing each of its branches)
+ * goes through one queue, served by {@code concurrency} workers:
+ * </p>
+ * <ul>
+ *     <li>The repositories take turns (round robin), one unit of work each, so a repository with many branches
+ *     doesn't hold back the others.</li>
+ *     <li>At most {@code maxPerRepository} units of a repository run at once, so one large repository
+ *     can't take all the workers.</li>
+ * </ul>
+ * <p>
+ * The result is a JSON summary, with the time and API requests of each repository and branch, and whether the draft of each branch was written.
+ * </p>
+ */
+public class OrgSweep
+{
+    private static final Logger LOG = LoggerFactory.getLogger(OrgSweep.class);
+    public static final int DEFAULT_CONCURRENCY = 4;
+    public static final int DEFAULT_MAX_PER_REPOSITORY = 1;
+    private static final PageSizeAdvisor REPOSITORY_PAGES = new PageSizeAdvisor("repositories", 100, 30);
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    private final GitHub github;
+    private final String branchGlob;
+    private int concurrency = DEFAULT_CONCURRENCY;
+    private int maxPerRepository = DEFAULT_MAX_PER_REPOSITORY;
+    private boolean createDrafts;
+
+    // The repositories with work left, in turn order
+    private final Deque<Sweep> turns = new ArrayDeque<>();
+    private int active;
+
+    /**
+     * @param github the connection
+     * @param branchGlob the branches to refresh in each repository (see {@link BranchBatch}),
+     * or null for the default branch of each repository
+     */
+    public OrgSweep(GitHub github, String branchGlob)
+    {
+        this.github = github;
+        this.branchGlob = branchGlob;
+    }
+
+    public static void main(String[] commandLine)
+    {
+        try
+        {
+            Args args = new Args(commandLine);
+
+            String org = args.get("org");
+            String repoNames = args.get("repos");
+            if (StringUtils.isBlank(org) && StringUtils.isBlank(repoNames))
+                throw new Args.ArgException("Missing required value for option --org=<organization> or --repos=<owner/name,...>");
+
+            GitHub github = GitHubUtil.smartConnect();
+            OrgSweep sweep = new OrgSweep(github, args.containsKey("all-branches") ? BranchBatch.ALL_BRANCHES : args.get("branches"));
+            if (args.containsKey("concurrency"))
+                sweep.setConcurrency(args.getInteger("concurrency"));
+            if (args.containsKey("max-per-repo"))
+                sweep.setMaxPerRepository(args.getInteger("max-per-repo"));
+            sweep.setCreateDrafts(args.containsKey("create-drafts"));
+
+            List<GHRepository> repos = new ArrayList<>();
+            if (StringUtils.isNotBlank(repoNames))
+            {
+                for (String repoName : repoNames.split(","))
+                {
+                    if (StringUtils.isNotBlank(repoName))
+                        repos.add(github.getRepository(repoName.trim()));
+                }
+            }
+            else
+            {
+                repos = sweep.findRepositories(org, GithubDraftUpdate.getDraftConfigPath());
+            }
+
+            ObjectNode summary = sweep.run(repos);
+            summary.put("org", org);
+            String output = args.get("output");
+            if (StringUtils.isNotBlank(output))
+            {
+                try (OutputStream out = Files.newOutputStream(Paths.get(output)))
+                {
+                    MAPPER.writeValue(out, summary);
+                }
+                LOG.info("Wrote the summary to {}", output);
+            }
+            else
+            {
+                System.out.println(MAPPER.writeValueAsString(summary));
+            }
+            GitHubUtil.showCurrentRateLimit(github);
+        }
+        catch (Args.ArgException e)
+        {
+            System.err.printf("COMMAND LINE ERROR: %s%n", e.getMessage());
+            System.err.println("Usage: release-drafter.jar [options]");
+            System.exit(-1);
+        }
+        catch (IOException e)
+        {
+            LOG.warn("Oops", e);
+        }
+    }
+
+    public void setConcurrency(int concurrency)
+    {
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    public void setMaxPerRepository(int maxPerRepository)
+    {
+        this.maxPerRepository = Math.max(1, maxPerRepository);
+    }
+
+    /**
+     * @param createDrafts true to also refresh the matching branches without a draft, creating it (see {@link BranchBatch#setCreateDrafts(boolean)})
+     */
+    public void setCreateDrafts(boolean createDrafts)
+    {
+        this.createDrafts = createDrafts;
+    }
+
+    /**
+     * @param org the organization
+     * @param configPath the path of the release config
+     * @return the (not archived) repositories of the organization with a release config on their default branch
+     */
+    public List<GHRepository> findRepositories(String org, String configPath) throws IOException
+    {
+        List<GHRepository> repos = new ArrayList<>();
+        try (PrefetchingIterator<GHRepository> all = PrefetchingIterable.of(github.getOrganization(org).listRepositories(), REPOSITORY_PAGES).iterator())
+        {
+            while (all.hasNext())
+            {
+                GHRepository repo = all.next();
+                if (repo.isArchived())
+                    continue;
+                if (ReleaseDraftCache.getDefault().exists(repo, configPath, repo.getDefaultBranch()))
+                    repos.add(repo);
+                else
+                    LOG.debug("No {} in {}", configPath, repo.getFullName());
+            }
+        }
+        LOG.info("Found {} repositories with {} in {}", repos.size(), configPath, org);
+        return repos;
+    }
+
+    /**
+     * Refresh the drafts of the repositories.
+     *
+     * @param repos the repositories (each one keeps its own drafts)
+     * @return the summary
+     */
+    public ObjectNode run(List<GHRepository> repos) throws IOException
+    {
+        Instant startedAt = Instant.now();
+        long start = System.nanoTime();
+        List<Sweep> sweeps = new ArrayList<>();
+        synchronized (this)
+        {
+            for (GHRepository repo : repos)
+            {
+                String glob = (branchGlob != null) ? branchGlob : repo.getDefaultBranch();
+                BranchBatch batch = new BranchBatch(github, repo, repo, glob);
+                batch.setCreateDrafts(createDrafts);
+                Sweep sweep = new Sweep(batch);
+                sweeps.add(sweep);
+                turns.add(sweep);
+            }
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency, (runnable) ->
+        {
+            Thread thread = new Thread(runnable, "sweep-" + THREADS.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try
+        {
+            for (int i = 0; i < concurrency; i++)
+            {
+                workers.execute(this::work);
+            }
+            awaitAll();
+        }
+        finally
+        {
+            workers.shutdownNow();
+        }
+
+        RateLimitScheduler scheduler = GitHubUtil.getRateLimitScheduler();
+        ObjectNode summary = MAPPER.createObjectNode();
+        summary.put("startedAt", startedAt.toString());
+        summary.put("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        summary.put("concurrency", concurrency);
+        summary.put("maxPerRepository", maxPerRepository);
+        ObjectNode requests = summary.putObject("requests");
+        requests.put("reads", scheduler.getReadCount());
+        requests.put("writes", scheduler.getWriteCount());
+        RateLimitScheduler.Budget core = scheduler.getBudget("core");
+        if (core != null)
+        {
+            ObjectNode rateLimit = summary.putObject("rateLimit");
+            rateLimit.put("remaining", core.getRemaining());
+            rateLimit.put("resetAt", Instant.ofEpochSecond(core.getResetEpochSeconds()).toString());
+        }
+        ArrayNode repositories = summary.putArray("repositories");
+        for (Sweep sweep : sweeps)
+        {
+            sweep.addTo(repositories.addObject());
+        }
+        return summary;
+    }
+
+    private synchronized void awaitAll() throws IOException
+    {
+        try
+        {
+            while (!turns.isEmpty() || active > 0)
+            {
+                wait();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted sweeping the repositories", e);
+        }
+    }
+
+    /**
+     * A worker: take the next unit of work, until there is none left.
+     */
+    private void work()
+    {
+        while (true)
+        {
+            Sweep sweep;
+            Runnable unit;
+            synchronized (this)
+            {
+                try
+                {
+                    while ((sweep = nextTurn()) == null)
+                    {
+                        if (turns.isEmpty())
+                            return;
+                        wait();
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+                unit = sweep.take();
+                active++;
+            }
+
+            try
+            {
+                unit.run();
+            }
+            finally
+            {
+                boolean done;
+                synchronized (this)
+                {
+                    active--;
+                    sweep.running--;
+                    done = sweep.isDone();
+                    if (done)
+                        turns.remove(sweep);
+                    notifyAll();
+                }
+                if (done)
+                    sweep.close();
+            }
+        }
+    }
+
+    /**
+     * @return the first repository in turn order with work that can start now (moved to the end of the turns), or null
+     */
+    private Sweep nextTurn()
+    {
+        for (Iterator<Sweep> i = turns.iterator(); i.hasNext(); )
+        {
+            Sweep sweep = i.next();
+            if (sweep.isReady(maxPerRepository))
+            {
+                i.remove();
+                turns.addLast(sweep);
+                return sweep;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The work of one repository: set up, then one unit per branch.
+     * The state is guarded by the {@link OrgSweep} lock.
+     */
+    private class Sweep
+    {
+        private final BranchBatch batch;
+        private final RequestMeter setupMeter;
+        private final List<BranchBatch.Result> results = new ArrayList<>();
+        private Deque<String> pending;
+        private boolean settingUp;
+        private int running;
+        private String status = "ok";
+        private String failure;
+        private long setupNanos;
+
+        Sweep(BranchBatch batch)
+        {
+            this.batch = batch;
+            this.setupMeter = new RequestMeter(batch.getRepository().getFullName());
+        }
+
+        boolean isReady(int maxRunning)
+        {
+            if (pending == null)
+                return !settingUp;
+            return !pending.isEmpty() && running < maxRunning;
+        }
+
+        boolean isDone()
+        {
+            return pending != null && pending.isEmpty() && running == 0;
+        }
+
+        Runnable take()
+        {
+            running++;
+            if (pending == null)
+            {
+                settingUp = true;
+                return this::setUp;
+            }
+            String branch = pending.poll();
+            return () -> refresh(branch);
+        }
+
+        private void setUp()
+        {
+            String repoName = batch.getRepository().getFullName();
+            List<String> branches = new ArrayList<>();
+            String setupStatus = "ok";
+            String setupFailure = null;
+            long start = System.nanoTime();
+            try
+            {
+                if (!GitHubUtil.getRateLimitScheduler().hasReadBudget("core"))
+                {
+                    setupStatus = "skipped";
+                    setupFailure = "rate limit reserve reached";
+                }
+                else
+                {
+                    branches = setupMeter.call(batch::prepare);
+                }
+            }
+            catch (Exception e)
+            {
+                LOG.warn("Unable to set up {}", repoName, e);
+                setupStatus = RateLimitScheduler.isBudgetExhausted(e) ? "skipped" : "failed";
+                setupFailure = String.valueOf(e.getMessage());
+            }
+            LOG.info("Sweeping {} branches of {}", branches.size(), repoName);
+            synchronized (OrgSweep.this)
+            {
+                setupNanos = System.nanoTime() - start;
+                status = setupStatus;
+                failure = setupFailure;
+                pending = new ArrayDeque<>(branches);
+            }
+        }
+
+        private void refresh(String branch)
+        {
+            BranchBatch.Result result;
+            try
+            {
+                result = batch.refresh(branch);
+            }
+            catch (IOException e)
+            {
+                LOG.warn("Unable to refresh {} of {}", branch, batch.getRepository().getFullName(), e);
+                return;
+            }
+            synchronized (OrgSweep.this)
+            {
+                results.add(result);
+            }
+        }
+
+        void close()
+        {
+            try
+            {
+                batch.close();
+            }
+            catch (IOException e)
+            {
+                LOG.warn("Unable to close the pull request store of {}", batch.getRepository().getFullName(), e);
+            }
+        }
+
+        void addTo(ObjectNode repository)
+        {
+            synchronized (OrgSweep.this)
+            {
+                repository.put("repository", batch.getRepository().getFullName());
+                boolean partial = results.stream().anyMatch((result) -> !result.isSuccess());
+                repository.put("status", ("ok".equals(status) && partial) ? "partial" : status);
+                if (failure != null)
+                    repository.put("error", failure);
+                ObjectNode setup = repository.putObject("setup");
+                setup.put("millis", TimeUnit.NANOSECONDS.toMillis(setupNanos));
+                setup.put("reads", setupMeter.getReadCount());
+                setup.put("writes", setupMeter.getWriteCount());
+                long reads = setupMeter.getReadCount();
+                long writes = setupMeter.getWriteCount();
+                ArrayNode branches = repository.putArray("branches");
+                for (BranchBatch.Result result : results)
+                {
+                    ObjectNode branch = branches.addObject();
+                    branch.put("branch", result.getBranch());
+                    branch.put("status", result.isSuccess() ? "ok" : "failed");
+                    if (!result.isSuccess())
+                        branch.put("error", result.getFailure());
+                    branch.put("updated", result.isUpdated());
+                    branch.put("millis", result.getMillis());
+                    branch.put("reads", result.getReadCount());
+                    branch.put("writes", result.getWriteCount());
+                    reads += result.getReadCount();
+                    writes += result.getWriteCount();
+                }
+                repository.put("reads", reads);
+                repository.put("writes", writes);
+            }
+        }
+    }
+}
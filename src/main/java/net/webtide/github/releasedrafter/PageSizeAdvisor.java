@@ -0,0 +1,144 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+/**
+ * Picks the page size of a listing from how its previous pages went.
+ * <p>
+ * The time of a page is modeled as a fixed round trip plus a per item cost
+ * (which grows with the size of the items, eg: a pull request is much bigger than a tag),
+ * both fitted on the last {@value #SAMPLES} pages.
+ * The advised page size is the one where the round trip is at most a quarter of the page time,
+ * so small items get big pages and big items don't hold up the first results.
+ * Without pages of different sizes to fit on, it goes by how many items the consumers actually use:
+ * a scan that stops after 15 items doesn't need pages of 100, one that goes through hundreds needs
+ * fewer round trips than pages of 10 give it.
+ * </p>
+ */
+public class PageSizeAdvisor
+{
+    public static final int MAX_PAGE_SIZE = 100;
+    private static final int SAMPLES = 16;
+
+    private final String name;
+    private final int initialPageSize;
+    private final int minPageSize;
+    private final int[] items = new int[SAMPLES];
+    private final long[] nanos = new long[SAMPLES];
+    private int samples;
+    private int pageSize;
+    private double consumed = -1;
+
+    /**
+     * @param name the name of the listing (for logging)
+     * @param initialPageSize the page size until there are enough pages to go by
+     * @param minPageSize the smallest page size to advise
+     */
+    public PageSizeAdvisor(String name, int initialPageSize, int minPageSize)
+    {
+        this.name = name;
+        this.minPageSize = Math.max(1, Math.min(minPageSize, MAX_PAGE_SIZE));
+        this.initialPageSize = clamp(initialPageSize);
+        this.pageSize = this.initialPageSize;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public synchronized int getPageSize()
+    {
+        return pageSize;
+    }
+
+    /**
+     * @param count the number of items in the page
+     * @param elapsedNanos the time it took to get the page
+     */
+    public synchronized void onPage(int count, long elapsedNanos)
+    {
+        if (count <= 0)
+            return;
+        int index = samples % SAMPLES;
+        items[index] = count;
+        nanos[index] = elapsedNanos;
+        samples++;
+        advise();
+    }
+
+    /**
+     * @param count the number of items the consumer used before it stopped
+     * @param exhausted true if the consumer went through all the items
+     */
+    public synchronized void onScan(int count, boolean exhausted)
+    {
+        if (exhausted)
+            count = Math.max(count, MAX_PAGE_SIZE);
+        consumed = (consumed < 0) ? count : (0.7 * consumed) + (0.3 * count);
+        advise();
+    }
+
+    private void advise()
+    {
+        int advised = (consumed >= 0) ? (int)Math.ceil(consumed) : initialPageSize;
+
+        int n = Math.min(samples, SAMPLES);
+        if (n >= 2)
+        {
+            double meanItems = 0;
+            double meanNanos = 0;
+            for (int i = 0; i < n; i++)
+            {
+                meanItems += items[i];
+                meanNanos += nanos[i];
+            }
+            meanItems /= n;
+            meanNanos /= n;
+            double covariance = 0;
+            double variance = 0;
+            for (int i = 0; i < n; i++)
+            {
+                covariance += (items[i] - meanItems) * (nanos[i] - meanNanos);
+                variance += (items[i] - meanItems) * (items[i] - meanItems);
+            }
+            // Needs pages of different sizes to tell the round trip from the per item cost
+            if (variance >= 1 && covariance > 0)
+            {
+                double perItem = covariance / variance;
+                double roundTrip = Math.max(0, meanNanos - (perItem * meanItems));
+                int latencyBound = (int)Math.min(MAX_PAGE_SIZE, Math.ceil(3 * roundTrip / perItem));
+                advised = (consumed >= 0) ? Math.min(advised, latencyBound) : latencyBound;
+            }
+        }
+
+        pageSize = clamp(advised);
+    }
+
+    private int clamp(int size)
+    {
+        return Math.max(minPageSize, Math.min(MAX_PAGE_SIZE, size));
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("%s[pageSize=%d, pages=%d, consumed=%.1f]", name, pageSize, samples, consumed);
+    }
+}
@@ -0,0 +1,249 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import net.webtide.github.releasedrafter.http.RequestMeter;
+import org.kohsuke.github.GHException;
+import org.kohsuke.github.PagedIterable;
+import org.kohsuke.github.PagedIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Iterates a paginated listing with the next page requested while the current one is consumed,
+ * so the round trip of page N+1 overlaps the processing of page N.
+ * <p>
+ * The page size comes from the {@link PageSizeAdvisor} of the listing, which learns from the
+ * pages of the previous scans.
+ * A consumer that stops early must {@link PrefetchingIterator#close() close} the iterator
+ * (eg: try-with-resources, or {@link Stream#close()}), which cancels the page being prefetched.
+ * </p>
+ *
+ * @param <T> the type of the items
+ */
+public class PrefetchingIterable<T> implements Iterable<T>
+{
+    private static final Logger LOG = LoggerFactory.getLogger(PrefetchingIterable.class);
+    private static final AtomicInteger THREADS = new AtomicInteger();
+    private static final ExecutorService PREFETCH = Executors.newCachedThreadPool((runnable) ->
+    {
+        Thread thread = new Thread(runnable, "prefetch-" + THREADS.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final PageSource<T> source;
+    private final PageSizeAdvisor advisor;
+
+    public PrefetchingIterable(PageSource<T> source, PageSizeAdvisor advisor)
+    {
+        this.source = source;
+        this.advisor = advisor;
+    }
+
+    public static <T> PrefetchingIterable<T> of(PagedIterable<T> pages, PageSizeAdvisor advisor)
+    {
+        return new PrefetchingIterable<>((pageSize) -> new PagedIteratorPages<>(pages.withPageSize(pageSize).iterator()), advisor);
+    }
+
+    /**
+     * @return a stream of the items, that cancels the prefetch when closed
+     */
+    public static <T> Stream<T> stream(PagedIterable<T> pages, PageSizeAdvisor advisor)
+    {
+        PrefetchingIterator<T> iterator = of(pages, advisor).iterator();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(iterator::close);
+    }
+
+    @Override
+    public PrefetchingIterator<T> iterator()
+    {
+        int pageSize = advisor.getPageSize();
+        return new PrefetchingIterator<>(source.open(pageSize), advisor);
+    }
+
+    /**
+     * Opens the pages of a listing.
+     */
+    public interface PageSource<T>
+    {
+        Pages<T> open(int pageSize);
+    }
+
+    /**
+     * The pages of a listing, fetched one after the other (never concurrently).
+     */
+    public interface Pages<T>
+    {
+        boolean hasNextPage();
+
+        /**
+         * @throws GHException if the page could not be fetched
+         */
+        List<T> nextPage();
+    }
+
+    private static class PagedIteratorPages<T> implements Pages<T>
+    {
+        private final PagedIterator<T> iterator;
+
+        PagedIteratorPages(PagedIterator<T> iterator)
+        {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNextPage()
+        {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public List<T> nextPage()
+        {
+            return iterator.nextPage();
+        }
+    }
+
+    public static class PrefetchingIterator<T> implements Iterator<T>, Closeable
+    {
+        private final Pages<T> pages;
+        private final PageSizeAdvisor advisor;
+        private final Callable<List<T>> fetch;
+        private Future<List<T>> prefetch;
+        private List<T> page = Collections.emptyList();
+        private int index;
+        private int consumed;
+        private boolean exhausted;
+        private boolean closed;
+
+        PrefetchingIterator(Pages<T> pages, PageSizeAdvisor advisor)
+        {
+            this.pages = pages;
+            this.advisor = advisor;
+            // The pages are requests of the work iterating them
+            this.fetch = RequestMeter.wrap(this::fetch);
+            this.prefetch = PREFETCH.submit(fetch);
+        }
+
+        private List<T> fetch()
+        {
+            long start = System.nanoTime();
+            if (!pages.hasNextPage())
+                return Collections.emptyList();
+            List<T> next = pages.nextPage();
+            advisor.onPage(next.size(), System.nanoTime() - start);
+            return next;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            if (index < page.size())
+                return true;
+            if (exhausted || closed)
+                return false;
+
+            page = await(prefetch);
+            index = 0;
+            if (page.isEmpty())
+            {
+                prefetch = null;
+                exhausted = true;
+                advisor.onScan(consumed, true);
+                return false;
+            }
+            // The previous fetch is done, so the pages are not touched concurrently
+            prefetch = PREFETCH.submit(fetch);
+            return true;
+        }
+
+        private List<T> await(Future<List<T>> future)
+        {
+            try
+            {
+                return future.get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                close();
+                throw new GHException("Interrupted waiting on page of " + advisor.getName(), e);
+            }
+            catch (ExecutionException e)
+            {
+                exhausted = true;
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException)cause;
+                if (cause instanceof Error)
+                    throw (Error)cause;
+                throw new GHException("Failed to fetch page of " + advisor.getName(), cause);
+            }
+            catch (CancellationException e)
+            {
+                exhausted = true;
+                return Collections.emptyList();
+            }
+        }
+
+        @Override
+        public T next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            consumed++;
+            return page.get(index++);
+        }
+
+        /**
+         * Stop iterating, the page being prefetched (if any) is cancelled.
+         */
+        @Override
+        public void close()
+        {
+            if (closed)
+                return;
+            closed = true;
+            if (prefetch != null && prefetch.cancel(true))
+                LOG.debug("Cancelled prefetch of {} after {} items", advisor.getName(), consumed);
+            prefetch = null;
+            if (!exhausted)
+                advisor.onScan(consumed, false);
+        }
+    }
+}
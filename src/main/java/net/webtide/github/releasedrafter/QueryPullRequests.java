@@ -23,10 +23,21 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
+import net.webtide.github.releasedrafter.PrefetchingIterable.PrefetchingIterator;
+import net.webtide.github.releasedrafter.discovery.ChangePublisher;
+import net.webtide.github.releasedrafter.discovery.ChangeSubscriber;
+import net.webtide.github.releasedrafter.discovery.HydrationExecutor;
+import net.webtide.github.releasedrafter.discovery.PullRequestStore;
+import net.webtide.github.releasedrafter.http.RateLimitScheduler;
 import net.webtide.github.releasedrafter.logging.Logging;
 import org.kohsuke.github.GHCommit;
 import org.kohsuke.github.GHDirection;
+import org.kohsuke.github.GHException;
 import org.kohsuke.github.GHIssueState;
 import org.kohsuke.github.GHPullRequest;
 import org.kohsuke.github.GHPullRequestQueryBuilder;
@@ -44,6 +55,7 @@ public class QueryPullRequests
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(QueryPullRequests.class);
+    private static final PageSizeAdvisor PULL_REQUEST_PAGES = new PageSizeAdvisor("pulls", 10, 10);
 
     public static void main(String[] commandLine)
     {
@@ -57,7 +69,6 @@ public class QueryPullRequests
             String to = args.getRequired("to");
 
             GitHub github = GitHubUtil.smartConnect();
-            GitHubUtil.showCurrentRateLimit(github);
 
             LOG.info("Fetching repo to [{}]", repoName);
             GHRepository repo = github.getRepository(repoName);
@@ -80,11 +91,22 @@ public class QueryPullRequests
 
             LOG.info("In Date Range: {} [{}] -> {} [{}]", dateFrom, from, dateTo, to);
 
-            List<ChangeEntry> changes = QueryPullRequests.findClosedAndMergedPullRequests(repo, branch, dateFrom, dateTo, maxHits);
-            for (ChangeEntry entry : changes)
+            try (HydrationExecutor executor = GitHubUtil.newHydrationExecutor())
             {
-                LOG.info(entry.toString());
+                // Show the changes as they are found
+                ChangeSubscriber subscriber = new ChangeSubscriber()
+                {
+                    @Override
+                    protected void onChange(ChangeEntry entry)
+                    {
+                        LOG.info(entry.toString());
+                    }
+                };
+                QueryPullRequests.publishClosedAndMergedPullRequests(repo, branch, dateFrom, dateTo, maxHits, new PullRequestStore(), executor, null)
+                    .subscribe(subscriber);
+                subscriber.await();
             }
+            GitHubUtil.showCurrentRateLimit(github);
         }
         catch (Args.ArgException e)
         {
@@ -109,6 +131,54 @@ public class QueryPullRequests
      * @return the list of changes found
      */
     public static List<ChangeEntry> findClosedAndMergedPullRequests(GHRepository repo, String baseBranchName, Date dateFrom, Date dateTo, int maxPullRequestsToSearchThrough) throws IOException
+    {
+        return findClosedAndMergedPullRequests(repo, baseBranchName, dateFrom, dateTo, maxPullRequestsToSearchThrough, new PullRequestStore());
+    }
+
+    /**
+     * Same as {@link #findClosedAndMergedPullRequests(GHRepository, String, Date, Date, int)}, the pull requests
+     * found in the store with the same {@code updated_at} are not fetched again.
+     *
+     * @param store the pull requests already seen, updated with the ones fetched
+     */
+    public static List<ChangeEntry> findClosedAndMergedPullRequests(GHRepository repo, String baseBranchName, Date dateFrom, Date dateTo, int maxPullRequestsToSearchThrough,
+                                                                    PullRequestStore store) throws IOException
+    {
+        return findClosedAndMergedPullRequests(repo, baseBranchName, dateFrom, dateTo, maxPullRequestsToSearchThrough, store, HydrationExecutor.direct(), null);
+    }
+
+    /**
+     * Same as {@link #findClosedAndMergedPullRequests(GHRepository, String, Date, Date, int, PullRequestStore)},
+     * the pull requests are listed (in order) by the calling thread, their merge information is fetched by the executor.
+     * The changes are in the listing order, whatever the order the lookups complete in.
+     *
+     * @param executor the executor to fetch the merge information with
+     * @param onStopped called if the scan stopped early at the rate limit reserve, so some changes are missing (can be null)
+     */
+    public static List<ChangeEntry> findClosedAndMergedPullRequests(GHRepository repo, String baseBranchName, Date dateFrom, Date dateTo, int maxPullRequestsToSearchThrough,
+                                                                    PullRequestStore store, HydrationExecutor executor, Runnable onStopped) throws IOException
+    {
+        List<ChangeEntry> changes = new ArrayList<>();
+        scanClosedAndMergedPullRequests(repo, baseBranchName, dateFrom, dateTo, maxPullRequestsToSearchThrough, store, executor, onStopped, changes::add);
+        return changes;
+    }
+
+    /**
+     * Same as {@link #findClosedAndMergedPullRequests(GHRepository, String, Date, Date, int, PullRequestStore, HydrationExecutor, Runnable)},
+     * the changes are published as the pages of pull requests are scanned.
+     * A subscriber that doesn't keep up holds the scan back, and one that cancels stops it.
+     */
+    public static Flow.Publisher<ChangeEntry> publishClosedAndMergedPullRequests(GHRepository repo, String baseBranchName, Date dateFrom, Date dateTo,
+                                                                                 int maxPullRequestsToSearchThrough, PullRequestStore store, HydrationExecutor executor,
+                                                                                 Runnable onStopped)
+    {
+        return new ChangePublisher((sink) ->
+            scanClosedAndMergedPullRequests(repo, baseBranchName, dateFrom, dateTo, maxPullRequestsToSearchThrough, store, executor, onStopped, sink));
+    }
+
+    private static void scanClosedAndMergedPullRequests(GHRepository repo, String baseBranchName, Date dateFrom, Date dateTo, int maxPullRequestsToSearchThrough,
+                                                        PullRequestStore store, HydrationExecutor executor, Runnable onStopped,
+                                                        Consumer<ChangeEntry> sink) throws IOException
     {
         PagedIterable<GHPullRequest> pullRequestPagedIterable =
             repo.queryPullRequests()
@@ -118,7 +188,12 @@ public class QueryPullRequests
                 .sort(GHPullRequestQueryBuilder.Sort.UPDATED)
                 .list();
 
-        List<ChangeEntry> hits = new ArrayList<>();
+        AtomicInteger found = new AtomicInteger();
+        HydrationExecutor.OrderedResults<ChangeEntry> hits = new HydrationExecutor.OrderedResults<>((change) ->
+        {
+            found.incrementAndGet();
+            sink.accept(change);
+        });
 
         LOG.debug("Finding PullRequests (CLOSED, MERGED, !DRAFT, branch={}, dateFrom={}, dateTo={})", baseBranchName, dateFrom, dateTo);
 
@@ -126,61 +201,98 @@ public class QueryPullRequests
         long tsTo = dateTo.getTime();
 
         boolean foundFirstEntryByDate = false;
+        boolean stopped = false;
         int searchPullRequests = 0;
+        int storedPullRequests = 0;
 
-        for (GHPullRequest pullRequest : pullRequestPagedIterable.withPageSize(10))
+        try (PrefetchingIterator<GHPullRequest> pullRequests = PrefetchingIterable.of(pullRequestPagedIterable, PULL_REQUEST_PAGES).iterator())
         {
-            if (searchPullRequests > maxPullRequestsToSearchThrough)
+            while (pullRequests.hasNext())
             {
-                LOG.debug("Searched through too many pull requests: {}", maxPullRequestsToSearchThrough);
-                break;
-            }
-
-            searchPullRequests++;
-            Date updateDate = pullRequest.getUpdatedAt();
-            long tsEntry = updateDate.getTime();
-            if (!foundFirstEntryByDate)
-            {
-                if (tsEntry > tsTo)
+                GHPullRequest pullRequest = pullRequests.next();
+                if (searchPullRequests > maxPullRequestsToSearchThrough)
                 {
-                    LOG.debug("Skipping too new {} PR #{} - {}", updateDate, pullRequest.getNumber(), pullRequest.getTitle());
+                    LOG.debug("Searched through too many pull requests: {}", maxPullRequestsToSearchThrough);
+                    break;
                 }
-                else
+                if (hits.isStopped())
+                    break; // out of quota
+
+                searchPullRequests++;
+                Date updateDate = pullRequest.getUpdatedAt();
+                long tsEntry = updateDate.getTime();
+                if (!foundFirstEntryByDate)
                 {
-                    hits.add(ChangeEntryBuilder.from(repo, pullRequest));
+                    if (tsEntry > tsTo)
+                    {
+                        LOG.debug("Skipping too new {} PR #{} - {}", updateDate, pullRequest.getNumber(), pullRequest.getTitle());
+                        continue;
+                    }
                     foundFirstEntryByDate = true;
                 }
-            }
-            else
-            {
-                if (tsEntry < tsFrom)
+                else if (tsEntry < tsFrom)
                 {
                     LOG.debug("Skipping too old {} PR #{} - {}", updateDate, pullRequest.getNumber(), pullRequest.getTitle());
                     break; // we are done searching the list
                 }
 
-                if (pullRequest.isDraft())
+                // Not updated since it was last seen, no need to fetch its merge information (again)
+                PullRequestStore.Record record = store.getCurrent(pullRequest.getNumber(), updateDate);
+                if (record != null)
                 {
-                    LOG.debug("Skipping draft PR #{} - {}", pullRequest.getNumber(), pullRequest.getTitle());
+                    storedPullRequests++;
+                    if (record.isMerged())
+                        hits.add(CompletableFuture.completedFuture(record.getEntry()));
+                    else
+                        LOG.debug("Skipping unmerged PR #{} - {}", pullRequest.getNumber(), pullRequest.getTitle());
                     continue;
                 }
 
-                // Refresh the PullRequest so we get access to the merge information.
-                // (which isn't present in the results from GHPullRequestQueryBuilder)
-                // We do this as late as possible to reduce the number of API calls we make.
-                // TODO: review if still needed
-                // pullRequest.refresh();
-                if (!pullRequest.isMerged())
-                {
-                    LOG.debug("Skipping unmerged PR #{} - {}", pullRequest.getNumber(), pullRequest.getTitle());
-                    continue;
-                }
-
-                hits.add(ChangeEntryBuilder.from(repo, pullRequest));
+                hits.add(executor.submit(() -> hydrate(repo, pullRequest, store)));
             }
         }
+        catch (IOException | GHException e)
+        {
+            if (!RateLimitScheduler.isBudgetExhausted(e))
+                throw e;
+            // Keep what we have, the remaining quota is for updating the release draft
+            LOG.warn("Stopped searching pull requests early (after {}): {}", searchPullRequests, e.getMessage());
+            stopped = true;
+        }
+
+        hits.finish();
+        if ((stopped || hits.isStopped()) && onStopped != null)
+            onStopped.run();
+        LOG.info("Found {} pull requests (from {} searched, {} already stored)", found.get(), searchPullRequests, storedPullRequests);
+    }
+
+    /**
+     * @return the change, or null if the pull request is a draft, or was not merged
+     */
+    private static ChangeEntry hydrate(GHRepository repo, GHPullRequest pullRequest, PullRequestStore store) throws IOException
+    {
+        Date updateDate = pullRequest.getUpdatedAt();
+        if (pullRequest.isDraft())
+        {
+            LOG.debug("Skipping draft PR #{} - {}", pullRequest.getNumber(), pullRequest.getTitle());
+            store.putUnmerged(pullRequest.getNumber(), updateDate);
+            return null;
+        }
+
+        // Refresh the PullRequest so we get access to the merge information.
+        // (which isn't present in the results from GHPullRequestQueryBuilder)
+        // We do this as late as possible to reduce the number of API calls we make.
+        // TODO: review if still needed
+        // pullRequest.refresh();
+        if (!pullRequest.isMerged())
+        {
+            LOG.debug("Skipping unmerged PR #{} - {}", pullRequest.getNumber(), pullRequest.getTitle());
+            store.putUnmerged(pullRequest.getNumber(), updateDate);
+            return null;
+        }
 
-        LOG.info("Found {} pull requests (from {} searched)", hits.size(), searchPullRequests);
-        return hits;
+        ChangeEntry entry = ChangeEntryBuilder.from(repo, pullRequest);
+        store.put(entry, updateDate, pullRequest.getMergeCommitSha());
+        return entry;
     }
 }
@@ -0,0 +1,51 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.discovery;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import net.webtide.github.releasedrafter.ChangeEntry;
+
+/**
+ * Finds the changes (merged pull requests) that belong in a release draft.
+ */
+public interface ChangeDiscovery
+{
+    /**
+     * @param window what to look for
+     * @return the changes found (in no particular order)
+     */
+    List<ChangeEntry> findChanges(ChangeWindow window) throws IOException;
+
+    /**
+     * Publish the changes as they are found.
+     * <p>
+     * Discoveries that only know the changes once the window is scanned publish them all at the end.
+     * </p>
+     *
+     * @param window what to look for
+     * @return the changes found (in no particular order)
+     */
+    default Flow.Publisher<ChangeEntry> publishChanges(ChangeWindow window)
+    {
+        return new ChangePublisher((sink) -> findChanges(window).forEach(sink));
+    }
+}
@@ -0,0 +1,118 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.discovery;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import net.webtide.github.releasedrafter.ChangeEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes the changes as they are found, instead of once the whole window is scanned.
+ * <p>
+ * Each subscription runs the {@link Producer} on its own thread.
+ * The producer is held back (its {@code sink} blocks) while the subscriber has
+ * {@code bufferSize} changes it hasn't requested yet, so a slow subscriber
+ * slows down the scan instead of piling up changes.
+ * The producer is stopped once the subscription is cancelled.
+ * </p>
+ */
+public class ChangePublisher implements Flow.Publisher<ChangeEntry>
+{
+    public static final int DEFAULT_BUFFER_SIZE = 64;
+    private static final Logger LOG = LoggerFactory.getLogger(ChangePublisher.class);
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    private final Producer producer;
+    private final int bufferSize;
+
+    public ChangePublisher(Producer producer)
+    {
+        this(producer, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ChangePublisher(Producer producer, int bufferSize)
+    {
+        this.producer = producer;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ChangeEntry> subscriber)
+    {
+        // Delivered to the subscriber by its own thread, which goes away once idle
+        Executor delivery = new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (runnable) ->
+            newThread(runnable, "changes-delivery-"));
+        SubmissionPublisher<ChangeEntry> publisher = new SubmissionPublisher<>(delivery, bufferSize);
+        publisher.subscribe(subscriber);
+
+        Thread thread = newThread(() ->
+        {
+            try
+            {
+                producer.produce((change) ->
+                {
+                    if (publisher.isClosed() || !publisher.hasSubscribers())
+                        throw new CancellationException("Subscription cancelled");
+                    publisher.submit(change);
+                });
+                publisher.close();
+            }
+            catch (CancellationException e)
+            {
+                LOG.debug("Stopped producing changes: {}", e.getMessage());
+                publisher.close();
+            }
+            catch (Throwable x)
+            {
+                publisher.closeExceptionally(x);
+            }
+        }, "changes-");
+        thread.start();
+    }
+
+    private static Thread newThread(Runnable runnable, String prefix)
+    {
+        Thread thread = new Thread(runnable, prefix + THREADS.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Finds the changes, handing each to the sink as soon as it is found.
+     */
+    public interface Producer
+    {
+        /**
+         * @param sink where to hand the changes, may block (back pressure), or throw
+         * {@link CancellationException} once nobody is interested anymore
+         */
+        void produce(Consumer<ChangeEntry> sink) throws IOException;
+    }
+}
@@ -0,0 +1,129 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.discovery;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+
+import net.webtide.github.releasedrafter.ChangeEntry;
+
+/**
+ * Consumes the changes one at a time, as a {@link ChangePublisher} finds them.
+ * <p>
+ * The changes are requested in batches, the next batch once half of the previous one is consumed.
+ * </p>
+ */
+public abstract class ChangeSubscriber implements Flow.Subscriber<ChangeEntry>
+{
+    private static final int BATCH_SIZE = 32;
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private Flow.Subscription subscription;
+    private int outstanding;
+    private volatile Throwable failure;
+
+    /**
+     * Called for each change, in the order they are published.
+     */
+    protected abstract void onChange(ChangeEntry change);
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription)
+    {
+        this.subscription = subscription;
+        outstanding = BATCH_SIZE;
+        subscription.request(BATCH_SIZE);
+    }
+
+    @Override
+    public void onNext(ChangeEntry change)
+    {
+        try
+        {
+            onChange(change);
+        }
+        catch (RuntimeException e)
+        {
+            subscription.cancel();
+            onError(e);
+            return;
+        }
+
+        if (--outstanding <= BATCH_SIZE / 2)
+        {
+            subscription.request(BATCH_SIZE - outstanding);
+            outstanding = BATCH_SIZE;
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable)
+    {
+        if (failure == null)
+            failure = throwable;
+        done.countDown();
+    }
+
+    @Override
+    public void onComplete()
+    {
+        done.countDown();
+    }
+
+    /**
+     * Stop consuming, the publisher stops finding changes.
+     */
+    public void cancel()
+    {
+        if (subscription != null)
+            subscription.cancel();
+        done.countDown();
+    }
+
+    /**
+     * Wait until all the changes are consumed.
+     *
+     * @throws IOException if the changes could not all be found
+     */
+    public void await() throws IOException
+    {
+        try
+        {
+            done.await();
+        }
+        catch (InterruptedException e)
+        {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for changes");
+        }
+
+        Throwable cause = failure;
+        if (cause instanceof IOException)
+            throw (IOException)cause;
+        if (cause instanceof RuntimeException)
+            throw (RuntimeException)cause;
+        if (cause instanceof Error)
+            throw (Error)cause;
+        if (cause != null)
+            throw new IOException(cause);
+    }
+}
@@ -0,0 +1,138 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.discovery;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The range of changes to discover: the pull requests merged into a branch between two dates.
+ */
+public class ChangeWindow
+{
+    private final String branch;
+    private final Date dateFrom;
+    private final Date dateTo;
+    private int maxPullRequestsToSearchThrough = 400;
+    private List<String> excludeLabels = Collections.emptyList();
+    private String baseRef;
+    private String headSha;
+    private volatile boolean incomplete;
+
+    /**
+     * @param branch the base branch name (just a branch name, not a full ref)
+     * @param dateFrom the date of the oldest change to return
+     * @param dateTo the date of the newest change to return
+     */
+    public ChangeWindow(String branch, Date dateFrom, Date dateTo)
+    {
+        this.branch = Objects.requireNonNull(branch, "branch");
+        this.dateFrom = Objects.requireNonNull(dateFrom, "dateFrom");
+        this.dateTo = Objects.requireNonNull(dateTo, "dateTo");
+    }
+
+    public String getBranch()
+    {
+        return branch;
+    }
+
+    public Date getDateFrom()
+    {
+        return dateFrom;
+    }
+
+    public Date getDateTo()
+    {
+        return dateTo;
+    }
+
+    /**
+     * @return the maximum number of pull requests a scanning discovery looks at
+     */
+    public int getMaxPullRequestsToSearchThrough()
+    {
+        return maxPullRequestsToSearchThrough;
+    }
+
+    public void setMaxPullRequestsToSearchThrough(int maxPullRequestsToSearchThrough)
+    {
+        this.maxPullRequestsToSearchThrough = maxPullRequestsToSearchThrough;
+    }
+
+    /**
+     * @return the labels of pull requests to leave out (the {@code exclude-labels} of the release draft config)
+     */
+    public List<String> getExcludeLabels()
+    {
+        return excludeLabels;
+    }
+
+    public void setExcludeLabels(List<String> excludeLabels)
+    {
+        this.excludeLabels = (excludeLabels == null) ? Collections.emptyList() : excludeLabels;
+    }
+
+    /**
+     * @return the reference (tag, branch or sha) of the previous release, or null if there isn't one
+     */
+    public String getBaseRef()
+    {
+        return baseRef;
+    }
+
+    public void setBaseRef(String baseRef)
+    {
+        this.baseRef = baseRef;
+    }
+
+    /**
+     * @return the sha of the commit the release draft is for
+     */
+    public String getHeadSha()
+    {
+        return headSha;
+    }
+
+    public void setHeadSha(String headSha)
+    {
+        this.headSha = headSha;
+    }
+
+    /**
+     * @return true if the discovery stopped before the whole window was scanned (eg: at the rate limit reserve),
+     * so some of its changes are missing
+     */
+    public boolean isIncomplete()
+    {
+        return incomplete;
+    }
+
+    public void markIncomplete()
+    {
+        this.incomplete = true;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("ChangeWindow[branch=%s, dateFrom=%s, dateTo=%s, baseRef=%s, headSha=%s]", branch, dateFrom, dateTo, baseRef, headSha);
+    }
+}
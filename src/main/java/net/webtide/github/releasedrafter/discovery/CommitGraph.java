@@ -0,0 +1,273 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.discovery;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The commit graph of a local git repository, held in arrays indexed by commit number.
+ * <p>
+ * Commits are numbered in {@code git log --topo-order} order, so every commit has
+ * a lower number than its parents, and reachability is a single pass over the arrays.
+ * </p>
+ */
+public final class CommitGraph
+{
+    private static final Logger LOG = LoggerFactory.getLogger(CommitGraph.class);
+    private static final String FORMAT = "--format=%H%x00%P%x00%s";
+
+    private final String[] shas;
+    private final String[] subjects;
+    // parents of commit i are parents[parentOffsets[i]] .. parents[parentOffsets[i + 1] - 1]
+    private final int[] parentOffsets;
+    private final int[] parents;
+    private final Map<String, Integer> index;
+
+    private CommitGraph(String[] shas, String[] subjects, int[] parentOffsets, int[] parents, Map<String, Integer> index)
+    {
+        this.shas = shas;
+        this.subjects = subjects;
+        this.parentOffsets = parentOffsets;
+        this.parents = parents;
+        this.index = index;
+    }
+
+    /**
+     * Load the commits reachable from any of the revisions.
+     *
+     * @param repoDir the git working directory
+     * @param revisions the revisions to start from
+     */
+    public static CommitGraph load(Path repoDir, String... revisions) throws IOException
+    {
+        List<String> command = new ArrayList<>(Arrays.asList("git", "log", "--topo-order", FORMAT));
+        command.addAll(Arrays.asList(revisions));
+        command.add("--");
+        Process process = start(repoDir, command);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)))
+        {
+            CommitGraph graph = parse(reader);
+            waitFor(process, command, true);
+            return graph;
+        }
+    }
+
+    /**
+     * @param reader the {@code git log --topo-order --format=%H%x00%P%x00%s} output
+     */
+    public static CommitGraph parse(BufferedReader reader) throws IOException
+    {
+        List<String> shaList = new ArrayList<>();
+        List<String> subjectList = new ArrayList<>();
+        List<String> parentList = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null)
+        {
+            int first = line.indexOf('\0');
+            int second = (first < 0) ? -1 : line.indexOf('\0', first + 1);
+            if (second < 0)
+                continue;
+            shaList.add(line.substring(0, first));
+            parentList.add(line.substring(first + 1, second));
+            subjectList.add(line.substring(second + 1));
+        }
+
+        int count = shaList.size();
+        Map<String, Integer> index = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++)
+        {
+            index.put(shaList.get(i), i);
+        }
+
+        int[] parentOffsets = new int[count + 1];
+        int[] parents = new int[count * 2];
+        int size = 0;
+        for (int i = 0; i < count; i++)
+        {
+            parentOffsets[i] = size;
+            String parentShas = parentList.get(i);
+            if (parentShas.isEmpty())
+                continue;
+            for (String parentSha : parentShas.split(" "))
+            {
+                // parents outside the loaded history (shallow clone) are left out
+                Integer parent = index.get(parentSha);
+                if (parent == null)
+                    continue;
+                if (size == parents.length)
+                    parents = Arrays.copyOf(parents, size * 2);
+                parents[size++] = parent;
+            }
+        }
+        parentOffsets[count] = size;
+
+        return new CommitGraph(shaList.toArray(new String[0]), subjectList.toArray(new String[0]), parentOffsets,
+            Arrays.copyOf(parents, size), index);
+    }
+
+    /**
+     * @param repoDir the git working directory
+     * @param revision the revision (tag, branch, sha, ...)
+     * @return the commit sha, or null if the revision isn't known locally
+     */
+    public static String resolve(Path repoDir, String revision) throws IOException
+    {
+        List<String> command = Arrays.asList("git", "rev-parse", "--verify", "--quiet", revision + "^{commit}");
+        Process process = start(repoDir, command);
+        String sha;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)))
+        {
+            sha = reader.readLine();
+        }
+        if (waitFor(process, command, false) != 0)
+            return null;
+        return sha;
+    }
+
+    /**
+     * @param repoDir the git working directory
+     * @return true if the repository is a shallow clone (its history is incomplete)
+     */
+    public static boolean isShallow(Path repoDir) throws IOException
+    {
+        List<String> command = Arrays.asList("git", "rev-parse", "--is-shallow-repository");
+        Process process = start(repoDir, command);
+        String result;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)))
+        {
+            result = reader.readLine();
+        }
+        waitFor(process, command, true);
+        return "true".equals(result);
+    }
+
+    private static Process start(Path repoDir, List<String> command) throws IOException
+    {
+        LOG.debug("Running {} in {}", command, repoDir);
+        return new ProcessBuilder(command)
+            .directory(repoDir.toFile())
+            .redirectError(ProcessBuilder.Redirect.DISCARD)
+            .start();
+    }
+
+    private static int waitFor(Process process, List<String> command, boolean check) throws IOException
+    {
+        try
+        {
+            if (!process.waitFor(5, TimeUnit.MINUTES))
+            {
+                process.destroyForcibly();
+                throw new IOException("Timed out: " + command);
+            }
+            int exit = process.exitValue();
+            if (exit != 0 && check)
+                throw new IOException("Failed (exit " + exit + "): " + command);
+            return exit;
+        }
+        catch (InterruptedException e)
+        {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted: " + command);
+        }
+    }
+
+    public int size()
+    {
+        return shas.length;
+    }
+
+    /**
+     * @return the commit number, or -1 if the commit isn't in the graph
+     */
+    public int indexOf(String sha)
+    {
+        Integer i = index.get(sha);
+        return (i == null) ? -1 : i;
+    }
+
+    public String getSha(int commit)
+    {
+        return shas[commit];
+    }
+
+    public String getSubject(int commit)
+    {
+        return subjects[commit];
+    }
+
+    /**
+     * @return the commit number of the first parent, or -1 if the commit has no parent (in the graph)
+     */
+    public int getFirstParent(int commit)
+    {
+        return (parentOffsets[commit] < parentOffsets[commit + 1]) ? parents[parentOffsets[commit]] : -1;
+    }
+
+    /**
+     * The commits reachable from {@code head} but not from {@code base} ({@code git log base..head}).
+     * <p>
+     * As parents always come after their children, marks only need to be pushed forward,
+     * so this is one pass over the commits from {@code head}.
+     * </p>
+     *
+     * @param head the commit number of the head
+     * @param base the commit number of the base (or -1 for none)
+     * @return the commit numbers, in topological order (newest first)
+     */
+    public int[] reachable(int head, int base)
+    {
+        int count = shas.length;
+        // bit 1: reachable from head, bit 2: reachable from base
+        byte[] marks = new byte[count];
+        marks[head] |= 1;
+        if (base >= 0)
+            marks[base] |= 2;
+
+        int[] result = new int[count];
+        int size = 0;
+        for (int i = Math.min(head, base < 0 ? head : base); i < count; i++)
+        {
+            byte mark = marks[i];
+            if (mark == 0)
+                continue;
+            if (mark == 1)
+                result[size++] = i;
+            for (int p = parentOffsets[i]; p < parentOffsets[i + 1]; p++)
+            {
+                marks[parents[p]] |= mark;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+}
@@ -0,0 +1,120 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.discovery;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.webtide.github.releasedrafter.ChangeEntry;
+import org.kohsuke.github.GHCompare;
+import org.kohsuke.github.GHRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the changes from the commits between the previous release and the head commit (the compare API),
+ * instead of scanning pull requests by date.
+ * <p>
+ * The pull request numbers come from the merge / squash commit messages, or failing that
+ * from the {@link PullRequestAssociations}. Only those pull requests are hydrated.
+ * </p>
+ * <p>
+ * The compare API lists at most 250 commits, when there are more (or there is no previous release)
+ * the {@code fallback} discovery is used.
+ * </p>
+ */
+public class CompareChangeDiscovery implements ChangeDiscovery
+{
+    private static final Logger LOG = LoggerFactory.getLogger(CompareChangeDiscovery.class);
+
+    private final GHRepository repo;
+    private final PullRequestHydrator hydrator;
+    private final PullRequestAssociations associations;
+    private final ChangeDiscovery fallback;
+
+    /**
+     * @param repo the repository
+     * @param hydrator to build the {@link ChangeEntry} of the pull requests found
+     * @param associations to find the pull request of commits without a number in their message (or null)
+     * @param fallback the discovery to use when the commits can't be compared
+     */
+    public CompareChangeDiscovery(GHRepository repo, PullRequestHydrator hydrator, PullRequestAssociations associations, ChangeDiscovery fallback)
+    {
+        this.repo = repo;
+        this.hydrator = hydrator;
+        this.associations = associations;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public List<ChangeEntry> findChanges(ChangeWindow window) throws IOException
+    {
+        if (window.getBaseRef() == null || window.getHeadSha() == null)
+        {
+            LOG.info("No previous release to compare with, using {}", fallback.getClass().getSimpleName());
+            return fallback.findChanges(window);
+        }
+
+        GHCompare compare = repo.getCompare(window.getBaseRef(), window.getHeadSha());
+        GHCompare.Commit[] commits = compare.getCommits();
+        LOG.info("Comparing {}...{}: {} ({} commits)", window.getBaseRef(), window.getHeadSha(), compare.getStatus(), compare.getTotalCommits());
+        if (commits.length < compare.getTotalCommits())
+        {
+            LOG.warn("Compare only listed {} of {} commits, using {}", commits.length, compare.getTotalCommits(), fallback.getClass().getSimpleName());
+            return fallback.findChanges(window);
+        }
+
+        Set<Integer> numbers = new LinkedHashSet<>();
+        List<String> unmatched = new ArrayList<>();
+        for (GHCompare.Commit commit : commits)
+        {
+            int number = PullRequestNumbers.fromCommitMessage(commit.getCommit().getMessage());
+            if (number > 0)
+                numbers.add(number);
+            else
+                unmatched.add(commit.getSHA1());
+        }
+
+        if (!unmatched.isEmpty())
+        {
+            if (associations != null)
+            {
+                Map<String, Integer> found = associations.findPullRequests(window.getBranch(), unmatched);
+                for (String sha : unmatched)
+                {
+                    Integer number = found.get(sha);
+                    if (number != null)
+                        numbers.add(number);
+                }
+                LOG.debug("{} of {} commits without a pull request number associated with a pull request", found.size(), unmatched.size());
+            }
+            else
+            {
+                LOG.debug("{} commits without a pull request number", unmatched.size());
+            }
+        }
+
+        LOG.info("Found {} pull requests (from {} commits)", numbers.size(), commits.length);
+        return hydrator.hydrate(numbers, window);
+    }
+}
@@ -0,0 +1,297 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.discovery;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import net.webtide.github.releasedrafter.ChangeEntry;
+import net.webtide.github.releasedrafter.NameUtil;
+import net.webtide.github.releasedrafter.http.GraphQLClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Discovers (and hydrates) pull requests with the GraphQL API.
+ * <p>
+ * Everything a {@link ChangeEntry} needs (labels, merge commit author / committer, base ref)
+ * comes back with the pull request, up to {@link #MAX_BATCH_SIZE} pull requests per query,
+ * instead of a REST call (or two) per pull request.
+ * </p>
+ */
+public class GraphQLChangeDiscovery implements ChangeDiscovery, PullRequestHydrator, PullRequestAssociations
+{
+    public static final int MAX_BATCH_SIZE = 100;
+    private static final Logger LOG = LoggerFactory.getLogger(GraphQLChangeDiscovery.class);
+    private static final String PULL_REQUEST_FIELDS = "fragment PullRequestFields on PullRequest {\n" +
+        "  number title isDraft merged mergedAt updatedAt baseRefName\n" +
+        "  baseRepository { owner { login } }\n" +
+        "  labels(first: 100) { nodes { name } }\n" +
+        "  mergeCommit { committedDate author { user { login } } committer { user { login } } }\n" +
+        "}\n";
+    private static final String QUERY_MERGED = "query($owner: String!, $name: String!, $branch: String!, $size: Int!, $cursor: String) {\n" +
+        "  repository(owner: $owner, name: $name) {\n" +
+        "    pullRequests(baseRefName: $branch, states: MERGED, orderBy: {field: UPDATED_AT, direction: DESC}, first: $size, after: $cursor) {\n" +
+        "      pageInfo { hasNextPage endCursor }\n" +
+        "      nodes { ...PullRequestFields }\n" +
+        "    }\n" +
+        "  }\n" +
+        "}\n" + PULL_REQUEST_FIELDS;
+
+    private final GraphQLClient client;
+    private final String owner;
+    private final String name;
+    private final String repoApiUrl;
+    private final int batchSize;
+
+    /**
+     * @param client the GraphQL client
+     * @param repoFullName the repository ({@code owner/name})
+     * @param repoApiUrl the REST url of the repository (the {@link ChangeEntry#getPullRequestURI()} is based on it)
+     */
+    public GraphQLChangeDiscovery(GraphQLClient client, String repoFullName, String repoApiUrl)
+    {
+        this(client, repoFullName, repoApiUrl, MAX_BATCH_SIZE);
+    }
+
+    public GraphQLChangeDiscovery(GraphQLClient client, String repoFullName, String repoApiUrl, int batchSize)
+    {
+        int idx = repoFullName.indexOf('/');
+        if (idx <= 0)
+            throw new IllegalArgumentException("Not a repository full name: " + repoFullName);
+        this.client = client;
+        this.owner = repoFullName.substring(0, idx);
+        this.name = repoFullName.substring(idx + 1);
+        this.repoApiUrl = repoApiUrl;
+        this.batchSize = Math.max(1, Math.min(MAX_BATCH_SIZE, batchSize));
+    }
+
+    /**
+     * Pull requests merged into the branch, with a merge date within the window.
+     * <p>
+     * The pull requests are listed by last update (newest first), the listing stops
+     * at the first one last updated before the window, as it can't have been merged within it.
+     * </p>
+     */
+    @Override
+    public List<ChangeEntry> findChanges(ChangeWindow window) throws IOException
+    {
+        long tsFrom = window.getDateFrom().getTime();
+        long tsTo = window.getDateTo().getTime();
+
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("owner", owner);
+        variables.put("name", name);
+        variables.put("branch", window.getBranch());
+        variables.put("size", batchSize);
+
+        List<ChangeEntry> hits = new ArrayList<>();
+        int searched = 0;
+        String cursor = null;
+        boolean more = true;
+        while (more)
+        {
+            variables.put("cursor", cursor);
+            JsonNode pullRequests = client.query(QUERY_MERGED, variables).path("repository").path("pullRequests");
+
+            for (JsonNode node : pullRequests.path("nodes"))
+            {
+                searched++;
+                if (toTime(node.path("updatedAt")) < tsFrom)
+                {
+                    more = false;
+                    break;
+                }
+
+                long mergedAt = toTime(node.path("mergedAt"));
+                if (mergedAt < tsFrom || mergedAt > tsTo)
+                {
+                    LOG.debug("Skipping PR #{} merged outside of window - {}", node.path("number").asInt(), node.path("title").asText());
+                    continue;
+                }
+
+                ChangeEntry entry = toChangeEntry(node);
+                if (entry != null)
+                    hits.add(entry);
+            }
+
+            JsonNode pageInfo = pullRequests.path("pageInfo");
+            cursor = pageInfo.path("endCursor").asText(null);
+            more = more && pageInfo.path("hasNextPage").asBoolean(false) && cursor != null;
+        }
+
+        LOG.info("Found {} pull requests (from {} searched)", hits.size(), searched);
+        return hits;
+    }
+
+    /**
+     * Fetch the pull requests by number, {@link #MAX_BATCH_SIZE} per query.
+     */
+    @Override
+    public List<ChangeEntry> hydrate(Collection<Integer> numbers) throws IOException
+    {
+        List<Integer> unique = new ArrayList<>(new LinkedHashSet<>(numbers));
+        List<ChangeEntry> entries = new ArrayList<>(unique.size());
+        for (int start = 0; start < unique.size(); start += batchSize)
+        {
+            List<Integer> batch = unique.subList(start, Math.min(unique.size(), start + batchSize));
+            JsonNode repository = client.query(toHydrateQuery(batch), variables()).path("repository");
+            for (Integer number : batch)
+            {
+                JsonNode node = repository.path("pr" + number);
+                if (node.isMissingNode() || node.isNull())
+                {
+                    LOG.debug("Pull request #{} not found", number);
+                    continue;
+                }
+                ChangeEntry entry = toChangeEntry(node);
+                if (entry != null)
+                    entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Look up the {@code associatedPullRequests} of the commits, {@link #MAX_BATCH_SIZE} commits per query.
+     * A merged pull request into the branch is preferred over other merged pull requests.
+     */
+    @Override
+    public Map<String, Integer> findPullRequests(String branch, Collection<String> commitShas) throws IOException
+    {
+        List<String> shas = new ArrayList<>(new LinkedHashSet<>(commitShas));
+        Map<String, Integer> numbers = new HashMap<>();
+        for (int start = 0; start < shas.size(); start += batchSize)
+        {
+            List<String> batch = shas.subList(start, Math.min(shas.size(), start + batchSize));
+            StringBuilder query = new StringBuilder();
+            query.append("query($owner: String!, $name: String!) {\n");
+            query.append("  repository(owner: $owner, name: $name) {\n");
+            for (int i = 0; i < batch.size(); i++)
+            {
+                query.append(String.format("    c%d: object(oid: \"%s\") { ... on Commit { associatedPullRequests(first: 5) { nodes { number merged baseRefName } } } }%n",
+                    i, batch.get(i)));
+            }
+            query.append("  }\n");
+            query.append("}\n");
+
+            JsonNode repository = client.query(query.toString(), variables()).path("repository");
+            for (int i = 0; i < batch.size(); i++)
+            {
+                int found = -1;
+                for (JsonNode pullRequest : repository.path("c" + i).path("associatedPullRequests").path("nodes"))
+                {
+                    if (!pullRequest.path("merged").asBoolean(false))
+                        continue;
+                    if (branch.equals(pullRequest.path("baseRefName").asText()))
+                    {
+                        found = pullRequest.path("number").asInt();
+                        break;
+                    }
+                    if (found < 0)
+                        found = pullRequest.path("number").asInt();
+                }
+                if (found > 0)
+                    numbers.put(batch.get(i), found);
+            }
+        }
+        return numbers;
+    }
+
+    private Map<String, Object> variables()
+    {
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("owner", owner);
+        variables.put("name", name);
+        return variables;
+    }
+
+    private static String toHydrateQuery(List<Integer> numbers)
+    {
+        StringBuilder query = new StringBuilder();
+        query.append("query($owner: String!, $name: String!) {\n");
+        query.append("  repository(owner: $owner, name: $name) {\n");
+        for (int number : numbers)
+        {
+            query.append(String.format("    pr%d: pullRequest(number: %d) { ...PullRequestFields }%n", number, number));
+        }
+        query.append("  }\n");
+        query.append("}\n");
+        query.append(PULL_REQUEST_FIELDS);
+        return query.toString();
+    }
+
+    /**
+     * Same as {@link net.webtide.github.releasedrafter.ChangeEntryBuilder#from}, without the extra merge commit lookup.
+     *
+     * @return the change, or null if the pull request is a draft, or was not merged
+     */
+    private ChangeEntry toChangeEntry(JsonNode node) throws IOException
+    {
+        int number = node.path("number").asInt();
+        String title = node.path("title").asText();
+        if (node.path("isDraft").asBoolean(false))
+        {
+            LOG.debug("Skipping draft PR #{} - {}", number, title);
+            return null;
+        }
+        if (!node.path("merged").asBoolean(false))
+        {
+            LOG.debug("Skipping unmerged PR #{} - {}", number, title);
+            return null;
+        }
+
+        String pullRequestUrl = repoApiUrl + "/pulls/" + number;
+        String branch = node.path("baseRepository").path("owner").path("login").asText(owner) + ":" + node.path("baseRefName").asText();
+        List<String> labels = new ArrayList<>();
+        for (JsonNode label : node.path("labels").path("nodes"))
+        {
+            labels.add(NameUtil.toLowerCaseUS(label.path("name").asText()));
+        }
+        labels.sort(null);
+
+        long date = toTime(node.path("mergedAt"));
+        String committer = null;
+        String author = null;
+        JsonNode mergeCommit = node.path("mergeCommit");
+        if (!mergeCommit.isMissingNode() && !mergeCommit.isNull())
+        {
+            if (mergeCommit.hasNonNull("committedDate"))
+                date = toTime(mergeCommit.path("committedDate"));
+            committer = mergeCommit.path("committer").path("user").path("login").asText(null);
+            author = mergeCommit.path("author").path("user").path("login").asText(null);
+        }
+
+        return new ChangeEntry(pullRequestUrl, number, branch, title, date, labels, committer, author);
+    }
+
+    private static long toTime(JsonNode timestamp)
+    {
+        if (!timestamp.isTextual())
+            return Long.MIN_VALUE;
+        return Instant.parse(timestamp.asText()).toEpochMilli();
+    }
+}
@@ -0,0 +1,356 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.discovery;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import net.webtide.github.releasedrafter.http.RateLimitScheduler;
+import net.webtide.github.releasedrafter.http.RequestMeter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the per pull request lookups (refresh, labels, merge commit) concurrently,
+ * so their round trips overlap instead of adding up.
+ * <p>
+ * At most {@code concurrency} tasks are in flight, the submitter waits for a slot.
+ * The limit drops to one task at a time while the {@link RateLimitScheduler} is paused by a secondary
+ * rate limit, or once the remaining quota gets close to its reserve (so concurrent reads don't race for the last requests).
+ * Tasks run on virtual threads when the runtime supports them, otherwise on a fixed pool of platform threads.
+ * </p>
+ */
+public class HydrationExecutor implements AutoCloseable
+{
+    public static final int DEFAULT_CONCURRENCY = 4;
+    private static final Logger LOG = LoggerFactory.getLogger(HydrationExecutor.class);
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    private final int concurrency;
+    private final RateLimitScheduler scheduler;
+    private final ExecutorService executor;
+    private int inFlight;
+
+    /**
+     * @param concurrency the maximum number of tasks in flight (1 runs the tasks in the submitting thread)
+     * @param scheduler the scheduler to throttle on (can be null)
+     */
+    public HydrationExecutor(int concurrency, RateLimitScheduler scheduler)
+    {
+        this.concurrency = Math.max(1, concurrency);
+        this.scheduler = scheduler;
+        this.executor = (this.concurrency > 1) ? newExecutorService(this.concurrency) : null;
+    }
+
+    /**
+     * An executor running the tasks one after the other, in the submitting thread.
+     */
+    public static HydrationExecutor direct()
+    {
+        return new HydrationExecutor(1, null);
+    }
+
+    private static ExecutorService newExecutorService(int concurrency)
+    {
+        try
+        {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ExecutorService executor = (ExecutorService)method.invoke(null);
+            LOG.debug("Hydrating on virtual threads (concurrency {})", concurrency);
+            return executor;
+        }
+        catch (ReflectiveOperationException | UnsupportedOperationException e)
+        {
+            LOG.debug("Hydrating on {} platform threads", concurrency);
+            return Executors.newFixedThreadPool(concurrency, (runnable) ->
+            {
+                Thread thread = new Thread(runnable, "hydrate-" + THREADS.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public int getConcurrency()
+    {
+        return concurrency;
+    }
+
+    /**
+     * @return the number of tasks allowed in flight, given the current rate limit state
+     */
+    public int getAllowedConcurrency()
+    {
+        if (scheduler == null || concurrency == 1)
+            return concurrency;
+        if (scheduler.isBackingOff())
+            return 1;
+        RateLimitScheduler.Budget budget = scheduler.getBudget("core");
+        if (budget != null && budget.getResetEpochSeconds() > TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()))
+        {
+            // Each pull request takes up to 3 requests, slow down unless there's room for a few rounds of tasks
+            int headroom = budget.getRemaining() - scheduler.getReserve();
+            return Math.max(1, Math.min(concurrency, headroom / (3 * concurrency)));
+        }
+        return concurrency;
+    }
+
+    /**
+     * Submit a task, waiting for a slot if too many are already in flight.
+     *
+     * @param task the task
+     * @param <T> the result type
+     * @return the future result
+     */
+    public <T> Future<T> submit(Callable<T> task) throws IOException
+    {
+        if (executor == null)
+        {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            try
+            {
+                result.complete(task.call());
+            }
+            catch (Throwable x)
+            {
+                result.completeExceptionally(x);
+            }
+            return result;
+        }
+
+        acquire();
+        Callable<T> metered = RequestMeter.wrap(task);
+        return executor.submit(() ->
+        {
+            try
+            {
+                return metered.call();
+            }
+            finally
+            {
+                release();
+            }
+        });
+    }
+
+    private synchronized void acquire() throws InterruptedIOException
+    {
+        try
+        {
+            while (inFlight >= getAllowedConcurrency())
+            {
+                // Also wakes up regularly, to see a change of the rate limit state
+                wait(100);
+            }
+            inFlight++;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting to hydrate");
+        }
+    }
+
+    private synchronized void release()
+    {
+        inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * Wait for the results, in the order of the futures.
+     * <p>
+     * If a task was refused by the rate limit reserve, the results before it are returned,
+     * and the tasks after it are cancelled.
+     * </p>
+     *
+     * @param futures the futures, in the order of the results
+     * @param <T> the result type
+     * @return the non null results
+     * @throws IOException the first failure (other than the rate limit reserve)
+     */
+    public static <T> List<T> collect(List<Future<T>> futures) throws IOException
+    {
+        return collect(futures, null);
+    }
+
+    /**
+     * Same as {@link #collect(List)}, the {@code window} is marked incomplete
+     * if a task was refused by the rate limit reserve.
+     *
+     * @param futures the futures, in the order of the results
+     * @param window the window the results are for (can be null)
+     * @param <T> the result type
+     * @return the non null results
+     * @throws IOException the first failure (other than the rate limit reserve)
+     */
+    public static <T> List<T> collect(List<Future<T>> futures, ChangeWindow window) throws IOException
+    {
+        List<T> results = new ArrayList<>(futures.size());
+        OrderedResults<T> ordered = new OrderedResults<>(results::add);
+        for (Future<T> future : futures)
+        {
+            ordered.add(future);
+        }
+        ordered.finish();
+        if (ordered.isStopped() && window != null)
+            window.markIncomplete();
+        return results;
+    }
+
+    /**
+     * Hands the results of tasks to a sink, in the order the tasks were submitted,
+     * as soon as all the tasks before them are done.
+     * <p>
+     * If a task was refused by the rate limit reserve, the tasks after it are cancelled,
+     * and their results dropped (see {@link #isStopped()}).
+     * </p>
+     *
+     * @param <T> the result type
+     */
+    public static class OrderedResults<T>
+    {
+        private final Deque<Future<T>> pending = new ArrayDeque<>();
+        private final Consumer<T> sink;
+        private boolean stopped;
+
+        /**
+         * @param sink where to hand the (non null) results
+         */
+        public OrderedResults(Consumer<T> sink)
+        {
+            this.sink = sink;
+        }
+
+        /**
+         * @return true if a task was refused by the rate limit reserve, no more results are handed to the sink
+         */
+        public boolean isStopped()
+        {
+            return stopped;
+        }
+
+        /**
+         * Add the next task, and hand the results that are now in order to the sink.
+         *
+         * @throws IOException the failure of one of the tasks (other than the rate limit reserve)
+         */
+        public void add(Future<T> future) throws IOException
+        {
+            if (stopped)
+            {
+                future.cancel(true);
+                return;
+            }
+            pending.add(future);
+            drain(false);
+        }
+
+        /**
+         * Wait for all the tasks, and hand the remaining results to the sink.
+         *
+         * @throws IOException the failure of one of the tasks (other than the rate limit reserve)
+         */
+        public void finish() throws IOException
+        {
+            drain(true);
+        }
+
+        private void drain(boolean wait) throws IOException
+        {
+            while (!stopped && !pending.isEmpty())
+            {
+                Future<T> head = pending.peek();
+                if (!wait && !head.isDone())
+                    return;
+                pending.poll();
+                try
+                {
+                    T result = head.get();
+                    if (result != null)
+                        sink.accept(result);
+                }
+                catch (ExecutionException e)
+                {
+                    cancelPending();
+                    Throwable cause = e.getCause();
+                    if (RateLimitScheduler.isBudgetExhausted(cause))
+                    {
+                        // Keep what we have, the remaining quota is for updating the release draft
+                        LOG.warn("Stopped hydrating pull requests early: {}", cause.getMessage());
+                        stopped = true;
+                        return;
+                    }
+                    if (cause instanceof IOException)
+                        throw (IOException)cause;
+                    if (cause instanceof RuntimeException)
+                        throw (RuntimeException)cause;
+                    throw new IOException(cause);
+                }
+                catch (CancellationException e)
+                {
+                    LOG.debug("Hydration cancelled", e);
+                }
+                catch (InterruptedException e)
+                {
+                    cancelPending();
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting on hydration");
+                }
+                catch (RuntimeException e)
+                {
+                    // eg: the sink gave up
+                    cancelPending();
+                    throw e;
+                }
+            }
+        }
+
+        private void cancelPending()
+        {
+            for (Future<T> future : pending)
+            {
+                future.cancel(true);
+            }
+            pending.clear();
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        if (executor != null)
+            executor.shutdownNow();
+    }
+}
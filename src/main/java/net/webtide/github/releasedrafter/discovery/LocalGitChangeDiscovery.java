@@ -0,0 +1,150 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.discovery;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.webtide.github.releasedrafter.ChangeEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the changes from the history of a local checkout (eg: {@code actions/checkout} with {@code fetch-depth: 0}).
+ * <p>
+ * The commits between the previous release and the head are found in the local {@link CommitGraph},
+ * and the pull request numbers recovered from the merge / squash commit subjects.
+ * Only the pull request details (labels, logins) come from the API, through the {@link PullRequestHydrator}.
+ * </p>
+ * <p>
+ * When there is no previous release, or the history isn't available locally (shallow clone, unknown commits, no git),
+ * the {@code fallback} discovery is used.
+ * </p>
+ */
+public class LocalGitChangeDiscovery implements ChangeDiscovery
+{
+    private static final Logger LOG = LoggerFactory.getLogger(LocalGitChangeDiscovery.class);
+
+    private final Path repoDir;
+    private final PullRequestHydrator hydrator;
+    private final PullRequestAssociations associations;
+    private final ChangeDiscovery fallback;
+
+    /**
+     * @param repoDir the git working directory
+     * @param hydrator to build the {@link ChangeEntry} of the pull requests found
+     * @param associations to find the pull request of commits without a number in their subject (or null)
+     * @param fallback the discovery to use when the local history can't be used
+     */
+    public LocalGitChangeDiscovery(Path repoDir, PullRequestHydrator hydrator, PullRequestAssociations associations, ChangeDiscovery fallback)
+    {
+        this.repoDir = repoDir;
+        this.hydrator = hydrator;
+        this.associations = associations;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public List<ChangeEntry> findChanges(ChangeWindow window) throws IOException
+    {
+        if (window.getBaseRef() == null || window.getHeadSha() == null)
+        {
+            LOG.info("No previous release to compare with, using {}", fallback.getClass().getSimpleName());
+            return fallback.findChanges(window);
+        }
+        CommitGraph graph = null;
+        String head = null;
+        String base = null;
+        try
+        {
+            if (CommitGraph.isShallow(repoDir))
+            {
+                LOG.warn("Shallow clone at {} (use fetch-depth: 0), using {}", repoDir, fallback.getClass().getSimpleName());
+            }
+            else
+            {
+                head = CommitGraph.resolve(repoDir, window.getHeadSha());
+                base = CommitGraph.resolve(repoDir, window.getBaseRef());
+                if (head == null || base == null)
+                    LOG.warn("Unable to find {} / {} in {}, using {}", window.getHeadSha(), window.getBaseRef(), repoDir, fallback.getClass().getSimpleName());
+                else
+                    graph = CommitGraph.load(repoDir, head, base);
+            }
+        }
+        catch (InterruptedIOException e)
+        {
+            throw e;
+        }
+        catch (IOException e)
+        {
+            // eg: no git installed, or a repository git refuses to use (dubious ownership)
+            LOG.warn("Unable to read the git history at {}, using {}", repoDir, fallback.getClass().getSimpleName(), e);
+        }
+        if (graph == null)
+            return fallback.findChanges(window);
+
+        int headCommit = graph.indexOf(head);
+        int[] commits = graph.reachable(headCommit, graph.indexOf(base));
+
+        Set<Integer> numbers = new LinkedHashSet<>();
+        for (int commit : commits)
+        {
+            int number = PullRequestNumbers.fromCommitMessage(graph.getSubject(commit));
+            if (number > 0)
+                numbers.add(number);
+        }
+
+        // Commits of merged branches belong to their merge, only the commits
+        // directly on the branch can be from a pull request without a number in the subject
+        if (associations != null)
+        {
+            boolean[] inRange = new boolean[graph.size()];
+            for (int commit : commits)
+            {
+                inRange[commit] = true;
+            }
+            List<String> unmatched = new ArrayList<>();
+            for (int commit = headCommit; commit >= 0 && inRange[commit]; commit = graph.getFirstParent(commit))
+            {
+                String subject = graph.getSubject(commit);
+                if (PullRequestNumbers.fromCommitMessage(subject) < 0 && !subject.startsWith("Merge "))
+                    unmatched.add(graph.getSha(commit));
+            }
+            if (!unmatched.isEmpty())
+            {
+                Map<String, Integer> found = associations.findPullRequests(window.getBranch(), unmatched);
+                for (String sha : unmatched)
+                {
+                    Integer number = found.get(sha);
+                    if (number != null)
+                        numbers.add(number);
+                }
+            }
+        }
+
+        LOG.info("Found {} pull requests (from {} commits of {} in the local history)", numbers.size(), commits.length, graph.size());
+        return hydrator.hydrate(numbers, window);
+    }
+}
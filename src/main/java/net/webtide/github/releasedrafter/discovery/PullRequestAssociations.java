@@ -0,0 +1,36 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.discovery;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Finds the pull requests that brought in commits, for commits without a pull request number in their message.
+ */
+public interface PullRequestAssociations
+{
+    /**
+     * @param branch the base branch the pull requests should have been merged into
+     * @param commitShas the commits
+     * @return the merged pull request number for each commit that has one
+     */
+    Map<String, Integer> findPullRequests(String branch, Collection<String> commitShas) throws IOException;
+}
@@ -0,0 +1,50 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.discovery;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+import net.webtide.github.releasedrafter.ChangeEntry;
+
+/**
+ * Builds the {@link ChangeEntry} for pull requests already known by number.
+ */
+public interface PullRequestHydrator
+{
+    /**
+     * @param numbers the pull request numbers
+     * @return the changes, in the order of the numbers, skipping unknown numbers and pull requests that are not merged
+     */
+    List<ChangeEntry> hydrate(Collection<Integer> numbers) throws IOException;
+
+    /**
+     * Same as {@link #hydrate(Collection)}, for the changes of a window.
+     * A hydrator that can stop early (eg: at the rate limit reserve) marks the window incomplete.
+     *
+     * @param numbers the pull request numbers
+     * @param window the window the pull requests were found in
+     * @return the changes, in the order of the numbers, skipping unknown numbers and pull requests that are not merged
+     */
+    default List<ChangeEntry> hydrate(Collection<Integer> numbers, ChangeWindow window) throws IOException
+    {
+        return hydrate(numbers);
+    }
+}
@@ -0,0 +1,69 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.discovery;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Recovers the pull request number from the message of the commit that merged it.
+ */
+public final class PullRequestNumbers
+{
+    // "Merge pull request #123 from owner/branch"
+    private static final Pattern MERGE = Pattern.compile("^Merge pull request #(\\d+) from \\S+");
+    // "Title of the change (#123)", squash and merge / rebase and merge
+    private static final Pattern SQUASH = Pattern.compile("\\(#(\\d+)\\)\\s*$");
+
+    private PullRequestNumbers()
+    {
+    }
+
+    /**
+     * @param message the commit message (or just its subject line)
+     * @return the pull request number, or -1 if the message isn't one written by a pull request merge
+     */
+    public static int fromCommitMessage(String message)
+    {
+        if (message == null)
+            return -1;
+        int eol = message.indexOf('\n');
+        String subject = (eol < 0) ? message : message.substring(0, eol);
+
+        Matcher matcher = MERGE.matcher(subject);
+        if (matcher.find())
+            return toNumber(matcher.group(1));
+        matcher = SQUASH.matcher(subject);
+        if (matcher.find())
+            return toNumber(matcher.group(1));
+        return -1;
+    }
+
+    private static int toNumber(String digits)
+    {
+        try
+        {
+            return Integer.parseInt(digits);
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+}
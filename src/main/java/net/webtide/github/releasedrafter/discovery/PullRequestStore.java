@@ -0,0 +1,415 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.discovery;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.webtide.github.releasedrafter.ChangeEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The pull requests already seen, by number, with the {@code updated_at} they were seen at.
+ * <p>
+ * A pull request whose {@code updated_at} hasn't moved doesn't have to be fetched again
+ * (nor its labels, nor its merge commit): the stored {@link ChangeEntry} is still current.
+ * Pull requests that were closed without being merged are stored too, so they are skipped for free.
+ * </p>
+ * <p>
+ * The file is an append-only log of length prefixed records (the last record of a number wins),
+ * so an update only writes the pull requests that changed. The log is rewritten (compacted)
+ * on {@link #close()} once more than half of it is superseded records.
+ * A truncated last record (eg: an interrupted run), or a record with a corrupt length, is dropped
+ * (with anything after it) when loading.
+ * </p>
+ */
+public class PullRequestStore implements Closeable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(PullRequestStore.class);
+    private static final int MAGIC = 0x50525331; // "PRS1"
+    private static final int FLUSH_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final Map<Integer, Record> records = new HashMap<>();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private int logSize;
+    private long watermark;
+
+    /**
+     * A store kept in memory only.
+     */
+    public PullRequestStore()
+    {
+        this(null);
+    }
+
+    private PullRequestStore(Path file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Load the store, the file is created on the first update.
+     *
+     * @param file the store file
+     * @return the store
+     */
+    public static PullRequestStore open(Path file) throws IOException
+    {
+        PullRequestStore store = new PullRequestStore(file);
+        if (Files.exists(file))
+            store.load();
+        return store;
+    }
+
+    public Path getFile()
+    {
+        return file;
+    }
+
+    public synchronized int size()
+    {
+        return records.size();
+    }
+
+    /**
+     * Not a lower bound for the listings: a pull request updated before it may not be stored
+     * (eg: it was outside the window of the runs so far).
+     *
+     * @return the most recent {@code updated_at} stored (or the epoch, if empty)
+     */
+    public synchronized Date getWatermark()
+    {
+        return new Date(watermark);
+    }
+
+    public synchronized Record get(int number)
+    {
+        return records.get(number);
+    }
+
+    /**
+     * @param number the pull request number
+     * @param updatedAt the current {@code updated_at} of the pull request
+     * @return the record, if it was stored with the same (or a later) {@code updated_at}, otherwise null
+     */
+    public synchronized Record getCurrent(int number, Date updatedAt)
+    {
+        Record record = records.get(number);
+        if (record == null || updatedAt == null || record.getUpdatedAt() < updatedAt.getTime())
+            return null;
+        return record;
+    }
+
+    /**
+     * Store a merged pull request.
+     *
+     * @param entry the change
+     * @param updatedAt the {@code updated_at} of the pull request the change was built from
+     * @param mergeSha the merge commit (can be null)
+     */
+    public synchronized void put(ChangeEntry entry, Date updatedAt, String mergeSha)
+    {
+        put(new Record(entry.getPullRequestId(), updatedAt.getTime(), mergeSha, entry));
+    }
+
+    /**
+     * Store a pull request that was closed without being merged (or is a draft).
+     */
+    public synchronized void putUnmerged(int number, Date updatedAt)
+    {
+        put(new Record(number, updatedAt.getTime(), null, null));
+    }
+
+    private void put(Record record)
+    {
+        Record old = records.get(record.getNumber());
+        if (old != null && old.getUpdatedAt() >= record.getUpdatedAt())
+            return; // already current
+        add(record);
+        if (file == null)
+            return;
+        try
+        {
+            write(new DataOutputStream(pending), record);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e); // not with a ByteArrayOutputStream
+        }
+
+        // Written as the changes are found, not all at the end
+        if (pending.size() >= FLUSH_SIZE)
+        {
+            try
+            {
+                flush();
+            }
+            catch (IOException e)
+            {
+                LOG.warn("Unable to append to {}, will retry: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    private void add(Record record)
+    {
+        records.put(record.getNumber(), record);
+        watermark = Math.max(watermark, record.getUpdatedAt());
+        logSize++;
+    }
+
+    /**
+     * Append the records stored since the last flush to the file.
+     */
+    public synchronized void flush() throws IOException
+    {
+        if (file == null || pending.size() == 0)
+            return;
+        boolean created = !Files.exists(file);
+        if (created && file.getParent() != null)
+            Files.createDirectories(file.getParent());
+        try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND))
+        {
+            if (created)
+                new DataOutputStream(out).writeInt(MAGIC);
+            pending.writeTo(out);
+        }
+        pending.reset();
+    }
+
+    /**
+     * Rewrite the file with only the current record of each pull request.
+     */
+    public synchronized void compact() throws IOException
+    {
+        if (file == null)
+            return;
+        pending.reset();
+        if (file.getParent() != null)
+            Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        List<Record> current = new ArrayList<>(records.values());
+        current.sort((a, b) -> Long.compare(a.getUpdatedAt(), b.getUpdatedAt()));
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp)))
+        {
+            out.writeInt(MAGIC);
+            for (Record record : current)
+            {
+                write(out, record);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logSize = records.size();
+        LOG.debug("Compacted {} to {} pull requests", file, logSize);
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (logSize > 2 * records.size())
+            compact();
+        else
+            flush();
+    }
+
+    private void load() throws IOException
+    {
+        long size = Files.size(file);
+        long good = 0;
+        boolean truncated = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+        {
+            if (in.readInt() != MAGIC)
+            {
+                LOG.warn("Not a pull request store, ignoring: {}", file);
+                Files.deleteIfExists(file);
+                return;
+            }
+            good = 4;
+            while (true)
+            {
+                int length;
+                try
+                {
+                    length = in.readInt();
+                }
+                catch (EOFException e)
+                {
+                    break;
+                }
+                if (length < 0 || length > size - good - 4)
+                {
+                    // A corrupt length, don't allocate it
+                    truncated = true;
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                add(read(new DataInputStream(new ByteArrayInputStream(bytes))));
+                good += 4 + length;
+            }
+        }
+        catch (EOFException e)
+        {
+            truncated = true;
+        }
+
+        if (truncated)
+        {
+            LOG.warn("Dropping truncated record at {} of {}", good, file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE))
+            {
+                channel.truncate(good);
+            }
+        }
+        LOG.info("Loaded {} pull requests (updated up to {}) from {}", records.size(), getWatermark().toInstant(), file);
+    }
+
+    private static void write(DataOutputStream out, Record record) throws IOException
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+        DataOutputStream data = new DataOutputStream(buffer);
+        data.writeInt(record.getNumber());
+        data.writeLong(record.getUpdatedAt());
+        ChangeEntry entry = record.getEntry();
+        data.writeBoolean(entry != null);
+        if (entry != null)
+        {
+            writeString(data, record.getMergeSha());
+            writeString(data, entry.getPullRequestUrl());
+            writeString(data, entry.getBranch());
+            writeString(data, entry.getTitle());
+            data.writeLong(entry.getDateMillis());
+            data.writeShort(entry.getLabels().size());
+            for (String label : entry.getLabels())
+            {
+                writeString(data, label);
+            }
+            writeString(data, entry.getCommitter());
+            writeString(data, entry.getAuthor());
+        }
+        out.writeInt(buffer.size());
+        buffer.writeTo(out);
+    }
+
+    private static Record read(DataInputStream data) throws IOException
+    {
+        int number = data.readInt();
+        long updatedAt = data.readLong();
+        if (!data.readBoolean())
+            return new Record(number, updatedAt, null, null);
+
+        String mergeSha = readString(data);
+        String url = readString(data);
+        String branch = readString(data);
+        String title = readString(data);
+        long date = data.readLong();
+        int labelCount = data.readUnsignedShort();
+        List<String> labels = new ArrayList<>(labelCount);
+        for (int i = 0; i < labelCount; i++)
+        {
+            labels.add(readString(data));
+        }
+        String committer = readString(data);
+        String author = readString(data);
+        ChangeEntry entry = new ChangeEntry(url, number, branch, title, date, labels, committer, author);
+        return new Record(number, updatedAt, mergeSha, entry);
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException
+    {
+        data.writeBoolean(value != null);
+        if (value != null)
+            data.writeUTF(value);
+    }
+
+    private static String readString(DataInputStream data) throws IOException
+    {
+        return data.readBoolean() ? data.readUTF() : null;
+    }
+
+    /**
+     * A pull request as stored.
+     */
+    public static class Record
+    {
+        private final int number;
+        private final long updatedAt;
+        private final String mergeSha;
+        private final ChangeEntry entry;
+
+        Record(int number, long updatedAt, String mergeSha, ChangeEntry entry)
+        {
+            this.number = number;
+            this.updatedAt = updatedAt;
+            this.mergeSha = mergeSha;
+            this.entry = entry;
+        }
+
+        public int getNumber()
+        {
+            return number;
+        }
+
+        /**
+         * @return the {@code updated_at} of the pull request, in epoch milliseconds
+         */
+        public long getUpdatedAt()
+        {
+            return updatedAt;
+        }
+
+        public String getMergeSha()
+        {
+            return mergeSha;
+        }
+
+        public boolean isMerged()
+        {
+            return entry != null;
+        }
+
+        /**
+         * @return the change, or null if not merged
+         */
+        public ChangeEntry getEntry()
+        {
+            return entry;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.discovery;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+
+import net.webtide.github.releasedrafter.ChangeEntry;
+import net.webtide.github.releasedrafter.ChangeEntryBuilder;
+import net.webtide.github.releasedrafter.QueryPullRequests;
+import org.kohsuke.github.GHFileNotFoundException;
+import org.kohsuke.github.GHPullRequest;
+import org.kohsuke.github.GHRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scans the closed pull requests of the branch over the REST API,
+ * see {@link QueryPullRequests#findClosedAndMergedPullRequests(GHRepository, String, java.util.Date, java.util.Date, int)}.
+ */
+public class RestChangeDiscovery implements ChangeDiscovery, PullRequestHydrator
+{
+    private static final Logger LOG = LoggerFactory.getLogger(RestChangeDiscovery.class);
+    private final GHRepository repo;
+    private final PullRequestStore store;
+    private final HydrationExecutor executor;
+
+    public RestChangeDiscovery(GHRepository repo)
+    {
+        this(repo, new PullRequestStore(), HydrationExecutor.direct());
+    }
+
+    /**
+     * @param repo the repository
+     * @param store the pull requests already seen (and not updated since) are not fetched again
+     * @param executor the executor to fetch the pull requests with
+     */
+    public RestChangeDiscovery(GHRepository repo, PullRequestStore store, HydrationExecutor executor)
+    {
+        this.repo = repo;
+        this.store = store;
+        this.executor = executor;
+    }
+
+    @Override
+    public List<ChangeEntry> findChanges(ChangeWindow window) throws IOException
+    {
+        return QueryPullRequests.findClosedAndMergedPullRequests(repo, window.getBranch(), window.getDateFrom(), window.getDateTo(),
+            window.getMaxPullRequestsToSearchThrough(), store, executor, window::markIncomplete);
+    }
+
+    @Override
+    public Flow.Publisher<ChangeEntry> publishChanges(ChangeWindow window)
+    {
+        return QueryPullRequests.publishClosedAndMergedPullRequests(repo, window.getBranch(), window.getDateFrom(), window.getDateTo(),
+            window.getMaxPullRequestsToSearchThrough(), store, executor, window::markIncomplete);
+    }
+
+    /**
+     * Fetch the pull requests (plus their labels and merge commit, unless stored since their last update), on the executor.
+     */
+    @Override
+    public List<ChangeEntry> hydrate(Collection<Integer> numbers) throws IOException
+    {
+        return hydrate(numbers, null);
+    }
+
+    @Override
+    public List<ChangeEntry> hydrate(Collection<Integer> numbers, ChangeWindow window) throws IOException
+    {
+        List<Future<ChangeEntry>> entries = new ArrayList<>();
+        for (int number : new LinkedHashSet<>(numbers))
+        {
+            entries.add(executor.submit(() -> hydrate(number)));
+        }
+        return HydrationExecutor.collect(entries, window);
+    }
+
+    private ChangeEntry hydrate(int number) throws IOException
+    {
+        GHPullRequest pullRequest;
+        try
+        {
+            pullRequest = repo.getPullRequest(number);
+        }
+        catch (GHFileNotFoundException e)
+        {
+            LOG.debug("Pull request #{} not found", number);
+            return null;
+        }
+
+        PullRequestStore.Record record = store.getCurrent(number, pullRequest.getUpdatedAt());
+        if (record != null)
+            return record.getEntry();
+
+        if (pullRequest.isDraft() || !pullRequest.isMerged())
+        {
+            LOG.debug("Skipping unmerged PR #{} - {}", number, pullRequest.getTitle());
+            store.putUnmerged(number, pullRequest.getUpdatedAt());
+            return null;
+        }
+        ChangeEntry entry = ChangeEntryBuilder.from(repo, pullRequest);
+        store.put(entry, pullRequest.getUpdatedAt(), pullRequest.getMergeCommitSha());
+        return entry;
+    }
+}
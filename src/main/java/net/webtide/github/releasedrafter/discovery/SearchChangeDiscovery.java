@@ -0,0 +1,183 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.discovery;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.webtide.github.releasedrafter.ChangeEntry;
+import org.kohsuke.github.GHIssue;
+import org.kohsuke.github.GitHub;
+import org.kohsuke.github.PagedIterator;
+import org.kohsuke.github.PagedSearchIterable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the pull requests with the search API, which filters on the merge date, base branch and labels,
+ * so only the pull requests in the change set are listed.
+ * <p>
+ * The search API returns at most {@link #MAX_RESULTS} results for a query,
+ * a window with more is split in two (by merge date) until each part fits.
+ * </p>
+ */
+public class SearchChangeDiscovery implements ChangeDiscovery
+{
+    public static final int MAX_RESULTS = 1000;
+    private static final Logger LOG = LoggerFactory.getLogger(SearchChangeDiscovery.class);
+    private static final int PAGE_SIZE = 100;
+
+    private final GitHub github;
+    private final String repoFullName;
+    private final PullRequestHydrator hydrator;
+    private final PullRequestStore store;
+    private final LongAdder searches = new LongAdder();
+
+    /**
+     * @param github the connection to search with
+     * @param repoFullName the repository ({@code owner/name})
+     * @param hydrator to build the {@link ChangeEntry} of the pull requests found
+     */
+    public SearchChangeDiscovery(GitHub github, String repoFullName, PullRequestHydrator hydrator)
+    {
+        this(github, repoFullName, hydrator, new PullRequestStore());
+    }
+
+    /**
+     * @param github the connection to search with
+     * @param repoFullName the repository ({@code owner/name})
+     * @param hydrator to build the {@link ChangeEntry} of the pull requests found
+     * @param store the pull requests found that are stored with their current {@code updated_at} are not hydrated again
+     */
+    public SearchChangeDiscovery(GitHub github, String repoFullName, PullRequestHydrator hydrator, PullRequestStore store)
+    {
+        this.github = github;
+        this.repoFullName = repoFullName;
+        this.hydrator = hydrator;
+        this.store = store;
+    }
+
+    /**
+     * @return the number of search queries made (not counting the following pages)
+     */
+    public long getSearchCount()
+    {
+        return searches.sum();
+    }
+
+    /**
+     * The search results have the {@code updated_at} of the pull requests, only the ones
+     * not in the store with that {@code updated_at} are hydrated.
+     */
+    @Override
+    public List<ChangeEntry> findChanges(ChangeWindow window) throws IOException
+    {
+        Map<Integer, Date> numbers = new LinkedHashMap<>();
+        long from = Math.floorDiv(window.getDateFrom().getTime(), 1000);
+        long to = Math.floorDiv(window.getDateTo().getTime(), 1000);
+        search(window, from, to, numbers);
+
+        Map<Integer, ChangeEntry> entries = new HashMap<>();
+        List<Integer> stale = new ArrayList<>();
+        for (Map.Entry<Integer, Date> number : numbers.entrySet())
+        {
+            PullRequestStore.Record record = store.getCurrent(number.getKey(), number.getValue());
+            if (record == null)
+                stale.add(number.getKey());
+            else if (record.isMerged())
+                entries.put(number.getKey(), record.getEntry());
+        }
+        LOG.info("Found {} pull requests (in {} searches), {} to hydrate", numbers.size(), getSearchCount(), stale.size());
+
+        for (ChangeEntry entry : hydrator.hydrate(stale, window))
+        {
+            Date updatedAt = numbers.get(entry.getPullRequestId());
+            if (updatedAt != null)
+                store.put(entry, updatedAt, null);
+            entries.put(entry.getPullRequestId(), entry);
+        }
+
+        List<ChangeEntry> changes = new ArrayList<>(entries.size());
+        for (Integer number : numbers.keySet())
+        {
+            ChangeEntry entry = entries.get(number);
+            if (entry != null)
+                changes.add(entry);
+        }
+        return changes;
+    }
+
+    private void search(ChangeWindow window, long from, long to, Map<Integer, Date> numbers) throws IOException
+    {
+        String query = toQuery(repoFullName, window.getBranch(), from, to, window.getExcludeLabels());
+        LOG.debug("Search: {}", query);
+        searches.increment();
+
+        PagedSearchIterable<GHIssue> results = github.searchIssues().q(query).list().withPageSize(PAGE_SIZE);
+        // Iterate with the iterator that fetched the total count, so the first page isn't requested twice
+        PagedIterator<GHIssue> iterator = results.iterator();
+        iterator.hasNext();
+        int totalCount = results.getTotalCount();
+
+        if (totalCount > MAX_RESULTS)
+        {
+            if (to > from)
+            {
+                long middle = from + (to - from) / 2;
+                LOG.debug("Search for {} has {} results, splitting at {}", window.getBranch(), totalCount, Instant.ofEpochSecond(middle));
+                search(window, from, middle, numbers);
+                search(window, middle + 1, to, numbers);
+                return;
+            }
+            LOG.warn("Search has {} results for a single second, only the first {} are used: {}", totalCount, MAX_RESULTS, query);
+        }
+
+        while (iterator.hasNext())
+        {
+            GHIssue issue = iterator.next();
+            numbers.put(issue.getNumber(), issue.getUpdatedAt());
+        }
+    }
+
+    /**
+     * @param from the oldest merge date (epoch seconds, inclusive)
+     * @param to the newest merge date (epoch seconds, inclusive)
+     * @return the search query for the merged pull requests
+     */
+    public static String toQuery(String repoFullName, String branch, long from, long to, List<String> excludeLabels)
+    {
+        StringBuilder query = new StringBuilder();
+        query.append("repo:").append(repoFullName);
+        query.append(" is:pr is:merged");
+        query.append(" base:").append(branch);
+        query.append(" merged:").append(Instant.ofEpochSecond(from)).append("..").append(Instant.ofEpochSecond(to));
+        for (String label : excludeLabels)
+        {
+            query.append(" -label:\"").append(label.replace("\"", "")).append('"');
+        }
+        return query.toString();
+    }
+}
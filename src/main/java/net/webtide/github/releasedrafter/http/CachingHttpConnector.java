@@ -0,0 +1,410 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.kohsuke.github.HttpConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link HttpConnector} that replays stored {@code ETag} / {@code Last-Modified}
+ * validators as conditional requests.
+ * <p>
+ * A {@code 304 Not Modified} response is turned into the stored {@code 200 OK} response
+ * (with the fresh rate limit headers from the 304), so the github-api library never sees it.
+ * GitHub does not count those {@code 304} responses against the rate limit.
+ * </p>
+ */
+public class CachingHttpConnector implements HttpConnector
+{
+    private static final Logger LOG = LoggerFactory.getLogger(CachingHttpConnector.class);
+    // Headers that describe the 304 response itself, not the cached representation
+    private static final Set<String> ENTITY_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static
+    {
+        ENTITY_HEADERS.add("Content-Length");
+        ENTITY_HEADERS.add("Content-Encoding");
+        ENTITY_HEADERS.add("Content-Type");
+        ENTITY_HEADERS.add("Transfer-Encoding");
+    }
+
+    private final HttpConnector connector;
+    private final HttpResponseCache cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CachingHttpConnector(HttpConnector connector, HttpResponseCache cache)
+    {
+        this.connector = Objects.requireNonNull(connector);
+        this.cache = Objects.requireNonNull(cache);
+    }
+
+    public HttpResponseCache getCache()
+    {
+        return cache;
+    }
+
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    @Override
+    public HttpURLConnection connect(URL url) throws IOException
+    {
+        return new CachingConnection(connector.connect(url));
+    }
+
+    private class CachingConnection extends HttpURLConnectionWrapper
+    {
+        private boolean resolved;
+        private HttpResponseCache.Entry cached;
+        private String cacheKey;
+        private boolean fromCache;
+        private Map<String, List<String>> cachedHeaders;
+        private InputStream inputStream;
+
+        CachingConnection(HttpURLConnection delegate)
+        {
+            super(delegate);
+        }
+
+        private void resolve() throws IOException
+        {
+            if (resolved)
+                return;
+            resolved = true;
+
+            if (!"GET".equals(getRequestMethod()) || "no-cache".equals(getRequestProperty("Cache-Control")))
+                return;
+
+            cacheKey = HttpResponseCache.key(getURL().toExternalForm(), getAuthorization(), getRequestProperty("Accept"));
+            cached = cache.get(cacheKey);
+            if (cached != null)
+            {
+                String etag = cached.getHeader("ETag");
+                String lastModified = cached.getHeader("Last-Modified");
+                if (etag != null)
+                    delegate.setRequestProperty("If-None-Match", etag);
+                if (lastModified != null)
+                    delegate.setRequestProperty("If-Modified-Since", lastModified);
+            }
+
+            int status;
+            try
+            {
+                status = delegate.getResponseCode();
+            }
+            catch (IOException e)
+            {
+                if (cached != null)
+                    cached.close();
+                throw e;
+            }
+            if (status == HTTP_NOT_MODIFIED && cached != null)
+            {
+                hits.increment();
+                fromCache = true;
+                cachedHeaders = mergeHeaders(cached.getHeaders(), delegate.getHeaderFields());
+                LOG.debug("Not Modified (from cache): {}", getURL());
+            }
+            else
+            {
+                misses.increment();
+                if (cached != null)
+                    cached.close();
+            }
+        }
+
+        private Map<String, List<String>> mergeHeaders(Map<String, List<String>> stored, Map<String, List<String>> live)
+        {
+            Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            headers.putAll(stored);
+            live.forEach((name, values) ->
+            {
+                if (name != null && !ENTITY_HEADERS.contains(name))
+                    headers.put(name, values);
+            });
+            return headers;
+        }
+
+        private boolean isCacheable() throws IOException
+        {
+            return cacheKey != null &&
+                delegate.getResponseCode() == HTTP_OK &&
+                (delegate.getHeaderField("ETag") != null || delegate.getHeaderField("Last-Modified") != null);
+        }
+
+        @Override
+        public int getResponseCode() throws IOException
+        {
+            resolve();
+            return fromCache ? cached.getStatus() : delegate.getResponseCode();
+        }
+
+        @Override
+        public String getResponseMessage() throws IOException
+        {
+            resolve();
+            return fromCache ? "OK" : delegate.getResponseMessage();
+        }
+
+        private void resolveQuietly()
+        {
+            try
+            {
+                resolve();
+            }
+            catch (IOException e)
+            {
+                LOG.debug("Unable to resolve response", e);
+            }
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaderFields()
+        {
+            resolveQuietly();
+            if (!fromCache)
+                return delegate.getHeaderFields();
+
+            Map<String, List<String>> all = new LinkedHashMap<>();
+            all.put(null, Collections.singletonList("HTTP/1.1 " + cached.getStatus() + " OK"));
+            all.putAll(cachedHeaders);
+            return Collections.unmodifiableMap(all);
+        }
+
+        @Override
+        public String getHeaderField(String name)
+        {
+            resolveQuietly();
+            if (!fromCache)
+                return delegate.getHeaderField(name);
+            List<String> values = cachedHeaders.get(name);
+            return (values == null || values.isEmpty()) ? null : values.get(values.size() - 1);
+        }
+
+        @Override
+        public String getHeaderField(int n)
+        {
+            resolveQuietly();
+            if (!fromCache)
+                return delegate.getHeaderField(n);
+            List<Map.Entry<String, List<String>>> entries = new ArrayList<>(getHeaderFields().entrySet());
+            return n < entries.size() ? entries.get(n).getValue().get(0) : null;
+        }
+
+        @Override
+        public String getHeaderFieldKey(int n)
+        {
+            resolveQuietly();
+            if (!fromCache)
+                return delegate.getHeaderFieldKey(n);
+            List<Map.Entry<String, List<String>>> entries = new ArrayList<>(getHeaderFields().entrySet());
+            return n < entries.size() ? entries.get(n).getKey() : null;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException
+        {
+            if (inputStream != null)
+                return inputStream;
+
+            resolve();
+            if (fromCache)
+            {
+                inputStream = cached.getContent();
+            }
+            else if (isCacheable())
+            {
+                HttpResponseCache.Entry entry = new HttpResponseCache.Entry(getURL().toExternalForm(), HTTP_OK, delegate.getHeaderFields());
+                inputStream = new CachingInputStream(delegate.getInputStream(), cacheKey, entry);
+            }
+            else
+            {
+                inputStream = delegate.getInputStream();
+            }
+            return inputStream;
+        }
+
+        @Override
+        public InputStream getErrorStream()
+        {
+            return fromCache ? null : delegate.getErrorStream();
+        }
+    }
+
+    /**
+     * Copies the body into the cache as it is read, the entry is only stored
+     * once the body has been completely received.
+     */
+    private class CachingInputStream extends FilterInputStream
+    {
+        private final String key;
+        private final HttpResponseCache.Entry entry;
+        private Path file;
+        private OutputStream out;
+        private boolean complete;
+
+        CachingInputStream(InputStream in, String key, HttpResponseCache.Entry entry)
+        {
+            super(in);
+            this.key = key;
+            this.entry = entry;
+            try
+            {
+                this.file = cache.newTempFile();
+                this.out = Files.newOutputStream(file);
+            }
+            catch (IOException e)
+            {
+                LOG.debug("Unable to cache {}", entry.getUrl(), e);
+                abandon();
+            }
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = super.read();
+            if (b < 0)
+                complete = true;
+            else
+                write(new byte[]{(byte)b}, 0, 1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int count = super.read(b, off, len);
+            if (count < 0)
+                complete = true;
+            else
+                write(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            // skipped content can't be cached
+            abandon();
+            return super.skip(n);
+        }
+
+        private void write(byte[] b, int off, int len)
+        {
+            if (out == null)
+                return;
+            try
+            {
+                out.write(b, off, len);
+            }
+            catch (IOException e)
+            {
+                LOG.debug("Unable to cache {}", entry.getUrl(), e);
+                abandon();
+            }
+        }
+
+        private void abandon()
+        {
+            try
+            {
+                if (out != null)
+                    out.close();
+                if (file != null)
+                    Files.deleteIfExists(file);
+            }
+            catch (IOException ignore)
+            {
+                // nothing we can do
+            }
+            out = null;
+            file = null;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            try
+            {
+                if (out != null && !complete)
+                {
+                    // Parsers tend to stop at the end of the JSON document, drain the remainder
+                    byte[] buf = new byte[4096];
+                    while (read(buf, 0, buf.length) >= 0)
+                    {
+                        // keep reading
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                abandon();
+            }
+            finally
+            {
+                super.close();
+            }
+
+            if (out != null && complete)
+            {
+                try
+                {
+                    out.close();
+                    out = null;
+                    cache.put(key, entry, file);
+                    file = null;
+                }
+                catch (IOException e)
+                {
+                    LOG.debug("Unable to cache {}", entry.getUrl(), e);
+                }
+            }
+            abandon();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.kohsuke.github.HttpConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A minimal client for the GitHub GraphQL API (v4).
+ * <p>
+ * Requests go through the same {@link HttpConnector} as the REST calls,
+ * so they are scheduled against the {@code graphql} rate limit.
+ * </p>
+ */
+public class GraphQLClient
+{
+    private static final Logger LOG = LoggerFactory.getLogger(GraphQLClient.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpConnector connector;
+    private final URL endpoint;
+    private final String authorization;
+    private final LongAdder queries = new LongAdder();
+
+    /**
+     * @param connector the connector to send requests with
+     * @param endpoint the GraphQL endpoint (eg: {@code https://api.github.com/graphql})
+     * @param authorization the {@code Authorization} header value (eg: {@code token <token>})
+     */
+    public GraphQLClient(HttpConnector connector, URL endpoint, String authorization)
+    {
+        this.connector = Objects.requireNonNull(connector);
+        this.endpoint = Objects.requireNonNull(endpoint);
+        this.authorization = authorization;
+    }
+
+    public URL getEndpoint()
+    {
+        return endpoint;
+    }
+
+    /**
+     * @return the number of queries sent
+     */
+    public long getQueryCount()
+    {
+        return queries.sum();
+    }
+
+    public JsonNode query(String query) throws IOException
+    {
+        return query(query, Collections.emptyMap());
+    }
+
+    /**
+     * Execute a query.
+     * <p>
+     * A response with both {@code data} and {@code errors} (eg: one of the aliased lookups not found)
+     * returns the partial {@code data}, the errors are only logged.
+     * </p>
+     *
+     * @param query the GraphQL query document
+     * @param variables the variables referenced by the query
+     * @return the {@code data} of the response
+     * @throws IOException if the request failed, or returned no data
+     */
+    public JsonNode query(String query, Map<String, Object> variables) throws IOException
+    {
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("query", query);
+        if (!variables.isEmpty())
+            request.put("variables", variables);
+        byte[] content = MAPPER.writeValueAsBytes(request);
+
+        HttpURLConnection connection = connector.connect(endpoint);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+        connection.setRequestProperty("Accept", "application/json");
+        if (authorization != null)
+            connection.setRequestProperty("Authorization", authorization);
+        try (OutputStream out = connection.getOutputStream())
+        {
+            out.write(content);
+        }
+        queries.increment();
+
+        int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK)
+        {
+            String error = "";
+            try (InputStream in = connection.getErrorStream())
+            {
+                if (in != null)
+                    error = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            throw new IOException(String.format("GraphQL request to %s failed: %d %s", endpoint, status, error));
+        }
+
+        JsonNode response;
+        try (InputStream in = connection.getInputStream())
+        {
+            response = MAPPER.readTree(in);
+        }
+
+        JsonNode data = response.get("data");
+        JsonNode errors = response.get("errors");
+        if (data == null || data.isNull())
+            throw new IOException("GraphQL query failed: " + errors);
+        if (errors != null && errors.size() > 0)
+            LOG.warn("GraphQL query returned partial data: {}", errors);
+        return data;
+    }
+}
@@ -0,0 +1,366 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.kohsuke.github.HttpConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link HttpConnector} built on {@link HttpClient}.
+ * <p>
+ * All connections share one client, so requests are multiplexed over a pooled
+ * HTTP/2 connection (instead of one TLS handshake per {@link HttpURLConnection}).
+ * Responses are requested compressed and decoded here ({@code gzip} and {@code deflate}).
+ * </p>
+ */
+public class HttpClientConnector implements HttpConnector
+{
+    private static final Logger LOG = LoggerFactory.getLogger(HttpClientConnector.class);
+    // Headers that HttpClient manages itself, and refuses to have set
+    private static final Set<String> RESTRICTED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static
+    {
+        RESTRICTED_HEADERS.add("Connection");
+        RESTRICTED_HEADERS.add("Content-Length");
+        RESTRICTED_HEADERS.add("Expect");
+        RESTRICTED_HEADERS.add("Host");
+        RESTRICTED_HEADERS.add("Upgrade");
+    }
+
+    private final HttpClient client;
+
+    public HttpClientConnector()
+    {
+        this(HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(Duration.ofSeconds(30))
+            .proxy(ProxySelector.getDefault())
+            .build());
+    }
+
+    public HttpClientConnector(HttpClient client)
+    {
+        this.client = client;
+    }
+
+    public HttpClient getClient()
+    {
+        return client;
+    }
+
+    /**
+     * Open the (TLS + HTTP/2) connection to the API server in the background.
+     * <p>
+     * Uses the {@code /rate_limit} endpoint, which doesn't count against the rate limit.
+     * </p>
+     *
+     * @param apiUrl the API url (eg: {@code https://api.github.com})
+     */
+    public void warmUp(String apiUrl)
+    {
+        try
+        {
+            HttpRequest request = HttpRequest.newBuilder(new URI(apiUrl + "/rate_limit"))
+                .timeout(Duration.ofSeconds(30))
+                .build();
+            long start = System.nanoTime();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, failure) ->
+                {
+                    if (failure != null)
+                        LOG.debug("Connection warm up to {} failed", apiUrl, failure);
+                    else
+                        LOG.debug("Connection to {} warmed up ({}) in {} ms", apiUrl, response.version(), Duration.ofNanos(System.nanoTime() - start).toMillis());
+                });
+        }
+        catch (URISyntaxException e)
+        {
+            LOG.debug("Invalid API url {}", apiUrl, e);
+        }
+    }
+
+    @Override
+    public HttpURLConnection connect(URL url)
+    {
+        return new HttpClientURLConnection(url);
+    }
+
+    /**
+     * The {@link HttpURLConnection} view of a single {@link HttpClient} exchange.
+     * <p>
+     * The request is only sent once the response is first asked for.
+     * </p>
+     */
+    private class HttpClientURLConnection extends HttpURLConnection
+    {
+        private final Map<String, List<String>> requestHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        private ByteArrayOutputStream requestBody;
+        private HttpResponse<InputStream> response;
+        private Map<String, List<String>> responseHeaders;
+        private InputStream responseBody;
+
+        HttpClientURLConnection(URL url)
+        {
+            super(url);
+        }
+
+        @Override
+        public void setRequestMethod(String method)
+        {
+            // HttpClient supports any verb, including "PATCH"
+            this.method = method;
+        }
+
+        @Override
+        public void setRequestProperty(String key, String value)
+        {
+            List<String> values = new ArrayList<>();
+            values.add(value);
+            requestHeaders.put(key, values);
+        }
+
+        @Override
+        public void addRequestProperty(String key, String value)
+        {
+            requestHeaders.computeIfAbsent(key, (k) -> new ArrayList<>()).add(value);
+        }
+
+        @Override
+        public String getRequestProperty(String key)
+        {
+            List<String> values = requestHeaders.get(key);
+            return (values == null || values.isEmpty()) ? null : values.get(0);
+        }
+
+        @Override
+        public Map<String, List<String>> getRequestProperties()
+        {
+            return Collections.unmodifiableMap(requestHeaders);
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException
+        {
+            if (response != null)
+                throw new IOException("Request already sent");
+            if (requestBody == null)
+                requestBody = new ByteArrayOutputStream();
+            return requestBody;
+        }
+
+        @Override
+        public void connect() throws IOException
+        {
+            if (response != null)
+                return;
+
+            try
+            {
+                HttpRequest.Builder builder = HttpRequest.newBuilder(url.toURI());
+                if (getReadTimeout() > 0)
+                    builder.timeout(Duration.ofMillis(getReadTimeout()));
+
+                requestHeaders.forEach((name, values) ->
+                {
+                    if (!RESTRICTED_HEADERS.contains(name) && !"Accept-Encoding".equalsIgnoreCase(name))
+                        values.forEach((value) -> builder.header(name, value));
+                });
+                // We decode the response body ourselves
+                builder.header("Accept-Encoding", "gzip, deflate");
+
+                HttpRequest.BodyPublisher body = (requestBody == null)
+                    ? HttpRequest.BodyPublishers.noBody()
+                    : HttpRequest.BodyPublishers.ofByteArray(requestBody.toByteArray());
+                builder.method(getRequestMethod(), body);
+
+                response = client.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+                connected = true;
+                responseCode = response.statusCode();
+                responseHeaders = decodeHeaders(response);
+                responseBody = decodeBody(response);
+            }
+            catch (URISyntaxException e)
+            {
+                throw new IOException("Invalid URL: " + url, e);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for " + url);
+            }
+        }
+
+        private Map<String, List<String>> decodeHeaders(HttpResponse<InputStream> response)
+        {
+            Map<String, List<String>> headers = new LinkedHashMap<>();
+            headers.put(null, Collections.singletonList("HTTP/" + (response.version() == HttpClient.Version.HTTP_2 ? "2" : "1.1") + " " + response.statusCode()));
+            response.headers().map().forEach((name, values) ->
+            {
+                // The body is decoded here, so its encoding / length no longer apply
+                if (!"Content-Encoding".equalsIgnoreCase(name) && !"Content-Length".equalsIgnoreCase(name))
+                    headers.put(name, values);
+            });
+            return Collections.unmodifiableMap(headers);
+        }
+
+        private InputStream decodeBody(HttpResponse<InputStream> response) throws IOException
+        {
+            if (response.statusCode() == HTTP_NO_CONTENT || response.statusCode() == HTTP_NOT_MODIFIED || "HEAD".equals(getRequestMethod()))
+                return response.body();
+
+            String encoding = response.headers().firstValue("Content-Encoding").orElse("identity");
+            switch (encoding.toLowerCase())
+            {
+                case "gzip":
+                    return new GZIPInputStream(response.body());
+                case "deflate":
+                    return new InflaterInputStream(response.body());
+                default:
+                    return response.body();
+            }
+        }
+
+        @Override
+        public int getResponseCode() throws IOException
+        {
+            connect();
+            return responseCode;
+        }
+
+        @Override
+        public String getResponseMessage() throws IOException
+        {
+            connect();
+            return Integer.toString(responseCode);
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaderFields()
+        {
+            try
+            {
+                connect();
+            }
+            catch (IOException e)
+            {
+                LOG.debug("Unable to get response for {}", url, e);
+                return Collections.emptyMap();
+            }
+            return responseHeaders;
+        }
+
+        @Override
+        public String getHeaderField(String name)
+        {
+            if (name == null)
+                return getHeaderField(0);
+            for (Map.Entry<String, List<String>> entry : getHeaderFields().entrySet())
+            {
+                if (name.equalsIgnoreCase(entry.getKey()) && !entry.getValue().isEmpty())
+                    return entry.getValue().get(entry.getValue().size() - 1);
+            }
+            return null;
+        }
+
+        @Override
+        public String getHeaderField(int n)
+        {
+            List<Map.Entry<String, List<String>>> entries = new ArrayList<>(getHeaderFields().entrySet());
+            return n < entries.size() ? entries.get(n).getValue().get(0) : null;
+        }
+
+        @Override
+        public String getHeaderFieldKey(int n)
+        {
+            List<Map.Entry<String, List<String>>> entries = new ArrayList<>(getHeaderFields().entrySet());
+            return n < entries.size() ? entries.get(n).getKey() : null;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException
+        {
+            connect();
+            // Same behavior as the JVM HttpURLConnection, github-api depends on it
+            if (responseCode == HTTP_NOT_FOUND || responseCode == HTTP_GONE)
+                throw new FileNotFoundException(url.toString());
+            if (responseCode >= HTTP_BAD_REQUEST)
+                throw new IOException("Server returned HTTP response code: " + responseCode + " for URL: " + url);
+            return responseBody;
+        }
+
+        @Override
+        public InputStream getErrorStream()
+        {
+            if (response == null || responseCode < HTTP_BAD_REQUEST)
+                return null;
+            return responseBody;
+        }
+
+        @Override
+        public void disconnect()
+        {
+            if (responseBody != null)
+            {
+                try
+                {
+                    responseBody.close();
+                }
+                catch (IOException e)
+                {
+                    LOG.trace("Ignored", e);
+                }
+            }
+        }
+
+        @Override
+        public boolean usingProxy()
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,373 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.http;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * On-disk store of HTTP responses, used to replay {@code ETag} / {@code Last-Modified}
+ * validators as conditional requests.
+ * <p>
+ * Each entry is a pair of files in the cache directory, {@code <key>.meta} (status and headers)
+ * and {@code <key>.body} (raw response body, as received on the wire).
+ * The directory is bounded in size, the least recently used entries are evicted first.
+ * </p>
+ */
+public class HttpResponseCache
+{
+    private static final Logger LOG = LoggerFactory.getLogger(HttpResponseCache.class);
+    private static final String META = ".meta";
+    private static final String BODY = ".body";
+
+    private final Path directory;
+    private final long maxSize;
+    private long currentSize;
+
+    public HttpResponseCache(Path directory, long maxSize) throws IOException
+    {
+        this.directory = Objects.requireNonNull(directory);
+        this.maxSize = maxSize;
+        Files.createDirectories(directory);
+        this.currentSize = computeSize();
+        LOG.debug("Using HTTP cache {} [size={}, maxSize={}]", directory, currentSize, maxSize);
+    }
+
+    public Path getDirectory()
+    {
+        return directory;
+    }
+
+    public long getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public synchronized long getSize()
+    {
+        return currentSize;
+    }
+
+    /**
+     * Compute the cache key for a request.
+     * <p>
+     * The credentials are part of the key (hashed, never stored) as GitHub responses
+     * vary by the authenticated user.
+     * </p>
+     *
+     * @param url the request url
+     * @param authorization the Authorization request header (can be null)
+     * @param accept the Accept request header (can be null)
+     * @return the key to use with {@link #get(String)} and {@link #put(String, Entry, Path)}
+     */
+    public static String key(String url, String authorization, String accept)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(url.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte)0);
+            if (authorization != null)
+                digest.update(authorization.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte)0);
+            if (accept != null)
+                digest.update(accept.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest())
+            {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Get the stored entry.
+     * <p>
+     * The body is opened with the entry, under the same lock as {@link #put(String, Entry, Path)} and {@link #evict()},
+     * so it can still be read if the entry is replaced or evicted afterwards.
+     * The caller must {@link Entry#close() close} the entry.
+     * </p>
+     *
+     * @param key the cache key
+     * @return the entry, or null if not in the cache (or unreadable)
+     */
+    public synchronized Entry get(String key)
+    {
+        Path meta = directory.resolve(key + META);
+        Path body = directory.resolve(key + BODY);
+        if (!Files.isRegularFile(meta) || !Files.isRegularFile(body))
+            return null;
+
+        InputStream content = null;
+        try (BufferedReader reader = Files.newBufferedReader(meta, StandardCharsets.UTF_8))
+        {
+            Entry entry = new Entry();
+            entry.url = reader.readLine();
+            entry.status = Integer.parseInt(reader.readLine());
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                int idx = line.indexOf(": ");
+                if (idx > 0)
+                    entry.headers.computeIfAbsent(line.substring(0, idx), (k) -> new ArrayList<>()).add(line.substring(idx + 2));
+            }
+            entry.body = body;
+            content = Files.newInputStream(body);
+            entry.content = content;
+            // Least recently used tracking
+            Files.setLastModifiedTime(meta, FileTime.fromMillis(System.currentTimeMillis()));
+            return entry;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            LOG.debug("Unable to read cache entry {}", key, e);
+            closeQuietly(content);
+            return null;
+        }
+    }
+
+    /**
+     * Create a temporary file (in the cache directory) to stream a response body into.
+     *
+     * @return the temporary file
+     * @throws IOException if unable to create the file
+     */
+    public Path newTempFile() throws IOException
+    {
+        return Files.createTempFile(directory, "incoming-", ".tmp");
+    }
+
+    /**
+     * Store an entry, moving the (completely written) body file into the cache.
+     *
+     * @param key the cache key
+     * @param entry the status and headers to store
+     * @param bodyFile the body file (from {@link #newTempFile()}) that will be moved into the cache
+     * @throws IOException if unable to store the entry
+     */
+    public synchronized void put(String key, Entry entry, Path bodyFile) throws IOException
+    {
+        Path meta = directory.resolve(key + META);
+        Path body = directory.resolve(key + BODY);
+
+        currentSize -= sizeOf(meta) + sizeOf(body);
+
+        Path metaTemp = newTempFile();
+        try (BufferedWriter writer = Files.newBufferedWriter(metaTemp, StandardCharsets.UTF_8))
+        {
+            writer.write(entry.url);
+            writer.newLine();
+            writer.write(Integer.toString(entry.status));
+            writer.newLine();
+            for (Map.Entry<String, List<String>> header : entry.headers.entrySet())
+            {
+                if (header.getKey() == null)
+                    continue; // status line
+                for (String value : header.getValue())
+                {
+                    writer.write(header.getKey());
+                    writer.write(": ");
+                    writer.write(value);
+                    writer.newLine();
+                }
+            }
+        }
+
+        Files.move(bodyFile, body, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(metaTemp, meta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        currentSize += sizeOf(meta) + sizeOf(body);
+
+        if (currentSize > maxSize)
+            evict();
+    }
+
+    /**
+     * Remove least recently used entries until the cache is within its size bounds.
+     */
+    public synchronized void evict() throws IOException
+    {
+        List<Path> metas = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + META))
+        {
+            stream.forEach(metas::add);
+        }
+        metas.sort(Comparator.comparing(HttpResponseCache::lastModified));
+
+        // Leave some headroom so that we don't evict on every put
+        long target = maxSize - (maxSize / 10);
+        for (Path meta : metas)
+        {
+            if (currentSize <= target)
+                break;
+            String name = meta.getFileName().toString();
+            Path body = directory.resolve(name.substring(0, name.length() - META.length()) + BODY);
+            currentSize -= sizeOf(meta) + sizeOf(body);
+            Files.deleteIfExists(meta);
+            Files.deleteIfExists(body);
+            LOG.debug("Evicted cache entry {}", name);
+        }
+    }
+
+    private long computeSize() throws IOException
+    {
+        long size = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory))
+        {
+            for (Path path : stream)
+            {
+                String name = path.getFileName().toString();
+                if (name.endsWith(".tmp"))
+                    Files.deleteIfExists(path); // leftover from an interrupted run
+                else
+                    size += sizeOf(path);
+            }
+        }
+        return size;
+    }
+
+    private static long sizeOf(Path path)
+    {
+        try
+        {
+            return Files.exists(path) ? Files.size(path) : 0;
+        }
+        catch (IOException e)
+        {
+            return 0;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable)
+    {
+        try
+        {
+            if (closeable != null)
+                closeable.close();
+        }
+        catch (IOException ignore)
+        {
+            // nothing we can do
+        }
+    }
+
+    private static FileTime lastModified(Path path)
+    {
+        try
+        {
+            return Files.getLastModifiedTime(path);
+        }
+        catch (IOException e)
+        {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    public static class Entry implements Closeable
+    {
+        private String url;
+        private int status;
+        private final Map<String, List<String>> headers = new LinkedHashMap<>();
+        private Path body;
+        private InputStream content;
+
+        public Entry()
+        {
+        }
+
+        public Entry(String url, int status, Map<String, List<String>> headers)
+        {
+            this.url = url;
+            this.status = status;
+            headers.forEach((name, values) ->
+            {
+                if (name != null)
+                    this.headers.put(name, new ArrayList<>(values));
+            });
+        }
+
+        public String getUrl()
+        {
+            return url;
+        }
+
+        public int getStatus()
+        {
+            return status;
+        }
+
+        public Map<String, List<String>> getHeaders()
+        {
+            return headers;
+        }
+
+        public String getHeader(String name)
+        {
+            for (Map.Entry<String, List<String>> header : headers.entrySet())
+            {
+                if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty())
+                    return header.getValue().get(0);
+            }
+            return null;
+        }
+
+        public Path getBody()
+        {
+            return body;
+        }
+
+        /**
+         * @return the body, opened by {@link HttpResponseCache#get(String)}, or null for an entry not read from the cache
+         */
+        public InputStream getContent()
+        {
+            return content;
+        }
+
+        @Override
+        public void close()
+        {
+            closeQuietly(content);
+        }
+    }
+}
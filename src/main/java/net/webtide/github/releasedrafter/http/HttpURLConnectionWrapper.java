@@ -0,0 +1,328 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.security.Permission;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link HttpURLConnection} that forwards everything to another connection.
+ * <p>
+ * Subclasses override the response side to alter what the github-api library sees.
+ * </p>
+ */
+public abstract class HttpURLConnectionWrapper extends HttpURLConnection
+{
+    protected final HttpURLConnection delegate;
+    // HttpURLConnection hides the credentials from getRequestProperty()
+    private String authorization;
+
+    protected HttpURLConnectionWrapper(HttpURLConnection delegate)
+    {
+        super(delegate.getURL());
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void connect() throws IOException
+    {
+        delegate.connect();
+    }
+
+    @Override
+    public void disconnect()
+    {
+        delegate.disconnect();
+    }
+
+    @Override
+    public boolean usingProxy()
+    {
+        return delegate.usingProxy();
+    }
+
+    @Override
+    public void setRequestMethod(String method) throws ProtocolException
+    {
+        try
+        {
+            delegate.setRequestMethod(method);
+        }
+        catch (ProtocolException e)
+        {
+            // Non-standard verb (eg: "PATCH"), same workaround as github-api itself uses
+            forceRequestMethod(delegate, method, e);
+        }
+        this.method = method;
+    }
+
+    private static void forceRequestMethod(HttpURLConnection connection, String method, ProtocolException cause) throws ProtocolException
+    {
+        try
+        {
+            Field methodField = HttpURLConnection.class.getDeclaredField("method");
+            methodField.setAccessible(true);
+            methodField.set(connection, method);
+
+            // HttpsURLConnectionImpl holds the real connection in a "delegate" field
+            Field delegateField = findField(connection.getClass(), "delegate");
+            if (delegateField != null)
+            {
+                delegateField.setAccessible(true);
+                Object inner = delegateField.get(connection);
+                if (inner instanceof HttpURLConnection)
+                    forceRequestMethod((HttpURLConnection)inner, method, cause);
+            }
+        }
+        catch (Exception e)
+        {
+            ProtocolException failure = new ProtocolException("Unable to set request method: " + method);
+            failure.initCause(cause);
+            failure.addSuppressed(e);
+            throw failure;
+        }
+    }
+
+    private static Field findField(Class<?> clazz, String name)
+    {
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass())
+        {
+            try
+            {
+                return c.getDeclaredField(name);
+            }
+            catch (NoSuchFieldException ignore)
+            {
+                // try superclass
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String getRequestMethod()
+    {
+        return delegate.getRequestMethod();
+    }
+
+    @Override
+    public void setRequestProperty(String key, String value)
+    {
+        if ("Authorization".equalsIgnoreCase(key))
+            authorization = value;
+        delegate.setRequestProperty(key, value);
+    }
+
+    @Override
+    public void addRequestProperty(String key, String value)
+    {
+        if ("Authorization".equalsIgnoreCase(key) && authorization == null)
+            authorization = value;
+        delegate.addRequestProperty(key, value);
+    }
+
+    /**
+     * @return the {@code Authorization} request header set on this connection, or null
+     */
+    protected String getAuthorization()
+    {
+        return authorization;
+    }
+
+    @Override
+    public String getRequestProperty(String key)
+    {
+        return delegate.getRequestProperty(key);
+    }
+
+    @Override
+    public Map<String, List<String>> getRequestProperties()
+    {
+        return delegate.getRequestProperties();
+    }
+
+    @Override
+    public void setDoOutput(boolean doOutput)
+    {
+        delegate.setDoOutput(doOutput);
+    }
+
+    @Override
+    public boolean getDoOutput()
+    {
+        return delegate.getDoOutput();
+    }
+
+    @Override
+    public void setDoInput(boolean doInput)
+    {
+        delegate.setDoInput(doInput);
+    }
+
+    @Override
+    public boolean getDoInput()
+    {
+        return delegate.getDoInput();
+    }
+
+    @Override
+    public void setConnectTimeout(int timeout)
+    {
+        delegate.setConnectTimeout(timeout);
+    }
+
+    @Override
+    public int getConnectTimeout()
+    {
+        return delegate.getConnectTimeout();
+    }
+
+    @Override
+    public void setReadTimeout(int timeout)
+    {
+        delegate.setReadTimeout(timeout);
+    }
+
+    @Override
+    public int getReadTimeout()
+    {
+        return delegate.getReadTimeout();
+    }
+
+    @Override
+    public void setInstanceFollowRedirects(boolean followRedirects)
+    {
+        delegate.setInstanceFollowRedirects(followRedirects);
+    }
+
+    @Override
+    public boolean getInstanceFollowRedirects()
+    {
+        return delegate.getInstanceFollowRedirects();
+    }
+
+    @Override
+    public void setUseCaches(boolean useCaches)
+    {
+        delegate.setUseCaches(useCaches);
+    }
+
+    @Override
+    public boolean getUseCaches()
+    {
+        return delegate.getUseCaches();
+    }
+
+    @Override
+    public void setIfModifiedSince(long ifModifiedSince)
+    {
+        delegate.setIfModifiedSince(ifModifiedSince);
+    }
+
+    @Override
+    public long getIfModifiedSince()
+    {
+        return delegate.getIfModifiedSince();
+    }
+
+    @Override
+    public void setChunkedStreamingMode(int chunkLength)
+    {
+        delegate.setChunkedStreamingMode(chunkLength);
+    }
+
+    @Override
+    public void setFixedLengthStreamingMode(int contentLength)
+    {
+        delegate.setFixedLengthStreamingMode(contentLength);
+    }
+
+    @Override
+    public void setFixedLengthStreamingMode(long contentLength)
+    {
+        delegate.setFixedLengthStreamingMode(contentLength);
+    }
+
+    @Override
+    public Permission getPermission() throws IOException
+    {
+        return delegate.getPermission();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException
+    {
+        return delegate.getOutputStream();
+    }
+
+    @Override
+    public int getResponseCode() throws IOException
+    {
+        return delegate.getResponseCode();
+    }
+
+    @Override
+    public String getResponseMessage() throws IOException
+    {
+        return delegate.getResponseMessage();
+    }
+
+    @Override
+    public Map<String, List<String>> getHeaderFields()
+    {
+        return delegate.getHeaderFields();
+    }
+
+    @Override
+    public String getHeaderField(String name)
+    {
+        return delegate.getHeaderField(name);
+    }
+
+    @Override
+    public String getHeaderField(int n)
+    {
+        return delegate.getHeaderField(n);
+    }
+
+    @Override
+    public String getHeaderFieldKey(int n)
+    {
+        return delegate.getHeaderFieldKey(n);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException
+    {
+        return delegate.getInputStream();
+    }
+
+    @Override
+    public InputStream getErrorStream()
+    {
+        return delegate.getErrorStream();
+    }
+}
@@ -0,0 +1,483 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.kohsuke.github.HttpConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link HttpConnector} that schedules every GitHub API request.
+ * <ul>
+ *     <li>Requests are paced with a token bucket ({@code requestsPerSecond}, bursting up to {@code burst}).</li>
+ *     <li>The remaining quota is tracked from the {@code X-RateLimit-*} response headers,
+ *     per rate limit resource ({@code core}, {@code search}, {@code graphql}).</li>
+ *     <li>Reads (GET/HEAD, and the GraphQL queries) are refused once the remaining quota drops to the {@code reserve},
+ *     which is kept for the writes (eg: the final release draft update).</li>
+ *     <li>A secondary rate limit response ({@code Retry-After}) pauses all requests, not just the one that hit it.</li>
+ *     <li>The requests are also counted by the {@link RequestMeter} of the thread making them, if any.</li>
+ * </ul>
+ */
+public class RateLimitScheduler implements HttpConnector
+{
+    private static final Logger LOG = LoggerFactory.getLogger(RateLimitScheduler.class);
+
+    private final HttpConnector connector;
+    private final double requestsPerSecond;
+    private final double burst;
+    private final int reserve;
+    private final Map<String, Budget> budgets = new ConcurrentHashMap<>();
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private double tokens;
+    private long lastRefill;
+    private volatile long backoffUntil;
+
+    public RateLimitScheduler(HttpConnector connector, double requestsPerSecond, int burst, int reserve)
+    {
+        if (requestsPerSecond <= 0)
+            throw new IllegalArgumentException("requestsPerSecond must be positive");
+        this.connector = Objects.requireNonNull(connector);
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = Math.max(1, burst);
+        this.reserve = Math.max(0, reserve);
+        this.tokens = this.burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Test if the failure (or any of its causes) is the read budget running out.
+     *
+     * @param failure the failure to test
+     * @return true if the reads were refused to protect the reserve
+     */
+    public static boolean isBudgetExhausted(Throwable failure)
+    {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause())
+        {
+            if (cause instanceof BudgetExhaustedException)
+                return true;
+            if (cause.getCause() == cause)
+                break;
+        }
+        return false;
+    }
+
+    public int getReserve()
+    {
+        return reserve;
+    }
+
+    /**
+     * @return the number of requests that went out, reads and writes.
+     */
+    public long getRequestCount()
+    {
+        return reads.sum() + writes.sum();
+    }
+
+    public long getReadCount()
+    {
+        return reads.sum();
+    }
+
+    public long getWriteCount()
+    {
+        return writes.sum();
+    }
+
+    /**
+     * @return true while all requests are paused by a secondary rate limit ({@code Retry-After})
+     */
+    public boolean isBackingOff()
+    {
+        return backoffUntil > System.currentTimeMillis();
+    }
+
+    /**
+     * @param resource the rate limit resource ({@code core}, {@code search}, or {@code graphql})
+     * @return the last known budget for the resource, or null if no response has been seen yet
+     */
+    public Budget getBudget(String resource)
+    {
+        return budgets.get(resource);
+    }
+
+    /**
+     * @param resource the rate limit resource ({@code core}, {@code search}, or {@code graphql})
+     * @return false if the reads of the resource are refused to protect the reserve, as last seen
+     */
+    public boolean hasReadBudget(String resource)
+    {
+        Budget budget = budgets.get(resource);
+        return budget == null || budget.hasMoreThan(reserve);
+    }
+
+    @Override
+    public HttpURLConnection connect(URL url) throws IOException
+    {
+        return new ScheduledConnection(connector.connect(url));
+    }
+
+    static String toResource(URL url)
+    {
+        String path = url.getPath();
+        if (path.startsWith("/search/") || path.startsWith("/api/v3/search/"))
+            return "search";
+        if (path.endsWith("/graphql"))
+            return "graphql";
+        return "core";
+    }
+
+    private void acquire(String method, String resource) throws IOException
+    {
+        // GraphQL queries are POSTs, but only read
+        boolean read = "GET".equals(method) || "HEAD".equals(method) || ("POST".equals(method) && "graphql".equals(resource));
+        try
+        {
+            long backoff = backoffUntil - System.currentTimeMillis();
+            if (backoff > 0)
+            {
+                LOG.info("Secondary rate limit, pausing {} ms", backoff);
+                Thread.sleep(backoff);
+            }
+
+            Budget budget = budgets.get(resource);
+            if (budget != null && !budget.take(read ? reserve : 0))
+            {
+                throw new BudgetExhaustedException(String.format("Rate limit [%s] reserved for writes: remaining=%d, reserve=%d, resets at %s",
+                    resource, budget.getRemaining(), reserve, Instant.ofEpochSecond(budget.getResetEpochSeconds())));
+            }
+
+            long wait = reserveToken();
+            if (wait > 0)
+                TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting on rate limit");
+        }
+
+        if (read)
+            reads.increment();
+        else
+            writes.increment();
+        RequestMeter meter = RequestMeter.current();
+        if (meter != null)
+            meter.onRequest(read);
+    }
+
+    /**
+     * Take a token from the bucket.
+     *
+     * @return how long (in nanoseconds) the caller has to wait before its token is valid
+     */
+    private synchronized long reserveToken()
+    {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + ((now - lastRefill) * requestsPerSecond / TimeUnit.SECONDS.toNanos(1)));
+        lastRefill = now;
+        tokens -= 1;
+        if (tokens >= 0)
+            return 0;
+        return (long)(-tokens * TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+    }
+
+    private void update(String resource, int status, Map<String, List<String>> headers)
+    {
+        String limit = header(headers, "X-RateLimit-Limit");
+        String remaining = header(headers, "X-RateLimit-Remaining");
+        String reset = header(headers, "X-RateLimit-Reset");
+        if (limit != null && remaining != null && reset != null)
+        {
+            try
+            {
+                String name = header(headers, "X-RateLimit-Resource");
+                budgets.computeIfAbsent(name != null ? name : resource, Budget::new)
+                    .update(Integer.parseInt(limit), Integer.parseInt(remaining), Long.parseLong(reset));
+            }
+            catch (NumberFormatException e)
+            {
+                LOG.debug("Bad rate limit headers: limit={} remaining={} reset={}", limit, remaining, reset);
+            }
+        }
+
+        if (status == HttpURLConnection.HTTP_FORBIDDEN || status == 429)
+        {
+            String retryAfter = header(headers, "Retry-After");
+            if (retryAfter != null)
+            {
+                try
+                {
+                    long until = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+                    if (until > backoffUntil)
+                        backoffUntil = until;
+                }
+                catch (NumberFormatException e)
+                {
+                    LOG.debug("Bad Retry-After header: {}", retryAfter);
+                }
+            }
+        }
+    }
+
+    private static String header(Map<String, List<String>> headers, String name)
+    {
+        for (Map.Entry<String, List<String>> entry : headers.entrySet())
+        {
+            if (name.equalsIgnoreCase(entry.getKey()) && entry.getValue() != null && !entry.getValue().isEmpty())
+                return entry.getValue().get(0);
+        }
+        return null;
+    }
+
+    /**
+     * The last known state of a rate limit resource.
+     */
+    public static class Budget
+    {
+        private final String resource;
+        private int limit;
+        private int remaining;
+        private long resetEpochSeconds;
+
+        Budget(String resource)
+        {
+            this.resource = resource;
+        }
+
+        synchronized void update(int limit, int remaining, long resetEpochSeconds)
+        {
+            // Responses can arrive out of order, don't go back in time within a window
+            if (resetEpochSeconds == this.resetEpochSeconds && remaining > this.remaining)
+                return;
+            this.limit = limit;
+            this.remaining = remaining;
+            this.resetEpochSeconds = resetEpochSeconds;
+        }
+
+        /**
+         * Take one request from the budget, if more than {@code keep} remains
+         * (or the rate limit window has been reset since).
+         */
+        synchronized boolean take(int keep)
+        {
+            if (Instant.now().getEpochSecond() >= resetEpochSeconds)
+                return true; // new window, we don't know (yet)
+            if (remaining <= keep)
+                return false;
+            remaining--;
+            return true;
+        }
+
+        synchronized boolean hasMoreThan(int keep)
+        {
+            return Instant.now().getEpochSecond() >= resetEpochSeconds || remaining > keep;
+        }
+
+        public String getResource()
+        {
+            return resource;
+        }
+
+        public synchronized int getLimit()
+        {
+            return limit;
+        }
+
+        public synchronized int getRemaining()
+        {
+            return remaining;
+        }
+
+        public synchronized long getResetEpochSeconds()
+        {
+            return resetEpochSeconds;
+        }
+
+        @Override
+        public synchronized String toString()
+        {
+            long resetInSeconds = resetEpochSeconds - Instant.now().getEpochSecond();
+            return String.format("%s[limit=%d, remaining=%d, resetInSeconds=%d]", resource, limit, remaining, resetInSeconds);
+        }
+    }
+
+    /**
+     * Thrown (as the cause of the GitHub API failure) when a read is refused to protect the reserve.
+     */
+    public static class BudgetExhaustedException extends IOException
+    {
+        private static final long serialVersionUID = 1L;
+
+        public BudgetExhaustedException(String message)
+        {
+            super(message);
+        }
+    }
+
+    private class ScheduledConnection extends HttpURLConnectionWrapper
+    {
+        private final String resource;
+        private boolean acquired;
+        private IOException refused;
+        private boolean updated;
+
+        ScheduledConnection(HttpURLConnection delegate)
+        {
+            super(delegate);
+            this.resource = toResource(delegate.getURL());
+        }
+
+        private void before() throws IOException
+        {
+            if (refused != null)
+                throw refused;
+            if (acquired)
+                return;
+            try
+            {
+                acquire(getRequestMethod(), resource);
+                acquired = true;
+            }
+            catch (IOException e)
+            {
+                refused = e;
+                throw e;
+            }
+        }
+
+        private void after() throws IOException
+        {
+            before();
+            if (updated)
+                return;
+            updated = true;
+            int status = delegate.getResponseCode();
+            update(resource, status, delegate.getHeaderFields());
+        }
+
+        /**
+         * @return false if the request was refused, and the delegate must not be touched
+         */
+        private boolean afterQuietly()
+        {
+            try
+            {
+                after();
+            }
+            catch (IOException e)
+            {
+                LOG.debug("Unable to get response", e);
+            }
+            return refused == null;
+        }
+
+        @Override
+        public void connect() throws IOException
+        {
+            before();
+            super.connect();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException
+        {
+            before();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public int getResponseCode() throws IOException
+        {
+            after();
+            return super.getResponseCode();
+        }
+
+        @Override
+        public String getResponseMessage() throws IOException
+        {
+            after();
+            return super.getResponseMessage();
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaderFields()
+        {
+            if (!afterQuietly())
+                return Collections.emptyMap();
+            return super.getHeaderFields();
+        }
+
+        @Override
+        public String getHeaderField(String name)
+        {
+            if (!afterQuietly())
+                return null;
+            return super.getHeaderField(name);
+        }
+
+        @Override
+        public String getHeaderField(int n)
+        {
+            if (!afterQuietly())
+                return null;
+            return super.getHeaderField(n);
+        }
+
+        @Override
+        public String getHeaderFieldKey(int n)
+        {
+            if (!afterQuietly())
+                return null;
+            return super.getHeaderFieldKey(n);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException
+        {
+            after();
+            return super.getInputStream();
+        }
+
+        @Override
+        public InputStream getErrorStream()
+        {
+            if (!afterQuietly())
+                return null;
+            return super.getErrorStream();
+        }
+    }
+}
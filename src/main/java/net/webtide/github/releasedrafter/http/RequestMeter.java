@@ -0,0 +1,123 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.http;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the API requests of one piece of work (eg: the update of one branch), out of all the requests
+ * going through the {@link RateLimitScheduler}.
+ * <p>
+ * The meter is bound to the thread doing the work, the tasks it hands to other threads
+ * are {@link #wrap(Callable) wrapped} to carry the meter along.
+ * </p>
+ */
+public class RequestMeter
+{
+    private static final ThreadLocal<RequestMeter> CURRENT = new ThreadLocal<>();
+
+    private final String name;
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+
+    public RequestMeter(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * @return the meter of the current thread, or null if none
+     */
+    public static RequestMeter current()
+    {
+        return CURRENT.get();
+    }
+
+    /**
+     * @param task a task to run in another thread
+     * @param <T> the result type
+     * @return the task, counting its requests with the meter of the current thread
+     */
+    public static <T> Callable<T> wrap(Callable<T> task)
+    {
+        RequestMeter meter = CURRENT.get();
+        if (meter == null)
+            return task;
+        return () -> meter.call(task);
+    }
+
+    /**
+     * Run a task with this meter bound to the current thread.
+     *
+     * @param task the task
+     * @param <T> the result type
+     * @return the result of the task
+     */
+    public <T> T call(Callable<T> task) throws Exception
+    {
+        RequestMeter previous = CURRENT.get();
+        CURRENT.set(this);
+        try
+        {
+            return task.call();
+        }
+        finally
+        {
+            if (previous == null)
+                CURRENT.remove();
+            else
+                CURRENT.set(previous);
+        }
+    }
+
+    void onRequest(boolean read)
+    {
+        if (read)
+            reads.increment();
+        else
+            writes.increment();
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public long getReadCount()
+    {
+        return reads.sum();
+    }
+
+    public long getWriteCount()
+    {
+        return writes.sum();
+    }
+
+    public long getRequestCount()
+    {
+        return reads.sum() + writes.sum();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s[reads=%d, writes=%d]", name, getReadCount(), getWriteCount());
+    }
+}
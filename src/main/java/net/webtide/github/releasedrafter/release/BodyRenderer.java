@@ -0,0 +1,174 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.release;
+
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.webtide.github.releasedrafter.ChangeBuckets;
+import net.webtide.github.releasedrafter.ChangeEntry;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Writes the changes of a release draft with the (compiled) templates of its config.
+ * <pre>
+ * header-template
+ * category-template      (for each category with changes)
+ * change-template        (for each change of the category)
+ * uncategorized-template (if there are changes without a category)
+ * change-template        (for each change without a category)
+ * footer-template
+ * </pre>
+ * <p>
+ * The renderers are cached by {@link ReleaseDraft#getConfigHash() config hash},
+ * so the templates of a config are only compiled once per process.
+ * </p>
+ */
+public class BodyRenderer
+{
+    public static final String DEFAULT_CATEGORY_TEMPLATE = "## $TITLE";
+    public static final String DEFAULT_UNCATEGORIZED_TEMPLATE = "## $COUNT Changes Found";
+    public static final String DEFAULT_CHANGE_TEMPLATE = " * $TITLE @$AUTHOR (#$NUMBER)";
+    private static final BodyRenderer DEFAULT = new BodyRenderer(null);
+    private static final Map<String, BodyRenderer> CACHE = new ConcurrentHashMap<>();
+
+    private final BodyTemplate header;
+    private final BodyTemplate category;
+    private final BodyTemplate uncategorized;
+    private final BodyTemplate change;
+    private final BodyTemplate footer;
+
+    private BodyRenderer(ReleaseDraft releaseDraft)
+    {
+        this.header = BodyTemplate.compile((releaseDraft != null) ? releaseDraft.getHeaderTemplate() : null);
+        this.category = BodyTemplate.compile(StringUtils.defaultIfEmpty((releaseDraft != null) ? releaseDraft.getCategoryTemplate() : null, DEFAULT_CATEGORY_TEMPLATE));
+        this.uncategorized = BodyTemplate.compile(StringUtils.defaultIfEmpty((releaseDraft != null) ? releaseDraft.getUncategorizedTemplate() : null, DEFAULT_UNCATEGORIZED_TEMPLATE));
+        this.change = BodyTemplate.compile(StringUtils.defaultIfEmpty((releaseDraft != null) ? releaseDraft.getChangeTemplate() : null, DEFAULT_CHANGE_TEMPLATE));
+        this.footer = BodyTemplate.compile((releaseDraft != null) ? releaseDraft.getFooterTemplate() : null);
+    }
+
+    /**
+     * @param releaseDraft the release draft config (can be null, for the default layout)
+     * @return the renderer of the config
+     */
+    public static BodyRenderer of(ReleaseDraft releaseDraft)
+    {
+        if (releaseDraft == null)
+            return DEFAULT;
+        return CACHE.computeIfAbsent(releaseDraft.getConfigHash(), (hash) -> new BodyRenderer(releaseDraft));
+    }
+
+    public BodyTemplate getCategoryTemplate()
+    {
+        return category;
+    }
+
+    public BodyTemplate getUncategorizedTemplate()
+    {
+        return uncategorized;
+    }
+
+    public BodyTemplate getChangeTemplate()
+    {
+        return change;
+    }
+
+    /**
+     * A hash of what a draft body says, to tell if writing it again would change anything.
+     * <p>
+     * Line separators are normalized (GitHub returns the body with {@code \r\n}),
+     * the markers are hashed in key order.
+     * </p>
+     *
+     * @param body the rendered body
+     * @param markers the markers written after the body, without the volatile ones
+     * @return the hash, 16 hex digits
+     */
+    public static String hash(CharSequence body, Map<String, String> markers)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(body.toString().replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8));
+            for (Map.Entry<String, String> marker : new TreeMap<>(markers).entrySet())
+            {
+                digest.update((marker.getKey() + ": " + marker.getValue() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            byte[] bytes = digest.digest();
+            StringBuilder hash = new StringBuilder();
+            for (int i = 0; i < 8; i++)
+            {
+                hash.append(String.format("%02x", bytes[i]));
+            }
+            return hash.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return true if the entries can be read back from a body written with the templates,
+     * which needs the {@code $NUMBER} and {@code $TITLE} of the change template
+     */
+    public boolean canReadBack()
+    {
+        return change.contains(BodyTemplate.Placeholder.NUMBER) && change.contains(BodyTemplate.Placeholder.TITLE);
+    }
+
+    public void render(PrintWriter out, ChangeBuckets changes)
+    {
+        header.render(out, "", changes.size());
+
+        List<Category> categories = changes.getCategories();
+        for (int i = 0; i < categories.size(); i++)
+        {
+            List<ChangeEntry> subset = changes.getChanges(i);
+            if (subset.isEmpty())
+                continue; // skip this category
+            category.render(out, categories.get(i).getTitle(), subset.size());
+            renderChanges(out, subset);
+        }
+
+        // Any changeset entries with no matching categories (even ones with no labels)
+        List<ChangeEntry> unwritten = changes.getUncategorized();
+        if (!unwritten.isEmpty())
+        {
+            uncategorized.render(out, "", unwritten.size());
+            renderChanges(out, unwritten);
+        }
+
+        footer.render(out, "", changes.size());
+    }
+
+    private void renderChanges(PrintWriter out, List<ChangeEntry> subset)
+    {
+        for (ChangeEntry entry : subset)
+        {
+            change.render(out, entry);
+        }
+    }
+}
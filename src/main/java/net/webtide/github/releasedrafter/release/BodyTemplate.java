@@ -0,0 +1,290 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.release;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.webtide.github.releasedrafter.ChangeEntry;
+
+/**
+ * A line of the release body, with {@code $PLACEHOLDER}s, parsed once.
+ * <p>
+ * Rendering writes the literal parts and the values straight to the output,
+ * there is no format string to parse (or intermediate string to build) per change.
+ * Unknown placeholders (eg: {@code $RESOLVED_VERSION}) are kept as they are.
+ * A rendered line can be {@link #match(String) read back}, which is how the entries of a draft
+ * are recovered from its body.
+ * </p>
+ * <ul>
+ *     <li>{@code $TITLE} the title of the pull request, or of the category</li>
+ *     <li>{@code $AUTHOR} the login of the author of the pull request</li>
+ *     <li>{@code $NUMBER} the number of the pull request</li>
+ *     <li>{@code $LABELS} the labels of the pull request, comma separated</li>
+ *     <li>{@code $COUNT} the number of changes (of the category, or of the whole draft)</li>
+ * </ul>
+ */
+public class BodyTemplate
+{
+    public enum Placeholder
+    {
+        TITLE, AUTHOR, NUMBER, LABELS, COUNT
+    }
+
+    private static final BodyTemplate EMPTY = new BodyTemplate("", new Object[0]);
+
+    private final String source;
+    // String literals and Placeholders
+    private final Object[] segments;
+    private final Pattern pattern;
+
+    private BodyTemplate(String source, Object[] segments)
+    {
+        this.source = source;
+        this.segments = segments;
+        this.pattern = toPattern(segments);
+    }
+
+    private static Pattern toPattern(Object[] segments)
+    {
+        StringBuilder regex = new StringBuilder("^");
+        for (Object segment : segments)
+        {
+            if (segment instanceof String)
+            {
+                regex.append(Pattern.quote((String)segment));
+                continue;
+            }
+            switch ((Placeholder)segment)
+            {
+                case AUTHOR:
+                    regex.append("(\\S+)");
+                    break;
+                case NUMBER:
+                    regex.append("(\\d+)");
+                    break;
+                case COUNT:
+                    regex.append("(\\d[\\d,.\\s]*)");
+                    break;
+                default:
+                    regex.append("(.*)");
+                    break;
+            }
+        }
+        return Pattern.compile(regex.append('$').toString());
+    }
+
+    /**
+     * @param template the template (a trailing new line is dropped)
+     * @return the compiled template
+     */
+    public static BodyTemplate compile(String template)
+    {
+        if (template == null || template.isEmpty())
+            return EMPTY;
+        String source = template.endsWith("\n") ? template.substring(0, template.length() - 1) : template;
+
+        List<Object> segments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int length = source.length();
+        int i = 0;
+        while (i < length)
+        {
+            char c = source.charAt(i);
+            if (c == '$')
+            {
+                int end = i + 1;
+                while (end < length && isNameChar(source.charAt(end)))
+                {
+                    end++;
+                }
+                Placeholder placeholder = toPlaceholder(source.substring(i + 1, end));
+                if (placeholder != null)
+                {
+                    if (literal.length() > 0)
+                    {
+                        segments.add(literal.toString());
+                        literal.setLength(0);
+                    }
+                    segments.add(placeholder);
+                    i = end;
+                    continue;
+                }
+            }
+            literal.append(c);
+            i++;
+        }
+        if (literal.length() > 0)
+            segments.add(literal.toString());
+        return new BodyTemplate(source, segments.toArray());
+    }
+
+    private static boolean isNameChar(char c)
+    {
+        return (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static Placeholder toPlaceholder(String name)
+    {
+        for (Placeholder placeholder : Placeholder.values())
+        {
+            if (placeholder.name().equals(name))
+                return placeholder;
+        }
+        return null;
+    }
+
+    public boolean isEmpty()
+    {
+        return segments.length == 0;
+    }
+
+    /**
+     * @return true if the template has the placeholder
+     */
+    public boolean contains(Placeholder placeholder)
+    {
+        for (Object segment : segments)
+        {
+            if (segment == placeholder)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Read back a line written by this template.
+     *
+     * @param line the line
+     * @return the values of the placeholders (the last one, if repeated), or null if the line doesn't match
+     */
+    public Map<Placeholder, String> match(String line)
+    {
+        if (isEmpty())
+            return null;
+        Matcher matcher = pattern.matcher(line);
+        if (!matcher.matches())
+            return null;
+        Map<Placeholder, String> values = new EnumMap<>(Placeholder.class);
+        int group = 0;
+        for (Object segment : segments)
+        {
+            if (segment instanceof Placeholder)
+                values.put((Placeholder)segment, matcher.group(++group));
+        }
+        return values;
+    }
+
+    public String getSource()
+    {
+        return source;
+    }
+
+    /**
+     * Write the template for a change, then a new line.
+     */
+    public void render(PrintWriter out, ChangeEntry change)
+    {
+        for (Object segment : segments)
+        {
+            if (segment instanceof String)
+            {
+                out.write((String)segment);
+                continue;
+            }
+            switch ((Placeholder)segment)
+            {
+                case TITLE:
+                    out.write(change.getTitle());
+                    break;
+                case AUTHOR:
+                    out.write(String.valueOf(change.getAuthor()));
+                    break;
+                case NUMBER:
+                    out.print(change.getPullRequestId());
+                    break;
+                case LABELS:
+                    writeLabels(out, change.getLabels());
+                    break;
+                case COUNT:
+                    out.print(1);
+                    break;
+                default:
+                    throw new IllegalStateException(segment.toString());
+            }
+        }
+        out.println();
+    }
+
+    /**
+     * Write the template for a heading (eg: a category), then a new line.
+     * Nothing is written if the template is empty.
+     *
+     * @param title the value of {@code $TITLE}
+     * @param count the value of {@code $COUNT}
+     */
+    public void render(PrintWriter out, String title, int count)
+    {
+        if (isEmpty())
+            return;
+        for (Object segment : segments)
+        {
+            if (segment instanceof String)
+            {
+                out.write((String)segment);
+                continue;
+            }
+            switch ((Placeholder)segment)
+            {
+                case TITLE:
+                    out.write(String.valueOf(title));
+                    break;
+                case COUNT:
+                    out.printf("%,d", count);
+                    break;
+                default:
+                    // No change here to take it from
+                    out.write("$" + segment);
+                    break;
+            }
+        }
+        out.println();
+    }
+
+    private static void writeLabels(PrintWriter out, List<String> labels)
+    {
+        for (int i = 0; i < labels.size(); i++)
+        {
+            if (i > 0)
+                out.write(", ");
+            out.write(labels.get(i));
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return source;
+    }
+}
@@ -0,0 +1,154 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.release;
+
+import java.io.Writer;
+
+/**
+ * Collects the release body up to a size limit, a line at a time.
+ * <p>
+ * GitHub rejects a release body over {@value #MAX_BODY_LENGTH} characters,
+ * failing the whole run at its very last request. This writer keeps whole lines
+ * until the next one would go over the limit, then drops (and counts) the rest,
+ * so the memory it holds is bounded by the limit, not by the number of changes.
+ * </p>
+ * <p>
+ * The limit is counted in UTF-16 chars, which is never less than the characters GitHub counts
+ * (a character outside the BMP is two chars), the UTF-8 size is tracked for the logs.
+ * </p>
+ */
+public class BoundedBodyWriter extends Writer
+{
+    public static final int MAX_BODY_LENGTH = 125_000;
+
+    private final int limit;
+    private final StringBuilder body = new StringBuilder();
+    private final StringBuilder line = new StringBuilder();
+    private long encodedLength;
+    private int droppedLines;
+
+    /**
+     * @param limit the maximum length of the collected body
+     */
+    public BoundedBodyWriter(int limit)
+    {
+        this.limit = limit;
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length)
+    {
+        for (int i = offset; i < offset + length; i++)
+        {
+            char c = chars[i];
+            line.append(c);
+            if (c == '\n')
+                commitLine();
+        }
+    }
+
+    private void commitLine()
+    {
+        if (droppedLines == 0 && body.length() + line.length() <= limit)
+        {
+            body.append(line);
+            encodedLength += utf8Length(line);
+        }
+        else
+        {
+            // Once a line is dropped, the following ones go too (no holes in the middle of a category)
+            droppedLines++;
+        }
+        line.setLength(0);
+    }
+
+    private static int utf8Length(CharSequence chars)
+    {
+        int length = 0;
+        for (int i = 0; i < chars.length(); i++)
+        {
+            char c = chars.charAt(i);
+            if (c < 0x80)
+                length++;
+            else if (c < 0x800)
+                length += 2;
+            else if (Character.isHighSurrogate(c))
+            {
+                length += 4;
+                i++;
+            }
+            else
+                length += 3;
+        }
+        return length;
+    }
+
+    @Override
+    public void flush()
+    {
+    }
+
+    /**
+     * Commits a last line without a line end.
+     */
+    @Override
+    public void close()
+    {
+        if (line.length() > 0)
+            commitLine();
+    }
+
+    /**
+     * @return true if lines were dropped
+     */
+    public boolean isTruncated()
+    {
+        return droppedLines > 0;
+    }
+
+    public int getDroppedLines()
+    {
+        return droppedLines;
+    }
+
+    /**
+     * @return the length (in chars) of the collected body
+     */
+    public int getLength()
+    {
+        return body.length();
+    }
+
+    /**
+     * @return the UTF-8 encoded size of the collected body
+     */
+    public long getEncodedLength()
+    {
+        return encodedLength;
+    }
+
+    /**
+     * @return the collected body
+     */
+    @Override
+    public String toString()
+    {
+        return body.toString();
+    }
+}
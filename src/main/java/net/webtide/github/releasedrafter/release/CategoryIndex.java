@@ -0,0 +1,159 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.release;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link ReleaseDraft} compiled into bit masks, so placing a change
+ * costs a bitwise AND per category instead of comparing label names.
+ * <p>
+ * The bits are assigned to the labels of the config, by this index only (per run, not shared by the process),
+ * the labels of a change that are in no category and not excluded don't need one.
+ * A change goes in the first category (in the order of the config) with one of its labels,
+ * unless one of its labels is an {@code exclude-labels}, which wins over any category.
+ * Immutable, later changes to the {@link ReleaseDraft} are not seen.
+ * </p>
+ */
+public class CategoryIndex
+{
+    /**
+     * The ordinal of the changes without a category.
+     */
+    public static final int UNCATEGORIZED = -1;
+    /**
+     * The ordinal of the changes left out of the draft.
+     */
+    public static final int EXCLUDED = -2;
+    private static final CategoryIndex EMPTY = new CategoryIndex(Collections.emptyList(), Collections.emptyMap(), new long[0][], new long[0]);
+
+    private final List<Category> categories;
+    private final Map<String, Integer> bits;
+    private final long[][] masks;
+    private final long[] excluded;
+
+    private CategoryIndex(List<Category> categories, Map<String, Integer> bits, long[][] masks, long[] excluded)
+    {
+        this.categories = categories;
+        this.bits = bits;
+        this.masks = masks;
+        this.excluded = excluded;
+    }
+
+    /**
+     * @param releaseDraft the release draft config (can be null, everything is then without a category)
+     */
+    public static CategoryIndex compile(ReleaseDraft releaseDraft)
+    {
+        if (releaseDraft == null)
+            return EMPTY;
+
+        List<Category> categories = new ArrayList<>();
+        if (releaseDraft.getCategories() != null)
+            categories.addAll(releaseDraft.getCategories());
+        List<String> excludeLabels = (releaseDraft.getExcludeLabels() == null) ? Collections.emptyList() : releaseDraft.getExcludeLabels();
+
+        // The dictionary of the labels of the config
+        Map<String, Integer> bits = new HashMap<>();
+        for (Category category : categories)
+        {
+            addBits(bits, category.getLabels());
+        }
+        addBits(bits, excludeLabels);
+
+        long[][] masks = new long[categories.size()][];
+        for (int ordinal = 0; ordinal < masks.length; ordinal++)
+        {
+            masks[ordinal] = encode(bits, categories.get(ordinal).getLabels());
+        }
+        return new CategoryIndex(Collections.unmodifiableList(categories), bits, masks, encode(bits, excludeLabels));
+    }
+
+    private static void addBits(Map<String, Integer> bits, Collection<String> labels)
+    {
+        if (labels == null)
+            return;
+        for (String label : labels)
+        {
+            bits.putIfAbsent(label, bits.size());
+        }
+    }
+
+    private static long[] encode(Map<String, Integer> bits, Collection<String> labels)
+    {
+        long[] words = new long[(bits.size() + 63) >> 6];
+        if (labels == null)
+            return words;
+        for (String label : labels)
+        {
+            Integer bit = bits.get(label);
+            if (bit != null)
+                words[bit >> 6] |= 1L << bit;
+        }
+        return words;
+    }
+
+    private static boolean intersects(long[] words, long[] mask)
+    {
+        for (int i = 0; i < words.length; i++)
+        {
+            if ((words[i] & mask[i]) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    public List<Category> getCategories()
+    {
+        return categories;
+    }
+
+    public int size()
+    {
+        return categories.size();
+    }
+
+    /**
+     * @param labels the labels of a change
+     * @return the ordinal of the category of the change, {@link #UNCATEGORIZED}, or {@link #EXCLUDED}
+     */
+    public int ordinalOf(Collection<String> labels)
+    {
+        long[] words = encode(bits, labels);
+        if (intersects(words, excluded))
+            return EXCLUDED;
+        // The first category listing a label gets it
+        for (int ordinal = 0; ordinal < masks.length; ordinal++)
+        {
+            if (intersects(words, masks[ordinal]))
+                return ordinal;
+        }
+        return UNCATEGORIZED;
+    }
+
+    public boolean isExcluded(Collection<String> labels)
+    {
+        return intersects(encode(bits, labels), excluded);
+    }
+}
@@ -0,0 +1,176 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.release;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import net.webtide.github.releasedrafter.ChangeBuckets;
+import net.webtide.github.releasedrafter.ChangeEntry;
+import org.kohsuke.github.GHAsset;
+import org.kohsuke.github.GHRelease;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The full changelog of a draft whose body had to be truncated, attached to the draft as a release asset.
+ * <p>
+ * The changelog is streamed to a temporary file, then uploaded from it,
+ * so it is never held in memory as a whole.
+ * </p>
+ */
+public class ChangelogAsset
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ChangelogAsset.class);
+
+    public enum Format
+    {
+        MARKDOWN("md", "text/markdown"),
+        JSON("json", "application/json");
+
+        private final String extension;
+        private final String contentType;
+
+        Format(String extension, String contentType)
+        {
+            this.extension = extension;
+            this.contentType = contentType;
+        }
+
+        /**
+         * @param name {@code markdown} or {@code json} (case insensitive, null for markdown)
+         */
+        public static Format of(String name)
+        {
+            if (name == null || name.isBlank())
+                return MARKDOWN;
+            return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+        }
+    }
+
+    private final Format format;
+
+    public ChangelogAsset(Format format)
+    {
+        this.format = format;
+    }
+
+    /**
+     * @param branch the branch of the draft
+     * @return the name of the asset (eg: {@code CHANGELOG-jetty-10.0.x.md})
+     */
+    public String getName(String branch)
+    {
+        return "CHANGELOG-" + branch.replaceAll("[^A-Za-z0-9._-]", "_") + "." + format.extension;
+    }
+
+    /**
+     * Write the changes to a file.
+     */
+    public void write(Path file, BodyRenderer renderer, ChangeBuckets changes) throws IOException
+    {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8))
+        {
+            if (format == Format.JSON)
+            {
+                writeJson(writer, changes);
+            }
+            else
+            {
+                PrintWriter out = new PrintWriter(writer);
+                renderer.render(out, changes);
+                out.flush();
+            }
+        }
+    }
+
+    private static void writeJson(BufferedWriter writer, ChangeBuckets changes) throws IOException
+    {
+        try (JsonGenerator json = new JsonFactory().createGenerator(writer))
+        {
+            json.useDefaultPrettyPrinter();
+            json.writeStartArray();
+            List<Category> categories = changes.getCategories();
+            for (int i = 0; i < categories.size(); i++)
+            {
+                writeJson(json, categories.get(i).getTitle(), changes.getChanges(i));
+            }
+            writeJson(json, null, changes.getUncategorized());
+            json.writeEndArray();
+        }
+    }
+
+    private static void writeJson(JsonGenerator json, String category, List<ChangeEntry> changes) throws IOException
+    {
+        for (ChangeEntry change : changes)
+        {
+            json.writeStartObject();
+            json.writeNumberField("number", change.getPullRequestId());
+            json.writeStringField("title", change.getTitle());
+            json.writeStringField("author", change.getAuthor());
+            json.writeStringField("category", category);
+            json.writeArrayFieldStart("labels");
+            for (String label : change.getLabels())
+            {
+                json.writeString(label);
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+    }
+
+    /**
+     * Write the changes to the asset of the draft, replacing the previous one.
+     *
+     * @return the download URL of the asset
+     */
+    public String upload(GHRelease draft, String branch, BodyRenderer renderer, ChangeBuckets changes) throws IOException
+    {
+        String name = getName(branch);
+        Path file = Files.createTempFile("changelog-", "." + format.extension);
+        try
+        {
+            write(file, renderer, changes);
+            for (GHAsset asset : draft.getAssets())
+            {
+                if (name.equals(asset.getName()))
+                    asset.delete();
+            }
+            try (InputStream input = Files.newInputStream(file))
+            {
+                GHAsset asset = draft.uploadAsset(name, input, format.contentType);
+                LOG.info("Uploaded the full changelog ({} bytes) to {}", Files.size(file), asset.getBrowserDownloadUrl());
+                return asset.getBrowserDownloadUrl();
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.release;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import net.webtide.github.releasedrafter.NameUtil;
+import net.webtide.github.releasedrafter.http.RateLimitScheduler;
+import org.apache.commons.lang3.StringUtils;
+import org.kohsuke.github.GHRelease;
+import org.kohsuke.github.GHRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cleans up the release drafts that are of no use anymore, so the release list
+ * (scanned on every push) stays proportional to the live branches.
+ * <ul>
+ *     <li>Orphaned: drafts targeting a {@code refs/heads/} branch that no longer exists (eg: deleted after its last release).</li>
+ *     <li>Duplicate: more than one draft for the same target (eg: two pushes racing to create it).
+ *     The active one (see {@link ReleaseIndex#getActiveDraft(String)}) is kept, the others are deleted,
+ *     and if the kept one is still the placeholder its body is taken from the most recent duplicate that isn't.</li>
+ * </ul>
+ * <p>
+ * A dry-run only reports what would be done. Otherwise at most {@code maxDeletes} drafts are deleted,
+ * one request after the other, paced by the {@link RateLimitScheduler} like every other write.
+ * Drafts targeting a tag or a commit, and published releases, are never touched.
+ * A draft targeting a bare name (not a {@code refs/heads/} ref) is only taken as a branch draft while that branch exists,
+ * as the name could just as well be a tag.
+ * </p>
+ */
+public class DraftJanitor
+{
+    public static final int DEFAULT_MAX_DELETES = 50;
+    private static final Logger LOG = LoggerFactory.getLogger(DraftJanitor.class);
+    private static final String PLACEHOLDER_PREFIX = "# New Draft for ";
+
+    private final GHRepository repo;
+    private final GHRepository draftRepo;
+    private final boolean dryRun;
+    private int maxDeletes = DEFAULT_MAX_DELETES;
+
+    /**
+     * @param repo the repository of the branches
+     * @param draftRepo the repository the drafts are kept in (can be the same)
+     * @param dryRun true to only report what would be cleaned up
+     */
+    public DraftJanitor(GHRepository repo, GHRepository draftRepo, boolean dryRun)
+    {
+        this.repo = Objects.requireNonNull(repo);
+        this.draftRepo = Objects.requireNonNull(draftRepo);
+        this.dryRun = dryRun;
+    }
+
+    public void setMaxDeletes(int maxDeletes)
+    {
+        this.maxDeletes = Math.max(0, maxDeletes);
+    }
+
+    public Report run() throws IOException
+    {
+        return run(ReleaseIndex.build(draftRepo), repo.getBranches().keySet());
+    }
+
+    /**
+     * @param index the releases of the draft repository
+     * @param branches the names of the live branches
+     */
+    public Report run(ReleaseIndex index, Set<String> branches) throws IOException
+    {
+        Report report = new Report(dryRun);
+
+        // Drafts by target, latest first (the index order)
+        Map<String, List<GHRelease>> drafts = new LinkedHashMap<>();
+        for (GHRelease release : index.getReleases())
+        {
+            if (release.isDraft() && isBranchTarget(release.getTargetCommitish(), branches))
+                drafts.computeIfAbsent(release.getTargetCommitish(), (target) -> new ArrayList<>()).add(release);
+        }
+
+        for (Map.Entry<String, List<GHRelease>> entry : drafts.entrySet())
+        {
+            String target = entry.getKey();
+            List<GHRelease> targetDrafts = entry.getValue();
+            String branch = NameUtil.toBranchName(target);
+            if (!branches.contains(branch))
+            {
+                for (GHRelease draft : targetDrafts)
+                {
+                    report.add(new Action(Kind.ORPHANED, draft, String.format("branch %s does not exist", branch)));
+                }
+                continue;
+            }
+
+            GHRelease active = index.getActiveDraft(target);
+            for (GHRelease draft : targetDrafts)
+            {
+                if (draft.getId() != active.getId())
+                    report.add(new Action(Kind.DUPLICATE, draft, String.format("draft %d is the active one of %s", active.getId(), target)));
+            }
+            if (targetDrafts.size() > 1 && isPlaceholder(active.getBody()))
+            {
+                GHRelease content = targetDrafts.stream()
+                    .filter((draft) -> !isPlaceholder(draft.getBody()))
+                    .findFirst()
+                    .orElse(null);
+                if (content != null)
+                    report.add(new Action(Kind.MERGED, active, String.format("body taken from draft %d", content.getId()), content));
+            }
+        }
+
+        if (!dryRun)
+            apply(report);
+        report.log();
+        return report;
+    }
+
+    private void apply(Report report)
+    {
+        // Merge the bodies first, before their source is deleted
+        List<Action> actions = new ArrayList<>(report.getActions());
+        actions.sort((a1, a2) -> Boolean.compare(a1.getKind() != Kind.MERGED, a2.getKind() != Kind.MERGED));
+        Set<Long> keep = new HashSet<>();
+        int deletes = 0;
+        for (Action action : actions)
+        {
+            if (action.getKind() != Kind.MERGED && deletes >= maxDeletes)
+            {
+                LOG.info("Reached the {} deletes of this batch, the rest is left for the next run", maxDeletes);
+                break;
+            }
+            if (keep.contains(action.getRelease().getId()))
+                continue;
+            try
+            {
+                if (action.getKind() == Kind.MERGED)
+                {
+                    // Don't lose the content if it can't be moved
+                    keep.add(action.source.getId());
+                    action.getRelease().update().body(action.source.getBody()).update();
+                    keep.remove(action.source.getId());
+                }
+                else
+                {
+                    deletes++;
+                    action.getRelease().delete();
+                }
+                action.done = true;
+            }
+            catch (IOException e)
+            {
+                LOG.warn("Unable to clean up draft {} ({}): {}", action.getRelease().getId(), action.getRelease().getTagName(), e.getMessage());
+                if (RateLimitScheduler.isBudgetExhausted(e))
+                    break;
+            }
+        }
+    }
+
+    /**
+     * A bare name can be a tag as well as a branch, it is only known to be a branch while the branch exists.
+     */
+    private static boolean isBranchTarget(String target, Set<String> branches)
+    {
+        if (StringUtils.isBlank(target))
+            return false;
+        if (target.startsWith("refs/heads/"))
+            return true;
+        return branches.contains(target);
+    }
+
+    private static boolean isPlaceholder(String body)
+    {
+        return StringUtils.isBlank(body) || body.startsWith(PLACEHOLDER_PREFIX);
+    }
+
+    public enum Kind
+    {
+        ORPHANED, DUPLICATE, MERGED
+    }
+
+    public static class Action
+    {
+        private final Kind kind;
+        private final GHRelease release;
+        private final String reason;
+        private final GHRelease source;
+        private boolean done;
+
+        Action(Kind kind, GHRelease release, String reason)
+        {
+            this(kind, release, reason, null);
+        }
+
+        Action(Kind kind, GHRelease release, String reason, GHRelease source)
+        {
+            this.kind = kind;
+            this.release = release;
+            this.reason = reason;
+            this.source = source;
+        }
+
+        public Kind getKind()
+        {
+            return kind;
+        }
+
+        public GHRelease getRelease()
+        {
+            return release;
+        }
+
+        public String getReason()
+        {
+            return reason;
+        }
+
+        /**
+         * @return true if the draft was deleted (or its body merged)
+         */
+        public boolean isDone()
+        {
+            return done;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s draft %d [%s] on %s: %s%s", kind, release.getId(), release.getTagName(), release.getTargetCommitish(), reason, done ? " (done)" : "");
+        }
+    }
+
+    public static class Report
+    {
+        private final boolean dryRun;
+        private final List<Action> actions = new ArrayList<>();
+
+        Report(boolean dryRun)
+        {
+            this.dryRun = dryRun;
+        }
+
+        void add(Action action)
+        {
+            actions.add(action);
+        }
+
+        public boolean isDryRun()
+        {
+            return dryRun;
+        }
+
+        public List<Action> getActions()
+        {
+            return Collections.unmodifiableList(actions);
+        }
+
+        /**
+         * @return the number of drafts deleted, or to be deleted on a dry-run
+         */
+        public long getDeleteCount()
+        {
+            return actions.stream()
+                .filter((action) -> action.getKind() != Kind.MERGED)
+                .filter((action) -> dryRun || action.isDone())
+                .count();
+        }
+
+        void log()
+        {
+            for (Action action : actions)
+            {
+                LOG.info("{}{}", dryRun ? "[dry-run] " : "", action);
+            }
+            LOG.info("Draft janitor{}: {} drafts {}", dryRun ? " (dry-run)" : "", getDeleteCount(), dryRun ? "to delete" : "deleted");
+        }
+    }
+}
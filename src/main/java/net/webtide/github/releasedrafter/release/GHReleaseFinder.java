@@ -20,68 +20,97 @@ package net.webtide.github.releasedrafter.release;
 
 import java.io.IOException;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 import net.webtide.github.releasedrafter.NameUtil;
-import org.apache.commons.lang3.StringUtils;
+import net.webtide.github.releasedrafter.PageSizeAdvisor;
+import net.webtide.github.releasedrafter.PrefetchingIterable;
 import org.kohsuke.github.GHRelease;
 import org.kohsuke.github.GHReleaseBuilder;
 import org.kohsuke.github.GHRepository;
 
 public class GHReleaseFinder
 {
+    private static final PageSizeAdvisor RELEASE_PAGES = new PageSizeAdvisor("releases", 30, 10);
+
     protected GHRepository ghRepository;
+    private ReleaseIndex index;
 
     public GHReleaseFinder(GHRepository ghRepository)
     {
         this.ghRepository = Objects.requireNonNull(ghRepository);
     }
 
-    public GHRelease findByName(String name) throws IOException
+    /**
+     * @param ghRepository the repository of the releases
+     * @param index the releases of the repository, already indexed
+     */
+    public GHReleaseFinder(GHRepository ghRepository, ReleaseIndex index)
     {
-        Optional<GHRelease> ghRelease = streamFrom(ghRepository)
-            .filter(release -> StringUtils.equalsIgnoreCase(name, release.getName()))
-            .findFirst();
+        this(ghRepository);
+        this.index = index;
+    }
 
-        return ghRelease.get();
+    /**
+     * @return the releases of the repository, indexed on first use
+     */
+    public ReleaseIndex getIndex() throws IOException
+    {
+        if (index == null)
+            index = ReleaseIndex.build(ghRepository);
+        return index;
     }
 
-    public GHRelease findByTagName(String tagName) throws IOException
+    /**
+     * @return the release with the name (case insensitive), or null if there is none
+     */
+    public GHRelease findByName(String name) throws IOException
     {
-        Optional<GHRelease> ghRelease = streamFrom(ghRepository)
-            .filter(release -> StringUtils.equalsIgnoreCase(tagName, release.getTagName()))
-            .findFirst();
+        return getIndex().getByName(name);
+    }
 
-        return ghRelease.get();
+    /**
+     * Find a release by its tag, with the by-tag endpoint (a single request) unless the releases are already indexed.
+     *
+     * @return the release with the tag name, or null if there is none
+     */
+    public GHRelease findByTagName(String tagName) throws IOException
+    {
+        if (index != null)
+            return index.getByTagName(tagName);
+        return ghRepository.getReleaseByTagName(tagName);
     }
 
+    /**
+     * @return the releases, newest first, with the next page prefetched (close the stream if not consumed to the end)
+     */
     public static Stream<GHRelease> streamFrom(GHRepository ghRepository) throws IOException
     {
-        return StreamSupport.stream(ghRepository.listReleases().spliterator(), false);
+        return PrefetchingIterable.stream(ghRepository.listReleases(), RELEASE_PAGES);
     }
 
     public static GHRelease findLastReleaseOn(GHRepository repo, String targetCommitish) throws IOException
     {
-        Optional<GHRelease> optDraft = GHReleaseFinder.streamFrom(repo)
-            .filter((r) -> targetCommitish.equals(r.getTargetCommitish()))
-            .filter((r) -> !r.isDraft())
-            .findFirst();
-
-        return optDraft.orElse(null);
+        return ReleaseIndex.build(repo).getLastRelease(targetCommitish);
     }
 
     public static GHRelease getActiveDraft(GHRepository repo, String targetCommitish) throws IOException
     {
-        Optional<GHRelease> optDraft = GHReleaseFinder.streamFrom(repo)
-            .filter((r) -> targetCommitish.equals(r.getTargetCommitish()))
-            .filter(GHRelease::isDraft)
-            .findFirst();
+        return getActiveDraft(repo, ReleaseIndex.build(repo), targetCommitish);
+    }
 
-        if (optDraft.isPresent())
+    /**
+     * @param repo the repository of the releases
+     * @param index the releases of the repository
+     * @param targetCommitish the target commitish (eg: {@code refs/heads/jetty-10.0.x})
+     * @return the active draft of the commitish, created if there is none
+     */
+    public static GHRelease getActiveDraft(GHRepository repo, ReleaseIndex index, String targetCommitish) throws IOException
+    {
+        GHRelease draft = index.getActiveDraft(targetCommitish);
+        if (draft != null)
         {
-            return optDraft.get();
+            return draft;
         }
 
         // Draft doesn't exist, create it.
@@ -25,15 +25,28 @@ import org.yaml.snakeyaml.introspector.PropertyUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
 
 public class ReleaseDraft
 {
+    // Building the constructor is most of the cost of a load, a Yaml is reusable (but not thread safe)
+    private static final ThreadLocal<Yaml> YAML = ThreadLocal.withInitial(ReleaseDraft::newYaml);
+
     private List<Category> categories;
 
     //@JsonAlias("exclude-labels")
     private List<String> excludeLabels;
 
+    // The layout of the body, see BodyTemplate (null for the default)
+    private String headerTemplate;
+    private String categoryTemplate;
+    private String uncategorizedTemplate;
+    private String changeTemplate;
+    private String footerTemplate;
+
     public ReleaseDraft()
     {
     }
@@ -58,6 +71,97 @@ public class ReleaseDraft
         this.excludeLabels = excludeLabels;
     }
 
+    public String getHeaderTemplate()
+    {
+        return headerTemplate;
+    }
+
+    public void setHeaderTemplate(String headerTemplate)
+    {
+        this.headerTemplate = headerTemplate;
+    }
+
+    public String getCategoryTemplate()
+    {
+        return categoryTemplate;
+    }
+
+    public void setCategoryTemplate(String categoryTemplate)
+    {
+        this.categoryTemplate = categoryTemplate;
+    }
+
+    public String getUncategorizedTemplate()
+    {
+        return uncategorizedTemplate;
+    }
+
+    public void setUncategorizedTemplate(String uncategorizedTemplate)
+    {
+        this.uncategorizedTemplate = uncategorizedTemplate;
+    }
+
+    public String getChangeTemplate()
+    {
+        return changeTemplate;
+    }
+
+    public void setChangeTemplate(String changeTemplate)
+    {
+        this.changeTemplate = changeTemplate;
+    }
+
+    public String getFooterTemplate()
+    {
+        return footerTemplate;
+    }
+
+    public void setFooterTemplate(String footerTemplate)
+    {
+        this.footerTemplate = footerTemplate;
+    }
+
+    /**
+     * @return a hash of the categories and exclude labels, anything that changes how changes are written
+     */
+    public String getConfigHash()
+    {
+        StringBuilder config = new StringBuilder();
+        if (categories != null)
+        {
+            for (Category category : categories)
+            {
+                config.append(category.getTitle()).append('\n');
+                config.append(category.getLabels()).append('\n');
+            }
+        }
+        config.append(excludeLabels).append('\n');
+        // Only when set, so drafts written with the default layout keep their hash
+        if (headerTemplate != null || categoryTemplate != null || uncategorizedTemplate != null || changeTemplate != null || footerTemplate != null)
+        {
+            config.append(headerTemplate).append('\n');
+            config.append(categoryTemplate).append('\n');
+            config.append(uncategorizedTemplate).append('\n');
+            config.append(changeTemplate).append('\n');
+            config.append(footerTemplate).append('\n');
+        }
+
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(config.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hash = new StringBuilder();
+            for (int i = 0; i < 8; i++)
+            {
+                hash.append(String.format("%02x", digest[i]));
+            }
+            return hash.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
     @Override
     public String toString()
     {
@@ -66,6 +170,11 @@ public class ReleaseDraft
 
     public static ReleaseDraft load(InputStream inputStream)
         throws IOException
+    {
+        return YAML.get().load( inputStream );
+    }
+
+    private static Yaml newYaml()
     {
         Constructor constructor = new Constructor(ReleaseDraft.class);
         TypeDescription typeDescription = new TypeDescription( ReleaseDraft.class );
@@ -74,9 +183,18 @@ public class ReleaseDraft
         typeDescription.setPropertyUtils(propertyUtils);
         typeDescription.substituteProperty( "exclude-labels", List.class,
                                             "getExcludeLabels", "setExcludeLabels");
+        typeDescription.substituteProperty( "header-template", String.class,
+                                            "getHeaderTemplate", "setHeaderTemplate");
+        typeDescription.substituteProperty( "category-template", String.class,
+                                            "getCategoryTemplate", "setCategoryTemplate");
+        typeDescription.substituteProperty( "uncategorized-template", String.class,
+                                            "getUncategorizedTemplate", "setUncategorizedTemplate");
+        typeDescription.substituteProperty( "change-template", String.class,
+                                            "getChangeTemplate", "setChangeTemplate");
+        typeDescription.substituteProperty( "footer-template", String.class,
+                                            "getFooterTemplate", "setFooterTemplate");
         constructor.addTypeDescription(typeDescription);
         constructor.setPropertyUtils(propertyUtils);
-        Yaml yaml = new Yaml(constructor);
-        return yaml.load( inputStream );
+        return new Yaml(constructor);
     }
 }
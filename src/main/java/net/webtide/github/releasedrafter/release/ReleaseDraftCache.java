@@ -0,0 +1,245 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.release;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import net.webtide.github.releasedrafter.NameUtil;
+import org.kohsuke.github.GHContent;
+import org.kohsuke.github.GHEventPayload;
+import org.kohsuke.github.GHFileNotFoundException;
+import org.kohsuke.github.GHRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The parsed release draft configurations.
+ * <ul>
+ *     <li>A configuration is parsed once per blob SHA, a ref that points to the same file again
+ *     (eg: every branch of a repository) reuses it.</li>
+ *     <li>A missing configuration (the bundled default is used) is remembered for {@code missingTtl},
+ *     so the 404 isn't paid on every lookup. A push that touches the configuration path forgets it.</li>
+ *     <li>The bundled {@code release-config.yml} is parsed once per process.</li>
+ * </ul>
+ * <p>
+ * The cached {@link ReleaseDraft} instances are shared, they must not be modified.
+ * </p>
+ */
+public class ReleaseDraftCache
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ReleaseDraftCache.class);
+    public static final String DEFAULT_PATH = ".github/release-config.yml";
+    public static final long DEFAULT_MISSING_TTL = TimeUnit.MINUTES.toMillis(10);
+    // Blob SHAs are only added when a configuration changes, this is just a guard
+    private static final int MAX_PARSED = 256;
+    private static final ReleaseDraftCache DEFAULT = new ReleaseDraftCache(DEFAULT_MISSING_TTL, System::currentTimeMillis);
+
+    private final long missingTtl;
+    private final LongSupplier clock;
+    private final Map<String, ReleaseDraft> parsed = new ConcurrentHashMap<>();
+    private final Map<String, Long> missing = new ConcurrentHashMap<>();
+    private final LongAdder parseCount = new LongAdder();
+
+    /**
+     * @param missingTtl how long (in milliseconds) a missing configuration is remembered
+     * @param clock the current time, in milliseconds
+     */
+    public ReleaseDraftCache(long missingTtl, LongSupplier clock)
+    {
+        this.missingTtl = missingTtl;
+        this.clock = clock;
+    }
+
+    /**
+     * @return the cache shared by the process
+     */
+    public static ReleaseDraftCache getDefault()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * @return the bundled {@code release-config.yml}, parsed on first use (or null if not bundled)
+     */
+    public static ReleaseDraft getBundled()
+    {
+        return Bundled.RELEASE_DRAFT;
+    }
+
+    /**
+     * Get the configuration of a repository.
+     *
+     * @param repo the repository
+     * @param path the path of the configuration in the repository
+     * @param ref the branch (or tag, or sha) to read the configuration at
+     * @return the configuration, or the bundled default if the repository doesn't have one
+     */
+    public ReleaseDraft get(GHRepository repo, String path, String ref) throws IOException
+    {
+        String key = toKey(repo.getFullName(), path, ref);
+        Long until = missing.get(key);
+        if (until != null)
+        {
+            if (clock.getAsLong() < until)
+            {
+                LOG.debug("Known missing: {}", key);
+                return getBundled();
+            }
+            missing.remove(key, until);
+        }
+
+        try
+        {
+            LOG.info("get releaseDraft {}, {}", path, ref);
+            GHContent content = repo.getFileContent(path, ref);
+            if (content.isFile())
+            {
+                ReleaseDraft releaseDraft = parsed.get(content.getSha());
+                if (releaseDraft != null)
+                    return releaseDraft;
+
+                try (InputStream input = content.read())
+                {
+                    releaseDraft = ReleaseDraft.load(input);
+                }
+                parseCount.increment();
+                // An empty file loads as null, not worth caching
+                if (releaseDraft != null)
+                {
+                    if (parsed.size() >= MAX_PARSED)
+                        parsed.clear();
+                    parsed.put(content.getSha(), releaseDraft);
+                }
+                return releaseDraft;
+            }
+        }
+        catch (GHFileNotFoundException e)
+        {
+            // Not found in GitHub, use default
+            LOG.debug("Not found on github: {}", path);
+            missing.put(key, clock.getAsLong() + missingTtl);
+        }
+        return getBundled();
+    }
+
+    /**
+     * Test if a repository has a configuration (the lookup is cached as by {@link #get(GHRepository, String, String)}).
+     *
+     * @param repo the repository
+     * @param path the path of the configuration in the repository
+     * @param ref the branch (or tag, or sha) to look for the configuration at
+     * @return true if the configuration is there
+     */
+    public boolean exists(GHRepository repo, String path, String ref) throws IOException
+    {
+        get(repo, path, ref);
+        Long until = missing.get(toKey(repo.getFullName(), path, ref));
+        return until == null || clock.getAsLong() >= until;
+    }
+
+    /**
+     * Forget the missing configurations of the pushed ref, if the push touched the configuration.
+     *
+     * @param push the push event
+     * @param path the path of the configuration in the repository
+     * @return true if the push touched the configuration (or might have)
+     */
+    public boolean onPush(GHEventPayload.Push push, String path)
+    {
+        List<GHEventPayload.Push.PushCommit> commits = push.getCommits();
+        // The payload only lists the first 20 commits, don't trust a partial list
+        boolean touched = push.isForced() || commits == null || push.getSize() > commits.size();
+        if (!touched)
+        {
+            for (GHEventPayload.Push.PushCommit commit : commits)
+            {
+                if (contains(commit.getAdded(), path) || contains(commit.getModified(), path) || contains(commit.getRemoved(), path))
+                {
+                    touched = true;
+                    break;
+                }
+            }
+        }
+        if (touched)
+            invalidate(push.getRepository().getFullName(), path, push.getRef());
+        return touched;
+    }
+
+    /**
+     * Forget that the configuration is missing at a ref.
+     *
+     * @param repoName the full name of the repository
+     * @param path the path of the configuration in the repository
+     * @param ref the ref
+     */
+    public void invalidate(String repoName, String path, String ref)
+    {
+        if (missing.remove(toKey(repoName, path, ref)) != null)
+            LOG.debug("Invalidated missing {} at {}", path, ref);
+    }
+
+    /**
+     * @return the number of configurations parsed (not counting the bundled one)
+     */
+    public long getParseCount()
+    {
+        return parseCount.sum();
+    }
+
+    private static boolean contains(Collection<String> paths, String path)
+    {
+        return paths != null && paths.contains(path);
+    }
+
+    private static String toKey(String repoName, String path, String ref)
+    {
+        // refs/heads/x and x are the same lookup
+        return repoName + ":" + path + "@" + NameUtil.toBranchName(ref);
+    }
+
+    private static class Bundled
+    {
+        private static final ReleaseDraft RELEASE_DRAFT = load();
+
+        private static ReleaseDraft load()
+        {
+            URL url = ReleaseDraftCache.class.getClassLoader().getResource("release-config.yml");
+            if (url == null)
+                return null;
+            try (InputStream input = url.openStream())
+            {
+                return ReleaseDraft.load(input);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.release;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.kohsuke.github.GHRelease;
+import org.kohsuke.github.GHRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The releases of a repository, indexed in a single pass over the release list.
+ * <ul>
+ *     <li>target commitish to its latest published release, and to its active draft</li>
+ *     <li>name and tag name (case insensitive) to the release</li>
+ * </ul>
+ * <p>
+ * "Latest" is by version ({@link VersionComparator} on the tag name), not by the order the API lists them in,
+ * so a patch release of an older line published last doesn't become the previous release of a newer line.
+ * Releases with the same version (eg: drafts, which all have an {@code unset-*} tag) are ordered newest first.
+ * </p>
+ */
+public class ReleaseIndex
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ReleaseIndex.class);
+
+    /**
+     * Greatest version first, then newest first.
+     */
+    public static final Comparator<GHRelease> LATEST_FIRST = Comparator
+        .comparing((GHRelease release) -> release.getTagName(), Comparator.nullsFirst(VersionComparator.INSTANCE))
+        .thenComparing(ReleaseIndex::getDate, Comparator.nullsFirst(Comparator.naturalOrder()))
+        .thenComparingLong(GHRelease::getId)
+        .reversed();
+
+    private final List<GHRelease> releases;
+    private final Map<String, GHRelease> lastReleases = new HashMap<>();
+    private final Map<String, GHRelease> activeDrafts = new HashMap<>();
+    private final Map<String, GHRelease> byName = new HashMap<>();
+    private final Map<String, GHRelease> byTagName = new HashMap<>();
+
+    public ReleaseIndex(Iterable<GHRelease> releases)
+    {
+        List<GHRelease> list = new ArrayList<>();
+        releases.forEach(list::add);
+        list.sort(LATEST_FIRST);
+        this.releases = Collections.unmodifiableList(list);
+
+        // Latest first, so the first one seen for a key wins
+        for (GHRelease release : this.releases)
+        {
+            String target = release.getTargetCommitish();
+            if (target != null)
+                (release.isDraft() ? activeDrafts : lastReleases).putIfAbsent(target, release);
+            if (release.getName() != null)
+                byName.putIfAbsent(toKey(release.getName()), release);
+            if (release.getTagName() != null)
+                byTagName.putIfAbsent(toKey(release.getTagName()), release);
+        }
+    }
+
+    /**
+     * Index the releases of the repository, with one scan of its release list.
+     */
+    public static ReleaseIndex build(GHRepository repo) throws IOException
+    {
+        long start = System.nanoTime();
+        try (Stream<GHRelease> releases = GHReleaseFinder.streamFrom(repo))
+        {
+            ReleaseIndex index = new ReleaseIndex(releases::iterator);
+            LOG.debug("Indexed {} releases of {} in {} ms", index.size(), repo.getFullName(), (System.nanoTime() - start) / 1_000_000);
+            return index;
+        }
+    }
+
+    private static Date getDate(GHRelease release)
+    {
+        try
+        {
+            // getPublished_at() fails on a draft (it copies a null date)
+            return release.isDraft() ? release.getCreatedAt() : release.getPublished_at();
+        }
+        catch (IOException | NullPointerException e)
+        {
+            return null;
+        }
+    }
+
+    private static String toKey(String value)
+    {
+        return value.toLowerCase(Locale.ENGLISH);
+    }
+
+    public int size()
+    {
+        return releases.size();
+    }
+
+    /**
+     * @return all the releases (and drafts), latest first
+     */
+    public List<GHRelease> getReleases()
+    {
+        return releases;
+    }
+
+    /**
+     * @param targetCommitish the target commitish (eg: {@code refs/heads/jetty-10.0.x})
+     * @return the latest published (non-draft) release on the commitish, or null if there is none
+     */
+    public GHRelease getLastRelease(String targetCommitish)
+    {
+        return lastReleases.get(targetCommitish);
+    }
+
+    /**
+     * @param targetCommitish the target commitish (eg: {@code refs/heads/jetty-10.0.x})
+     * @return the latest draft on the commitish, or null if there is none
+     */
+    public GHRelease getActiveDraft(String targetCommitish)
+    {
+        return activeDrafts.get(targetCommitish);
+    }
+
+    /**
+     * @return the release with the name (case insensitive), or null if there is none
+     */
+    public GHRelease getByName(String name)
+    {
+        return (name != null) ? byName.get(toKey(name)) : null;
+    }
+
+    /**
+     * @return the release with the tag name (case insensitive), or null if there is none
+     */
+    public GHRelease getByTagName(String tagName)
+    {
+        return (tagName != null) ? byTagName.get(toKey(tagName)) : null;
+    }
+}
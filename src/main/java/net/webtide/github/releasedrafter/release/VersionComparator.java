@@ -0,0 +1,122 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter.release;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Orders version strings (eg: release tags) by their numbers, not their characters.
+ * <p>
+ * {@code jetty-10.0.10} comes after {@code jetty-10.0.9}, and a pre-release
+ * ({@code alpha}, {@code beta}, {@code M}, {@code rc}, {@code SNAPSHOT}) comes before its release:
+ * {@code 10.0.0.beta3 < 10.0.0.RC0 < 10.0.0}.
+ * </p>
+ */
+public class VersionComparator implements Comparator<String>
+{
+    public static final VersionComparator INSTANCE = new VersionComparator();
+
+    private static final List<String> PRE_RELEASES = List.of("alpha", "a", "beta", "b", "milestone", "m", "rc", "cr", "snapshot");
+
+    @Override
+    public int compare(String version1, String version2)
+    {
+        List<Object> tokens1 = tokenize(version1);
+        List<Object> tokens2 = tokenize(version2);
+        int length = Math.min(tokens1.size(), tokens2.size());
+        for (int i = 0; i < length; i++)
+        {
+            int result = compareTokens(tokens1.get(i), tokens2.get(i));
+            if (result != 0)
+                return result;
+        }
+        if (tokens1.size() == tokens2.size())
+            return 0;
+        // 10.0.0 > 10.0.0.beta1, 10.0.0.1 > 10.0.0
+        if (tokens1.size() > tokens2.size())
+            return isPreRelease(tokens1.get(length)) ? -1 : 1;
+        return isPreRelease(tokens2.get(length)) ? 1 : -1;
+    }
+
+    private static int compareTokens(Object token1, Object token2)
+    {
+        if (token1 instanceof Long && token2 instanceof Long)
+            return Long.compare((Long)token1, (Long)token2);
+        if (token1 instanceof Long)
+            return isPreRelease(token2) ? 1 : -1;
+        if (token2 instanceof Long)
+            return isPreRelease(token1) ? -1 : 1;
+        int rank1 = PRE_RELEASES.indexOf(token1);
+        int rank2 = PRE_RELEASES.indexOf(token2);
+        if (rank1 >= 0 && rank2 >= 0)
+            return Integer.compare(rank1, rank2);
+        if (rank1 >= 0)
+            return -1;
+        if (rank2 >= 0)
+            return 1;
+        return ((String)token1).compareTo((String)token2);
+    }
+
+    private static boolean isPreRelease(Object token)
+    {
+        return PRE_RELEASES.contains(token);
+    }
+
+    /**
+     * Split into runs of digits (as numbers) and runs of letters (lower case), dropping the separators.
+     */
+    static List<Object> tokenize(String version)
+    {
+        List<Object> tokens = new ArrayList<>();
+        if (version == null)
+            return tokens;
+        int length = version.length();
+        int i = 0;
+        while (i < length)
+        {
+            char c = version.charAt(i);
+            int start = i;
+            if (Character.isDigit(c))
+            {
+                while (i < length && Character.isDigit(version.charAt(i)))
+                {
+                    i++;
+                }
+                String digits = version.substring(start, i);
+                tokens.add(digits.length() > 18 ? Long.MAX_VALUE : Long.parseLong(digits));
+            }
+            else if (Character.isLetter(c))
+            {
+                while (i < length && Character.isLetter(version.charAt(i)))
+                {
+                    i++;
+                }
+                tokens.add(version.substring(start, i).toLowerCase(Locale.ENGLISH));
+            }
+            else
+            {
+                i++;
+            }
+        }
+        return tokens;
+    }
+}
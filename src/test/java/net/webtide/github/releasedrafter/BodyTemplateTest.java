@@ -0,0 +1,137 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import net.webtide.github.releasedrafter.release.BodyRenderer;
+import net.webtide.github.releasedrafter.release.BodyTemplate;
+import net.webtide.github.releasedrafter.release.ReleaseDraft;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class BodyTemplateTest
+{
+    private static final String CONFIG = String.join("\n",
+        "categories:",
+        "  - title: Bugs",
+        "    labels:",
+        "      - bug",
+        "header-template: |",
+        "  # Jetty $COUNT changes",
+        "category-template: '### $TITLE ($COUNT)'",
+        "change-template: '- [$LABELS] $TITLE by @$AUTHOR in #$NUMBER'",
+        "footer-template: 'Thanks to all our $CONTRIBUTORS'",
+        "");
+
+    private static ChangeEntry newChange(int number, String title, String author, String... labels) throws IOException
+    {
+        return new ChangeEntry("https://api.github.com/repos/eclipse/jetty.project/pulls/" + number, number, "eclipse:jetty-10.0.x",
+            title, 1_600_000_000_000L + number, Arrays.asList(labels), "sbordet", author);
+    }
+
+    private static String render(ReleaseDraft releaseDraft, ChangeEntry... changes)
+    {
+        ChangeBuckets buckets = new ChangeBuckets(releaseDraft);
+        buckets.addAll(Arrays.asList(changes));
+        StringWriter body = new StringWriter();
+        try (PrintWriter out = new PrintWriter(body))
+        {
+            BodyRenderer.of(releaseDraft).render(out, buckets);
+        }
+        return body.toString();
+    }
+
+    @Test
+    public void testDefaultLayout() throws IOException
+    {
+        ReleaseDraft releaseDraft = ReleaseDraft.load(new ByteArrayInputStream("categories:\n  - title: Bugs\n    label: bug\n".getBytes(StandardCharsets.UTF_8)));
+        String body = render(releaseDraft,
+            newChange(5100, "Fix NPE", "joakime", "bug"),
+            newChange(5101, "Update to Servlet 5", "gregw", "enhancement"));
+
+        String expected = String.format("## Bugs%n * Fix NPE @joakime (#5100)%n## 1 Changes Found%n * Update to Servlet 5 @gregw (#5101)%n");
+        assertThat(body, is(expected));
+    }
+
+    @Test
+    public void testCustomLayout() throws IOException
+    {
+        ReleaseDraft releaseDraft = ReleaseDraft.load(new ByteArrayInputStream(CONFIG.getBytes(StandardCharsets.UTF_8)));
+        String body = render(releaseDraft,
+            newChange(5100, "Fix NPE", "joakime", "bug", "http"),
+            newChange(5101, "Update to Servlet 5", "gregw"));
+
+        String expected = String.format("# Jetty 2 changes%n" +
+            "### Bugs (1)%n" +
+            "- [bug, http] Fix NPE by @joakime in #5100%n" +
+            "## 1 Changes Found%n" +
+            "- [] Update to Servlet 5 by @gregw in #5101%n" +
+            "Thanks to all our $CONTRIBUTORS%n");
+        assertThat(body, is(expected));
+    }
+
+    @Test
+    public void testReadBack() throws IOException
+    {
+        ReleaseDraft releaseDraft = ReleaseDraft.load(new ByteArrayInputStream(CONFIG.getBytes(StandardCharsets.UTF_8)));
+        String body = render(releaseDraft,
+            newChange(5100, "Fix NPE (again)", "joakime", "bug"),
+            newChange(5101, "Update to Servlet 5", "gregw"));
+
+        DraftCheckpoint checkpoint = DraftCheckpoint.parse(body, releaseDraft, "eclipse:jetty-10.0.x");
+        List<ChangeEntry> entries = checkpoint.getEntries();
+        assertThat("entries", entries.size(), is(2));
+        assertThat("title", entries.get(0).getTitle(), is("Fix NPE (again)"));
+        assertThat("number", entries.get(0).getPullRequestId(), is(5100));
+        assertThat("author", entries.get(0).getAuthor(), is("joakime"));
+        assertThat("category", entries.get(0).getLabels(), contains("bug"));
+        assertThat("uncategorized", entries.get(1).getLabels(), is(Collections.emptyList()));
+
+        Map<BodyTemplate.Placeholder, String> values = BodyTemplate.compile("## $TITLE").match("No heading");
+        assertThat("no match", values, nullValue());
+    }
+
+    @Test
+    public void testCompiledOncePerConfig() throws IOException
+    {
+        ReleaseDraft releaseDraft1 = ReleaseDraft.load(new ByteArrayInputStream(CONFIG.getBytes(StandardCharsets.UTF_8)));
+        ReleaseDraft releaseDraft2 = ReleaseDraft.load(new ByteArrayInputStream(CONFIG.getBytes(StandardCharsets.UTF_8)));
+        assertThat("same config, same renderer", BodyRenderer.of(releaseDraft1), sameInstance(BodyRenderer.of(releaseDraft2)));
+
+        releaseDraft2.setChangeTemplate("- $TITLE");
+        assertThat("other config", BodyRenderer.of(releaseDraft2), not(sameInstance(BodyRenderer.of(releaseDraft1))));
+        assertThat("can't be read back", BodyRenderer.of(releaseDraft2).canReadBack(), is(false));
+        assertThat("checkpoint without entries", DraftCheckpoint.parse("- Fix NPE", releaseDraft2, "eclipse:jetty-10.0.x").getEntries().size(), is(0));
+    }
+}
@@ -0,0 +1,117 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.webtide.github.releasedrafter.release.BodyRenderer;
+import net.webtide.github.releasedrafter.release.BoundedBodyWriter;
+import net.webtide.github.releasedrafter.release.ChangelogAsset;
+import net.webtide.github.releasedrafter.release.ReleaseDraft;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class BoundedBodyWriterTest
+{
+    private static ChangeBuckets newChanges(int count) throws IOException
+    {
+        ChangeBuckets changes = new ChangeBuckets(new ReleaseDraft());
+        for (int number = 1; number <= count; number++)
+        {
+            changes.add(new ChangeEntry("https://api.github.com/repos/eclipse/jetty.project/pulls/" + number, number, "eclipse:jetty-10.0.x",
+                "Fix the handling of request " + number, 1_600_000_000_000L + number, Collections.emptyList(), "sbordet", "joakime"));
+        }
+        return changes;
+    }
+
+    @Test
+    public void testUnderLimit() throws IOException
+    {
+        BoundedBodyWriter body = new BoundedBodyWriter(BoundedBodyWriter.MAX_BODY_LENGTH);
+        try (PrintWriter out = new PrintWriter(body))
+        {
+            BodyRenderer.of(null).render(out, newChanges(10));
+        }
+        assertThat("not truncated", body.isTruncated(), is(false));
+        assertThat("all lines", body.toString().split("\n").length, is(11));
+    }
+
+    @Test
+    public void testTruncatedOnWholeLines() throws IOException
+    {
+        int limit = 10_000;
+        BoundedBodyWriter body = new BoundedBodyWriter(limit);
+        try (PrintWriter out = new PrintWriter(body))
+        {
+            BodyRenderer.of(null).render(out, newChanges(20_000));
+        }
+        assertThat("truncated", body.isTruncated(), is(true));
+        assertThat("bounded", body.getLength(), lessThanOrEqualTo(limit));
+        assertThat("whole lines", body.toString(), endsWith(System.lineSeparator()));
+        int kept = body.toString().split("\n").length;
+        assertThat("all lines accounted", kept + body.getDroppedLines(), is(20_001));
+    }
+
+    @Test
+    public void testEncodedLength()
+    {
+        BoundedBodyWriter body = new BoundedBodyWriter(100);
+        try (PrintWriter out = new PrintWriter(body))
+        {
+            out.print("## 🐛 Bug Fixes\n * café @joakime (#1)");
+        }
+        String expected = "## 🐛 Bug Fixes\n * café @joakime (#1)";
+        assertThat("last line kept on close", body.toString(), is(expected));
+        assertThat("utf-8", body.getEncodedLength(), is((long)expected.getBytes(StandardCharsets.UTF_8).length));
+    }
+
+    @Test
+    public void testChangelogAsset(@TempDir Path dir) throws IOException
+    {
+        ChangeBuckets changes = newChanges(20_000);
+
+        Path markdown = dir.resolve("CHANGELOG.md");
+        new ChangelogAsset(ChangelogAsset.Format.MARKDOWN).write(markdown, BodyRenderer.of(null), changes);
+        List<String> lines = Files.readAllLines(markdown);
+        assertThat("all changes", lines.size(), is(20_001));
+        assertThat("over the body limit", Files.size(markdown), greaterThan((long)BoundedBodyWriter.MAX_BODY_LENGTH));
+
+        Path json = dir.resolve("CHANGELOG.json");
+        ChangelogAsset asset = new ChangelogAsset(ChangelogAsset.Format.of("json"));
+        asset.write(json, BodyRenderer.of(null), changes);
+        JsonNode entries = new ObjectMapper().readTree(json.toFile());
+        assertThat("all changes", entries.size(), is(20_000));
+        assertThat("number", entries.get(0).get("number").asInt(), is(1));
+        assertThat("name", asset.getName("jetty-10.0.x"), is("CHANGELOG-jetty-10.0.x.json"));
+    }
+}
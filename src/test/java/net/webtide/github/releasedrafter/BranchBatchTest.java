@@ -0,0 +1,146 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GitHub;
+import org.kohsuke.github.GitHubBuilder;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+public class BranchBatchTest
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private HttpServer server;
+    private final List<String> writes = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    public void startServer() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/repos/eclipse/jetty.project", (exchange) ->
+        {
+            String path = exchange.getRequestURI().getPath();
+            exchange.getRequestBody().readAllBytes();
+            if (!"GET".equals(exchange.getRequestMethod()))
+                writes.add(exchange.getRequestMethod() + " " + path);
+            Object response;
+            if (path.endsWith("/releases"))
+            {
+                ArrayNode releases = MAPPER.createArrayNode();
+                ObjectNode release = releases.addObject();
+                release.put("id", 1);
+                release.put("tag_name", "unset-jetty-10.0.x");
+                release.put("name", "jetty-10.0.x");
+                release.put("target_commitish", "refs/heads/jetty-10.0.x");
+                release.put("draft", true);
+                release.put("body", "# New Draft for jetty-10.0.x");
+                release.put("created_at", "2020-10-01T10:00:00Z");
+                response = releases;
+            }
+            else if (path.endsWith("/branches"))
+            {
+                ArrayNode branches = MAPPER.createArrayNode();
+                for (String name : new String[]{"dependabot/maven/jetty-10.0.x/junit", "jetty-10.0.x", "jetty-11.0.x"})
+                {
+                    branches.addObject().put("name", name).putObject("commit").put("sha", "49e261a9e014543668539485b65f7bdccbf70bc5");
+                }
+                response = branches;
+            }
+            else
+            {
+                ObjectNode repo = MAPPER.createObjectNode();
+                repo.put("name", "jetty.project");
+                repo.put("full_name", "eclipse/jetty.project");
+                repo.put("url", "http://localhost:" + server.getAddress().getPort() + "/repos/eclipse/jetty.project");
+                repo.putObject("owner").put("login", "eclipse");
+                response = repo;
+            }
+            byte[] body = MAPPER.writeValueAsBytes(response);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    private static boolean matches(String glob, String branch)
+    {
+        return new BranchBatch(null, null, null, glob).matches(branch);
+    }
+
+    @Test
+    public void testGlob()
+    {
+        assertThat(matches("jetty-*.x", "jetty-10.0.x"), is(true));
+        assertThat(matches("jetty-*.x", "jetty-9.4.x"), is(true));
+        assertThat(matches("jetty-*.x", "jetty-10.0.x-fix"), is(false));
+        assertThat(matches("jetty-*.x", "release/jetty-10.0.x"), is(false));
+        assertThat(matches("jetty-9.?.x", "jetty-9.4.x"), is(true));
+        assertThat("dots are literal", matches("jetty-9.4.x", "jetty-9a4.x"), is(false));
+        assertThat(matches("*", "feature/foo"), is(false));
+        assertThat(matches(BranchBatch.ALL_BRANCHES, "feature/foo"), is(true));
+        assertThat(matches("release/**", "release/10/rc"), is(true));
+    }
+
+    @Test
+    public void testOnlyBranchesWithDraft() throws IOException
+    {
+        GitHub github = new GitHubBuilder().withEndpoint("http://localhost:" + server.getAddress().getPort()).build();
+        GHRepository repo = github.getRepository("eclipse/jetty.project");
+
+        try (BranchBatch batch = new BranchBatch(github, repo, repo, BranchBatch.ALL_BRANCHES))
+        {
+            assertThat("branches with a draft", batch.prepare(), contains("jetty-10.0.x"));
+        }
+
+        try (BranchBatch batch = new BranchBatch(github, repo, repo, BranchBatch.ALL_BRANCHES))
+        {
+            batch.setCreateDrafts(true);
+            assertThat("all matching branches", batch.prepare(), contains("dependabot/maven/jetty-10.0.x/junit", "jetty-10.0.x", "jetty-11.0.x"));
+        }
+        assertThat("nothing created", writes, empty());
+    }
+}
@@ -0,0 +1,149 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GitHubBuilder;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class BranchPointTest
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String MERGE_BASE = "49e261a9e014543668539485b65f7bdccbf70bc5";
+    private static final String MERGE_BASE_DATE = "2020-09-15T10:20:30Z";
+
+    private HttpServer server;
+    private final AtomicInteger compareCount = new AtomicInteger();
+
+    @BeforeEach
+    public void startServer() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/repos/eclipse/jetty.project", (exchange) ->
+        {
+            String path = exchange.getRequestURI().getPath();
+            ObjectNode response = MAPPER.createObjectNode();
+            int status = 200;
+            if (path.endsWith("/compare/jetty-10.0.x...jetty-10.0.x-new"))
+            {
+                compareCount.incrementAndGet();
+                response.put("status", "ahead");
+                response.put("ahead_by", 3);
+                response.put("behind_by", 12);
+                response.put("total_commits", 3);
+                response.putObject("base_commit").put("sha", "0000000000000000000000000000000000000000");
+                ObjectNode mergeBase = response.putObject("merge_base_commit");
+                mergeBase.put("sha", MERGE_BASE);
+                mergeBase.putObject("commit").putObject("committer").put("name", "Joakim Erdfelt").put("date", MERGE_BASE_DATE);
+                response.putArray("commits");
+            }
+            else if (path.contains("/compare/"))
+            {
+                compareCount.incrementAndGet();
+                status = 404;
+                response.put("message", "Not Found");
+            }
+            else
+            {
+                response.put("name", "jetty.project");
+                response.put("full_name", "eclipse/jetty.project");
+                response.put("default_branch", "jetty-10.0.x");
+                response.putObject("owner").put("login", "eclipse");
+            }
+            byte[] body = MAPPER.writeValueAsBytes(response);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    private GHRepository getRepository() throws IOException
+    {
+        return new GitHubBuilder().withEndpoint("http://localhost:" + server.getAddress().getPort()).build()
+            .getRepository("eclipse/jetty.project");
+    }
+
+    @Test
+    public void testFind() throws IOException
+    {
+        GHRepository repo = getRepository();
+        BranchPoint branchPoint = BranchPoint.find(repo, "jetty-10.0.x-new", repo.getDefaultBranch());
+
+        assertThat("found", branchPoint, notNullValue());
+        assertThat("parent", branchPoint.getParent(), is("jetty-10.0.x"));
+        assertThat("sha", branchPoint.getSha(), is(MERGE_BASE));
+        assertThat("date", branchPoint.getDate().toInstant(), is(Instant.parse(MERGE_BASE_DATE)));
+        assertThat("compares", compareCount.get(), is(1));
+    }
+
+    @Test
+    public void testNoBranchPoint() throws IOException
+    {
+        GHRepository repo = getRepository();
+        assertThat("default branch", BranchPoint.find(repo, "jetty-10.0.x", "jetty-10.0.x"), nullValue());
+        assertThat("compares", compareCount.get(), is(0));
+        assertThat("no common history", BranchPoint.find(repo, "gh-pages", "jetty-10.0.x"), nullValue());
+    }
+
+    @Test
+    public void testRecordedInDraft() throws IOException
+    {
+        BranchPoint branchPoint = BranchPoint.find(getRepository(), "jetty-10.0.x-new", "jetty-10.0.x");
+        Map<String, String> props = new TreeMap<>();
+        branchPoint.addTo(props);
+
+        StringBuilder body = new StringBuilder();
+        props.forEach((key, value) -> body.append(String.format("[//]: # (%s: %s)%n", key, value)));
+        DraftCheckpoint checkpoint = DraftCheckpoint.parse(body.toString(), null, "eclipse:jetty-10.0.x-new");
+
+        BranchPoint recorded = BranchPoint.fromCheckpoint(checkpoint, "jetty-10.0.x");
+        assertThat("recorded", recorded, notNullValue());
+        assertThat("sha", recorded.getSha(), is(MERGE_BASE));
+        assertThat("date", recorded.getDate(), is(branchPoint.getDate()));
+        assertThat("other parent", BranchPoint.fromCheckpoint(checkpoint, "jetty-9.4.x"), nullValue());
+    }
+}
@@ -0,0 +1,207 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpServer;
+import net.webtide.github.releasedrafter.http.CachingHttpConnector;
+import net.webtide.github.releasedrafter.http.HttpResponseCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.kohsuke.github.HttpConnector;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class CachingHttpConnectorTest
+{
+    private static final String BODY = "{\"name\":\"release-drafter\"}";
+
+    @TempDir
+    public Path cacheDir;
+
+    private HttpServer server;
+    private final AtomicInteger notModifiedCount = new AtomicInteger();
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    @BeforeEach
+    public void startServer() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/repos/", (exchange) ->
+        {
+            requestCount.incrementAndGet();
+            exchange.getResponseHeaders().add("X-RateLimit-Remaining", Integer.toString(5000 - requestCount.get()));
+            if ("\"abc\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match")))
+            {
+                notModifiedCount.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+            }
+            else
+            {
+                byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("ETag", "\"abc\"");
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody())
+                {
+                    out.write(body);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    private String get(HttpConnector connector, String path) throws IOException
+    {
+        return get(connector, path, "token secret");
+    }
+
+    private String get(HttpConnector connector, String path, String authorization) throws IOException
+    {
+        URL url = new URL("http://localhost:" + server.getAddress().getPort() + path);
+        HttpURLConnection connection = connector.connect(url);
+        connection.setRequestMethod("GET");
+        connection.setRequestProperty("Authorization", authorization);
+        assertThat("status", connection.getResponseCode(), is(200));
+        try (InputStream in = connection.getInputStream())
+        {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testConditionalRequestServedFromCache() throws IOException
+    {
+        HttpResponseCache cache = new HttpResponseCache(cacheDir, 1024 * 1024);
+        CachingHttpConnector connector = new CachingHttpConnector(HttpConnector.DEFAULT, cache);
+
+        assertThat("first response", get(connector, "/repos/a/b"), is(BODY));
+        assertThat("second response", get(connector, "/repos/a/b"), is(BODY));
+
+        assertThat("requests", requestCount.get(), is(2));
+        assertThat("304 responses", notModifiedCount.get(), is(1));
+        assertThat("hits", connector.getHits(), is(1L));
+
+        // A fresh cache instance (next run) on the same directory still has the entry
+        CachingHttpConnector nextRun = new CachingHttpConnector(HttpConnector.DEFAULT, new HttpResponseCache(cacheDir, 1024 * 1024));
+        assertThat("next run response", get(nextRun, "/repos/a/b"), is(BODY));
+        assertThat("next run hits", nextRun.getHits(), is(1L));
+    }
+
+    @Test
+    public void testBodyOfEvictedEntry() throws IOException
+    {
+        HttpResponseCache cache = new HttpResponseCache(cacheDir, 1500);
+        Path file = cache.newTempFile();
+        Files.write(file, BODY.getBytes(StandardCharsets.UTF_8));
+        String key = HttpResponseCache.key("http://localhost/a", null, null);
+        cache.put(key, new HttpResponseCache.Entry("http://localhost/a", 200, Collections.emptyMap()), file);
+
+        try (HttpResponseCache.Entry entry = cache.get(key))
+        {
+            // Evicted (by a concurrent put) between the lookup and reading the body,
+            // as the least recently used entry (not on the same millisecond as the put)
+            Files.setLastModifiedTime(cacheDir.resolve(key + ".meta"), FileTime.fromMillis(0));
+            Path big = cache.newTempFile();
+            Files.write(big, new byte[2000]);
+            cache.put(HttpResponseCache.key("http://localhost/b", null, null), new HttpResponseCache.Entry("http://localhost/b", 200, Collections.emptyMap()), big);
+            assertThat("evicted", cache.get(key), nullValue());
+
+            assertThat("body still readable", new String(entry.getContent().readAllBytes(), StandardCharsets.UTF_8), is(BODY));
+        }
+    }
+
+    @Test
+    public void testEntryPerToken() throws IOException
+    {
+        HttpResponseCache cache = new HttpResponseCache(cacheDir, 1024 * 1024);
+        CachingHttpConnector connector = new CachingHttpConnector(HttpConnector.DEFAULT, cache);
+
+        get(connector, "/repos/a/b", "token first");
+        get(connector, "/repos/a/b", "token second");
+
+        assertThat("no validators replayed across tokens", notModifiedCount.get(), is(0));
+        assertThat("hits", connector.getHits(), is(0L));
+        String url = "http://localhost:" + server.getAddress().getPort() + "/repos/a/b";
+        assertThat("first token entry", cache.get(HttpResponseCache.key(url, "token first", null)), notNullValue());
+        assertThat("second token entry", cache.get(HttpResponseCache.key(url, "token second", null)), notNullValue());
+        assertThat("no anonymous entry", cache.get(HttpResponseCache.key(url, null, null)), nullValue());
+    }
+
+    @Test
+    public void testRateLimitHeadersFromLiveResponse() throws IOException
+    {
+        CachingHttpConnector connector = new CachingHttpConnector(HttpConnector.DEFAULT, new HttpResponseCache(cacheDir, 1024 * 1024));
+        get(connector, "/repos/a/b");
+
+        URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/repos/a/b");
+        HttpURLConnection connection = connector.connect(url);
+        connection.setRequestProperty("Authorization", "token secret");
+        assertThat("status", connection.getResponseCode(), is(200));
+        assertThat("live rate limit", connection.getHeaderField("X-RateLimit-Remaining"), is("4998"));
+        assertThat("cached etag", connection.getHeaderField("ETag"), is("\"abc\""));
+        assertThat("no error stream", connection.getErrorStream(), nullValue());
+        connection.getInputStream().close();
+    }
+
+    @Test
+    public void testEviction() throws IOException
+    {
+        long maxSize = 4096;
+        HttpResponseCache cache = new HttpResponseCache(cacheDir, maxSize);
+        byte[] body = new byte[1000];
+        for (int i = 0; i < 10; i++)
+        {
+            Path file = cache.newTempFile();
+            Files.write(file, body);
+            HttpResponseCache.Entry entry = new HttpResponseCache.Entry("http://localhost/" + i, 200,
+                Collections.singletonMap("ETag", Collections.singletonList("\"" + i + "\"")));
+            cache.put(HttpResponseCache.key("http://localhost/" + i, null, null), entry, file);
+        }
+
+        assertThat("size bounded", cache.getSize(), lessThanOrEqualTo(maxSize));
+        cache.get(HttpResponseCache.key("http://localhost/9", null, null)).close();
+        assertThat("oldest evicted", cache.get(HttpResponseCache.key("http://localhost/0", null, null)), nullValue());
+    }
+}
@@ -0,0 +1,155 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import net.webtide.github.releasedrafter.release.Category;
+import net.webtide.github.releasedrafter.release.CategoryIndex;
+import net.webtide.github.releasedrafter.release.ReleaseDraft;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+public class CategoryIndexTest
+{
+    private static final List<String> LABELS = Arrays.asList("bug", "enhancement", "documentation", "dependencies", "test", "build", "wontfix", "question");
+
+    private static ReleaseDraft newReleaseDraft()
+    {
+        ReleaseDraft releaseDraft = new ReleaseDraft();
+        releaseDraft.setCategories(Arrays.asList(
+            newCategory("Bugs", "bug"),
+            newCategory("Enhancements", "enhancement", "build"),
+            newCategory("Documentation", "documentation", "bug"),
+            newCategory("Dependencies", "dependencies")));
+        releaseDraft.setExcludeLabels(new ArrayList<>(Collections.singletonList("wontfix")));
+        return releaseDraft;
+    }
+
+    private static Category newCategory(String title, String... labels)
+    {
+        Category category = new Category();
+        category.setTitle(title);
+        category.setLabels(new ArrayList<>(Arrays.asList(labels)));
+        return category;
+    }
+
+    @Test
+    public void testOrdinal()
+    {
+        CategoryIndex index = CategoryIndex.compile(newReleaseDraft());
+
+        assertThat("first category listing the label", index.ordinalOf(Arrays.asList("documentation", "bug")), is(0));
+        assertThat("config order, not label order", index.ordinalOf(Arrays.asList("build", "documentation")), is(1));
+        assertThat("no category", index.ordinalOf(Arrays.asList("test", "question")), is(CategoryIndex.UNCATEGORIZED));
+        assertThat("no labels", index.ordinalOf(Collections.emptyList()), is(CategoryIndex.UNCATEGORIZED));
+        assertThat("excluded wins", index.ordinalOf(Arrays.asList("bug", "wontfix")), is(CategoryIndex.EXCLUDED));
+        assertThat("no config", CategoryIndex.compile(null).ordinalOf(Collections.singletonList("bug")), is(CategoryIndex.UNCATEGORIZED));
+    }
+
+    @Test
+    public void testManyLabels()
+    {
+        // More labels than bits in a word
+        String[] labels = new String[100];
+        for (int i = 0; i < labels.length; i++)
+        {
+            labels[i] = String.format("area-%03d", i);
+        }
+        ReleaseDraft releaseDraft = newReleaseDraft();
+        List<Category> categories = new ArrayList<>(releaseDraft.getCategories());
+        categories.add(newCategory("Areas", labels));
+        releaseDraft.setCategories(categories);
+        CategoryIndex index = CategoryIndex.compile(releaseDraft);
+
+        assertThat("last label", index.ordinalOf(Arrays.asList("area-099", "test")), is(4));
+        assertThat("earlier category", index.ordinalOf(Arrays.asList("area-099", "dependencies")), is(3));
+        assertThat("not a label of the config", index.ordinalOf(Collections.singletonList("area-100")), is(CategoryIndex.UNCATEGORIZED));
+    }
+
+    @Test
+    public void testBucketingManyChanges() throws IOException
+    {
+        ReleaseDraft releaseDraft = newReleaseDraft();
+        int count = 20_000;
+        Random random = new Random(42);
+        List<ChangeEntry> changes = new ArrayList<>(count);
+        for (int number = 1; number <= count; number++)
+        {
+            List<String> labels = new ArrayList<>();
+            for (int l = random.nextInt(3); l > 0; l--)
+            {
+                labels.add(LABELS.get(random.nextInt(LABELS.size())));
+            }
+            changes.add(new ChangeEntry("https://api.github.com/repos/eclipse/jetty.project/pulls/" + number, number, "eclipse:jetty-10.0.x",
+                "PR " + number, 1_600_000_000_000L + random.nextInt(1_000_000_000), labels, "joakime", "sbordet"));
+        }
+
+        ChangeBuckets buckets = new ChangeBuckets(releaseDraft);
+        buckets.addAll(changes);
+        int written = buckets.getUncategorized().size();
+        for (int i = 0; i < buckets.getCategories().size(); i++)
+        {
+            written += buckets.getChanges(i).size();
+        }
+
+        // Same result as checking every category of every change
+        int expectedExcluded = 0;
+        int[] expected = new int[buckets.getCategories().size() + 1];
+        for (ChangeEntry change : changes)
+        {
+            if (!Collections.disjoint(change.getLabels(), releaseDraft.getExcludeLabels()))
+            {
+                expectedExcluded++;
+                continue;
+            }
+            int category = expected.length - 1;
+            for (int i = 0; i < releaseDraft.getCategories().size(); i++)
+            {
+                if (!Collections.disjoint(change.getLabels(), releaseDraft.getCategories().get(i).getLabels()))
+                {
+                    category = i;
+                    break;
+                }
+            }
+            expected[category]++;
+        }
+        assertThat("excluded", buckets.getExcludedCount(), is(expectedExcluded));
+        assertThat("written", written, is(count - expectedExcluded));
+        for (int i = 0; i < buckets.getCategories().size(); i++)
+        {
+            assertThat(buckets.getCategories().get(i).getTitle(), buckets.getChanges(i).size(), is(expected[i]));
+        }
+        assertThat("uncategorized", buckets.getUncategorized().size(), is(expected[expected.length - 1]));
+
+        List<ChangeEntry> bugs = buckets.getChanges(0);
+        for (int i = 1; i < bugs.size(); i++)
+        {
+            assertThat("oldest first", bugs.get(i - 1).getDate().compareTo(bugs.get(i).getDate()), lessThan(1));
+        }
+    }
+}
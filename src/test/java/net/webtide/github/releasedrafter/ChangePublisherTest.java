@@ -0,0 +1,217 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import net.webtide.github.releasedrafter.discovery.ChangePublisher;
+import net.webtide.github.releasedrafter.discovery.ChangeSubscriber;
+import net.webtide.github.releasedrafter.release.Category;
+import net.webtide.github.releasedrafter.release.ReleaseDraft;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChangePublisherTest
+{
+    private static ChangeEntry newChange(int number, String... labels)
+    {
+        return new ChangeEntry("https://api.github.com/repos/eclipse/jetty.project/pulls/" + number, number, "eclipse:jetty-10.0.x",
+            "PR " + number, 1_600_000_000_000L + number, Arrays.asList(labels), "joakime", "sbordet");
+    }
+
+    @Test
+    public void testChangesArriveBeforeTheScanEnds() throws Exception
+    {
+        CountDownLatch firstReceived = new CountDownLatch(1);
+        CountDownLatch scanEnded = new CountDownLatch(1);
+        ChangePublisher publisher = new ChangePublisher((sink) ->
+        {
+            sink.accept(newChange(1));
+            try
+            {
+                // eg: waiting on the next page
+                assertTrue(firstReceived.await(5, TimeUnit.SECONDS), "first change received while scanning");
+            }
+            catch (InterruptedException e)
+            {
+                throw new IOException(e);
+            }
+            sink.accept(newChange(2));
+            scanEnded.countDown();
+        });
+
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        ChangeSubscriber subscriber = new ChangeSubscriber()
+        {
+            @Override
+            protected void onChange(ChangeEntry change)
+            {
+                received.add(change.getPullRequestId());
+                firstReceived.countDown();
+            }
+        };
+        publisher.subscribe(subscriber);
+        subscriber.await();
+
+        assertThat("scan ended", scanEnded.getCount(), is(0L));
+        assertThat("received", received, contains(1, 2));
+    }
+
+    @Test
+    public void testBackPressure() throws Exception
+    {
+        AtomicInteger produced = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ChangePublisher publisher = new ChangePublisher((sink) ->
+        {
+            for (int number = 1; number <= 1000; number++)
+            {
+                sink.accept(newChange(number));
+                produced.incrementAndGet();
+            }
+        }, 16);
+
+        AtomicInteger consumed = new AtomicInteger();
+        ChangeSubscriber subscriber = new ChangeSubscriber()
+        {
+            @Override
+            protected void onChange(ChangeEntry change)
+            {
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    throw new IllegalStateException(e);
+                }
+                consumed.incrementAndGet();
+            }
+        };
+        publisher.subscribe(subscriber);
+
+        TimeUnit.MILLISECONDS.sleep(500);
+        assertThat("producer held back by the slow subscriber", produced.get(), lessThan(100));
+
+        release.countDown();
+        subscriber.await();
+        assertThat("all consumed", consumed.get(), is(1000));
+    }
+
+    @Test
+    public void testCancelStopsTheProducer() throws Exception
+    {
+        AtomicInteger produced = new AtomicInteger();
+        CountDownLatch stopped = new CountDownLatch(1);
+        ChangePublisher publisher = new ChangePublisher((sink) ->
+        {
+            try
+            {
+                for (int number = 1; number <= 100_000; number++)
+                {
+                    sink.accept(newChange(number));
+                    produced.incrementAndGet();
+                }
+            }
+            finally
+            {
+                stopped.countDown();
+            }
+        }, 16);
+
+        AtomicInteger consumed = new AtomicInteger();
+        ChangeSubscriber subscriber = new ChangeSubscriber()
+        {
+            @Override
+            protected void onChange(ChangeEntry change)
+            {
+                if (consumed.incrementAndGet() == 10)
+                    cancel();
+            }
+        };
+        publisher.subscribe(subscriber);
+        subscriber.await();
+
+        assertTrue(stopped.await(5, TimeUnit.SECONDS), "producer stopped");
+        assertThat("stopped early", produced.get(), lessThan(1000));
+    }
+
+    @Test
+    public void testFailure()
+    {
+        ChangePublisher publisher = new ChangePublisher((sink) ->
+        {
+            sink.accept(newChange(1));
+            throw new IOException("Bad credentials");
+        });
+        ChangeBuckets buckets = new ChangeBuckets((ReleaseDraft)null);
+        publisher.subscribe(buckets);
+        IOException failure = assertThrows(IOException.class, buckets::await);
+        assertThat(failure.getMessage(), is("Bad credentials"));
+    }
+
+    @Test
+    public void testBuckets() throws IOException
+    {
+        ReleaseDraft releaseDraft = new ReleaseDraft();
+        Category bugs = new Category();
+        bugs.setTitle("Bugs");
+        bugs.setLabel("bug");
+        Category enhancements = new Category();
+        enhancements.setTitle("Enhancements");
+        enhancements.setLabel("enhancement");
+        releaseDraft.setCategories(Arrays.asList(bugs, enhancements));
+
+        ChangeBuckets buckets = new ChangeBuckets(releaseDraft);
+        new ChangePublisher((sink) ->
+        {
+            sink.accept(newChange(3, "enhancement"));
+            sink.accept(newChange(1, "bug", "enhancement"));
+            sink.accept(newChange(2));
+            sink.accept(newChange(4, "enhancement"));
+            // Relabeled since
+            sink.accept(newChange(4, "bug"));
+        }).subscribe(buckets);
+        buckets.await();
+
+        assertThat("size", buckets.size(), is(4));
+        assertThat("bugs, oldest first", numbers(buckets.getChanges(0)), contains(1, 4));
+        assertThat("enhancements", numbers(buckets.getChanges(1)), contains(3));
+        assertThat("uncategorized", numbers(buckets.getUncategorized()), contains(2));
+    }
+
+    private static List<Integer> numbers(List<ChangeEntry> changes)
+    {
+        return changes.stream().map(ChangeEntry::getPullRequestId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,195 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpServer;
+import net.webtide.github.releasedrafter.discovery.ChangeDiscovery;
+import net.webtide.github.releasedrafter.discovery.ChangeWindow;
+import net.webtide.github.releasedrafter.discovery.CompareChangeDiscovery;
+import net.webtide.github.releasedrafter.discovery.PullRequestNumbers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GitHubBuilder;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Runs the compare discovery against a local stand-in for the repository and compare APIs.
+ */
+public class CompareChangeDiscoveryTest
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private HttpServer server;
+    private final AtomicInteger compareCount = new AtomicInteger();
+    private int totalCommits = 6;
+
+    @BeforeEach
+    public void startServer() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/repos/eclipse/jetty.project", (exchange) ->
+        {
+            ObjectNode response = MAPPER.createObjectNode();
+            if (exchange.getRequestURI().getPath().contains("/compare/"))
+            {
+                compareCount.incrementAndGet();
+                response.put("status", "ahead");
+                response.put("ahead_by", totalCommits);
+                response.put("behind_by", 0);
+                response.put("total_commits", totalCommits);
+                response.putObject("base_commit").put("sha", "0000000000000000000000000000000000000000");
+                response.putObject("merge_base_commit").put("sha", "0000000000000000000000000000000000000000");
+                ArrayNode commits = response.putArray("commits");
+                commit(commits, "1111111111111111111111111111111111111111", "Merge pull request #101 from someone/fix-101\n\nFix things");
+                commit(commits, "2222222222222222222222222222222222222222", "Improve the thing (#102)");
+                commit(commits, "3333333333333333333333333333333333333333", "Commit from a rebase merge");
+                commit(commits, "4444444444444444444444444444444444444444", "Commit pushed directly");
+                commit(commits, "5555555555555555555555555555555555555555", "Merge branch 'jetty-9.4.x' into jetty-10.0.x");
+                commit(commits, "6666666666666666666666666666666666666666", "Another (#102) change (#103)");
+            }
+            else
+            {
+                response.put("name", "jetty.project");
+                response.put("full_name", "eclipse/jetty.project");
+                response.putObject("owner").put("login", "eclipse");
+            }
+            byte[] body = MAPPER.writeValueAsBytes(response);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    private static void commit(ArrayNode commits, String sha, String message)
+    {
+        ObjectNode commit = commits.addObject();
+        commit.put("sha", sha);
+        commit.putObject("commit").put("message", message);
+    }
+
+    @AfterEach
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    private GHRepository getRepository() throws IOException
+    {
+        return new GitHubBuilder().withEndpoint("http://localhost:" + server.getAddress().getPort()).build()
+            .getRepository("eclipse/jetty.project");
+    }
+
+    private static ChangeWindow newWindow(String baseRef)
+    {
+        ChangeWindow window = new ChangeWindow("jetty-10.0.x", new Date(0), new Date());
+        window.setBaseRef(baseRef);
+        window.setHeadSha("6666666666666666666666666666666666666666");
+        return window;
+    }
+
+    @Test
+    public void testPullRequestNumberFromMessage()
+    {
+        assertThat(PullRequestNumbers.fromCommitMessage("Merge pull request #5432 from jetty/jetty-10.0.x-fix\n\nbody (#1)"), is(5432));
+        assertThat(PullRequestNumbers.fromCommitMessage("Fix the frobnicator (#5433)"), is(5433));
+        assertThat(PullRequestNumbers.fromCommitMessage("Fix the frobnicator (#5433)\n\n* first commit (#12)"), is(5433));
+        assertThat(PullRequestNumbers.fromCommitMessage("Issue #5434 - Fix the frobnicator"), is(-1));
+        assertThat(PullRequestNumbers.fromCommitMessage("Merge branch 'jetty-9.4.x' into jetty-10.0.x"), is(-1));
+        assertThat(PullRequestNumbers.fromCommitMessage(null), is(-1));
+    }
+
+    @Test
+    public void testCompare() throws IOException
+    {
+        List<Integer> hydrated = new ArrayList<>();
+        List<String> associated = new ArrayList<>();
+        ChangeDiscovery fallback = (window) ->
+        {
+            throw new AssertionError("fallback used");
+        };
+        CompareChangeDiscovery discovery = new CompareChangeDiscovery(getRepository(),
+            (numbers) ->
+            {
+                hydrated.addAll(numbers);
+                return Collections.emptyList();
+            },
+            (branch, shas) ->
+            {
+                associated.addAll(shas);
+                return Collections.singletonMap("3333333333333333333333333333333333333333", 99);
+            },
+            fallback);
+
+        discovery.findChanges(newWindow("jetty-10.0.0"));
+
+        assertThat("compare requests", compareCount.get(), is(1));
+        assertThat("looked up", associated, contains("3333333333333333333333333333333333333333",
+            "4444444444444444444444444444444444444444", "5555555555555555555555555555555555555555"));
+        assertThat("hydrated", hydrated, contains(101, 102, 103, 99));
+    }
+
+    @Test
+    public void testFallback() throws IOException
+    {
+        List<ChangeWindow> fallbackWindows = new ArrayList<>();
+        CompareChangeDiscovery discovery = new CompareChangeDiscovery(getRepository(),
+            (numbers) ->
+            {
+                throw new AssertionError("nothing to hydrate");
+            },
+            null,
+            (window) ->
+            {
+                fallbackWindows.add(window);
+                return Collections.emptyList();
+            });
+
+        // No previous release
+        assertThat(discovery.findChanges(newWindow(null)), is(empty()));
+        assertThat("no compare", compareCount.get(), is(0));
+
+        // More commits than the compare API lists
+        totalCommits = 300;
+        assertThat(discovery.findChanges(newWindow("jetty-10.0.0")), is(empty()));
+        assertThat("compare", compareCount.get(), is(1));
+        assertThat("fallback used", fallbackWindows.size(), is(2));
+    }
+}
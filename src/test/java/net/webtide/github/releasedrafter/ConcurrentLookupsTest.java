@@ -0,0 +1,104 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConcurrentLookupsTest
+{
+    @Test
+    public void testOverlap() throws IOException
+    {
+        long start = System.nanoTime();
+        try (ConcurrentLookups lookups = new ConcurrentLookups())
+        {
+            Future<String> releases = lookups.submit("releases", () ->
+            {
+                Thread.sleep(300);
+                return "releases";
+            });
+            Future<String> headCommit = lookups.submit("head commit", () ->
+            {
+                Thread.sleep(300);
+                return "head";
+            });
+            Future<String> config = lookups.submit("config", () ->
+            {
+                Thread.sleep(300);
+                return "config";
+            });
+            assertThat(lookups.get(releases), is("releases"));
+            assertThat(lookups.get(headCommit), is("head"));
+            assertThat(lookups.get(config), is("config"));
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertThat("the longest, not the sum", elapsed, lessThan(800L));
+    }
+
+    @Test
+    public void testFailureCancelsSiblings() throws Exception
+    {
+        IOException failure = new IOException("releases not found");
+        CountDownLatch interrupted = new CountDownLatch(1);
+        try (ConcurrentLookups lookups = new ConcurrentLookups())
+        {
+            Future<String> slow = lookups.submit("head commit", () ->
+            {
+                try
+                {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                    return "head";
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted.countDown();
+                    throw e;
+                }
+            });
+            Future<String> failing = lookups.submit("releases", () ->
+            {
+                Thread.sleep(50);
+                throw failure;
+            });
+
+            // Whichever is waited on first, the failure is the one thrown
+            IOException thrown = assertThrows(IOException.class, () -> lookups.get(slow));
+            assertThat(thrown, sameInstance(failure));
+            thrown = assertThrows(IOException.class, () -> lookups.get(failing));
+            assertThat(thrown, sameInstance(failure));
+            assertTrue(interrupted.await(5, TimeUnit.SECONDS), "sibling interrupted");
+            assertTrue(slow.isCancelled(), "sibling cancelled");
+
+            Future<String> late = lookups.submit("config", () -> "config");
+            assertThat(assertThrows(IOException.class, () -> lookups.get(late)), sameInstance(failure));
+        }
+    }
+}
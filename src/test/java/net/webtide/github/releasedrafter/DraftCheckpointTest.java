@@ -0,0 +1,179 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import net.webtide.github.releasedrafter.release.BodyRenderer;
+import net.webtide.github.releasedrafter.release.ReleaseDraft;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+public class DraftCheckpointTest
+{
+    private static final String BODY = String.join("\n",
+        "## :mosquito: Bugs",
+        " * Fix the (nested) frobnicator @joakime (#5)",
+        " * Another fix @sbordet (#3)",
+        "## 1 Changes Found",
+        " * Unlabeled change @null (#4)",
+        "",
+        "[//]: # (Release refs/heads/jetty-10.0.x)",
+        "[//]: # (config.hash: 0123456789abcdef)",
+        "[//]: # (dateTo: 2020-10-01T12:00:00Z)",
+        "[//]: # (lastRelease.tagName: jetty-10.0.0)",
+        "[//]: # (push.headCommit: 1111111111111111111111111111111111111111)",
+        "");
+
+    private static ReleaseDraft loadDefaultConfig() throws IOException
+    {
+        try (InputStream input = DraftCheckpointTest.class.getClassLoader().getResourceAsStream("release-config.yml"))
+        {
+            return ReleaseDraft.load(input);
+        }
+    }
+
+    @Test
+    public void testParse() throws IOException
+    {
+        DraftCheckpoint checkpoint = DraftCheckpoint.parse(BODY, loadDefaultConfig(), "eclipse:jetty-10.0.x");
+
+        assertThat("complete", checkpoint.isComplete(), is(true));
+        assertThat("head", checkpoint.get(DraftCheckpoint.HEAD_COMMIT), is("1111111111111111111111111111111111111111"));
+        assertThat("tag", checkpoint.get(DraftCheckpoint.LAST_RELEASE_TAG), is("jetty-10.0.0"));
+        assertThat("dateTo", checkpoint.getDateTo().toInstant().toString(), is("2020-10-01T12:00:00Z"));
+
+        List<ChangeEntry> entries = checkpoint.getEntries();
+        assertThat("numbers", entries.stream().map(ChangeEntry::getPullRequestId).collect(Collectors.toList()), contains(5, 3, 4));
+        assertThat("title", entries.get(0).getTitle(), is("Fix the (nested) frobnicator"));
+        assertThat("author", entries.get(0).getAuthor(), is("joakime"));
+        assertThat("category labels", entries.get(0).getLabels(), contains("bug"));
+        assertThat("no author", entries.get(2).getAuthor(), nullValue());
+        assertThat("no category", entries.get(2).getLabels().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testNoCheckpoint()
+    {
+        DraftCheckpoint checkpoint = DraftCheckpoint.parse("# New Draft for jetty-10.0.x", null, "eclipse:jetty-10.0.x");
+        assertThat("complete", checkpoint.isComplete(), is(false));
+
+        // Written with Date.toString() by older versions
+        checkpoint = DraftCheckpoint.parse(BODY.replace("2020-10-01T12:00:00Z", "Thu Oct 01 12:00:00 UTC 2020"), null, "eclipse:jetty-10.0.x");
+        assertThat("complete", checkpoint.isComplete(), is(false));
+
+        // The changes were not all found (eg: rate limit reserve reached)
+        checkpoint = DraftCheckpoint.parse(BODY + "[//]: # (changes.incomplete: true)\n", null, "eclipse:jetty-10.0.x");
+        assertThat("complete", checkpoint.isComplete(), is(false));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        ReleaseDraft config = loadDefaultConfig();
+        ChangeBuckets found = new ChangeBuckets(config);
+        found.add(new ChangeEntry(null, 7, "eclipse:jetty-10.0.x", "Later fix", 3000L, Arrays.asList("bug"), null, "sbordet"));
+        found.add(new ChangeEntry(null, 42, "eclipse:jetty-10.0.x", "Earlier fix", 1000L, Arrays.asList("bug"), null, "joakime"));
+        found.add(new ChangeEntry(null, 3, "eclipse:jetty-10.0.x", "Unlabeled", 2000L, Collections.emptyList(), null, "gregw"));
+        found.add(new ChangeEntry(null, 11, "eclipse:jetty-10.0.x", "Feature", 4000L, Arrays.asList("enhancement"), null, "lorban"));
+        found.add(new ChangeEntry(null, 19, "eclipse:jetty-10.0.x", "Last fix", 5000L, Arrays.asList("bug"), null, "olamy"));
+        String body = render(config, found);
+
+        // Read back, the entries all have the same date
+        DraftCheckpoint checkpoint = DraftCheckpoint.parse(body, config, "eclipse:jetty-10.0.x");
+        assertThat("numbers", checkpoint.getEntries().stream().map(ChangeEntry::getPullRequestId).collect(Collectors.toList()),
+            contains(11, 42, 7, 19, 3));
+        ChangeBuckets readBack = new ChangeBuckets(config);
+        readBack.addAll(checkpoint.getEntries());
+        String again = render(config, readBack);
+        assertThat("same body", again, is(body));
+        assertThat("same hash", BodyRenderer.hash(again, Collections.emptyMap()), is(BodyRenderer.hash(body, Collections.emptyMap())));
+    }
+
+    @Test
+    public void testReadBackLabels() throws IOException
+    {
+        ReleaseDraft config = loadDefaultConfig();
+        config.setChangeTemplate(" * $TITLE [$LABELS] (#$NUMBER)");
+        ChangeBuckets found = new ChangeBuckets(config);
+        found.add(new ChangeEntry(null, 10, "eclipse:jetty-10.0.x", "Fix", 1000L, Arrays.asList("bug", "documentation"), null, "joakime"));
+        found.add(new ChangeEntry(null, 11, "eclipse:jetty-10.0.x", "Unlabeled", 2000L, Collections.emptyList(), null, "gregw"));
+
+        List<ChangeEntry> entries = DraftCheckpoint.parse(render(config, found), config, "eclipse:jetty-10.0.x").getEntries();
+        assertThat("labels", entries.get(0).getLabels(), contains("bug", "documentation"));
+        assertThat("no labels", entries.get(1).getLabels().isEmpty(), is(true));
+    }
+
+    private static String render(ReleaseDraft config, ChangeBuckets changes)
+    {
+        StringWriter body = new StringWriter();
+        try (PrintWriter out = new PrintWriter(body))
+        {
+            BodyRenderer.of(config).render(out, changes);
+        }
+        return body.toString();
+    }
+
+    @Test
+    public void testConfigHash() throws IOException
+    {
+        ReleaseDraft config = loadDefaultConfig();
+        String hash = config.getConfigHash();
+        assertThat("stable", loadDefaultConfig().getConfigHash(), is(hash));
+
+        config.getExcludeLabels().add("wontfix");
+        assertThat("changed", config.getConfigHash(), not(hash));
+    }
+
+    @Test
+    public void testBodyHash()
+    {
+        DraftCheckpoint checkpoint = DraftCheckpoint.parse(BODY, null, "eclipse:jetty-10.0.x");
+        String body = BODY.substring(0, BODY.indexOf("[//]"));
+        Map<String, String> markers = new TreeMap<>(checkpoint.getProps());
+        markers.keySet().removeIf(DraftCheckpoint::isVolatile);
+        String hash = BodyRenderer.hash(body, markers);
+
+        // A later push, without new changes
+        Map<String, String> later = new TreeMap<>(checkpoint.getProps());
+        later.put(DraftCheckpoint.HEAD_COMMIT, "2222222222222222222222222222222222222222");
+        later.put(DraftCheckpoint.DATE_TO, "2020-10-02T12:00:00Z");
+        later.put(DraftCheckpoint.BODY_HASH, hash);
+        later.keySet().removeIf(DraftCheckpoint::isVolatile);
+        assertThat("same", BodyRenderer.hash(body.replace("\n", "\r\n"), later), is(hash));
+
+        assertThat("new change", BodyRenderer.hash(body + " * New change @gregw (#7)\n", markers), not(hash));
+        markers.put(DraftCheckpoint.LAST_RELEASE_TAG, "jetty-10.0.1");
+        assertThat("new release", BodyRenderer.hash(body, markers), not(hash));
+    }
+}
@@ -0,0 +1,181 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpServer;
+import net.webtide.github.releasedrafter.http.HttpClientConnector;
+import net.webtide.github.releasedrafter.release.DraftJanitor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GitHubBuilder;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+public class DraftJanitorTest
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private HttpServer server;
+    private final List<String> writes = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    public void startServer() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/repos/eclipse/jetty.project", (exchange) ->
+        {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            exchange.getRequestBody().readAllBytes();
+            Object response;
+            int status = 200;
+            if (!"GET".equals(method))
+            {
+                writes.add(method + " " + path.substring(path.indexOf("/releases")));
+                if ("DELETE".equals(method))
+                {
+                    exchange.sendResponseHeaders(204, -1);
+                    exchange.close();
+                    return;
+                }
+                response = release(3, "unset-jetty-10.0.x", "refs/heads/jetty-10.0.x", true, "# Changelog");
+            }
+            else if (path.endsWith("/releases"))
+            {
+                ArrayNode releases = MAPPER.createArrayNode();
+                // Racing pushes, the newest one is still the placeholder
+                releases.add(release(4, "unset-jetty-10.0.x", "refs/heads/jetty-10.0.x", true, "# New Draft for jetty-10.0.x"));
+                releases.add(release(3, "unset-jetty-10.0.x", "refs/heads/jetty-10.0.x", true, "# Changelog"));
+                // Branch deleted after its last release
+                releases.add(release(2, "unset-jetty-9.3.x", "refs/heads/jetty-9.3.x", true, "# Changelog"));
+                releases.add(release(1, "jetty-9.3.30.v20211001", "refs/heads/jetty-9.3.x", false, ""));
+                // Not a branch
+                releases.add(release(0, "unset-sha", "0123456789abcdef0123456789abcdef01234567", true, ""));
+                releases.add(release(5, "unset-jetty-10.0.1", "jetty-10.0.1", true, "# Changelog"));
+                response = releases;
+            }
+            else if (path.endsWith("/branches"))
+            {
+                ArrayNode branches = MAPPER.createArrayNode();
+                branches.addObject().put("name", "jetty-10.0.x").putObject("commit").put("sha", "49e261a9e014543668539485b65f7bdccbf70bc5");
+                response = branches;
+            }
+            else
+            {
+                ObjectNode repo = MAPPER.createObjectNode();
+                repo.put("name", "jetty.project");
+                repo.put("full_name", "eclipse/jetty.project");
+                repo.put("url", "http://localhost:" + server.getAddress().getPort() + "/repos/eclipse/jetty.project");
+                repo.putObject("owner").put("login", "eclipse");
+                response = repo;
+            }
+            byte[] body = MAPPER.writeValueAsBytes(response);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    private static ObjectNode release(long id, String tag, String target, boolean draft, String body)
+    {
+        ObjectNode release = MAPPER.createObjectNode();
+        release.put("id", id);
+        release.put("tag_name", tag);
+        release.put("name", tag);
+        release.put("target_commitish", target);
+        release.put("draft", draft);
+        release.put("body", body);
+        release.put("created_at", "2020-0" + (id + 3) + "-01T10:00:00Z");
+        if (!draft)
+            release.put("published_at", "2020-0" + (id + 3) + "-02T10:00:00Z");
+        return release;
+    }
+
+    private GHRepository getRepository() throws IOException
+    {
+        // The JDK connection can't PATCH
+        return new GitHubBuilder().withEndpoint("http://localhost:" + server.getAddress().getPort())
+            .withConnector(new HttpClientConnector())
+            .build()
+            .getRepository("eclipse/jetty.project");
+    }
+
+    @Test
+    public void testDryRun() throws IOException
+    {
+        GHRepository repo = getRepository();
+        DraftJanitor.Report report = new DraftJanitor(repo, repo, true).run();
+
+        List<String> actions = report.getActions().stream()
+            .map((action) -> action.getKind() + ":" + action.getRelease().getId())
+            .collect(Collectors.toList());
+        assertThat("actions", actions, containsInAnyOrder("DUPLICATE:3", "MERGED:4", "ORPHANED:2"));
+        assertThat("to delete", report.getDeleteCount(), is(2L));
+        assertThat("nothing written", writes, empty());
+    }
+
+    @Test
+    public void testDelete() throws IOException
+    {
+        GHRepository repo = getRepository();
+        DraftJanitor.Report report = new DraftJanitor(repo, repo, false).run();
+
+        assertThat("deleted", report.getDeleteCount(), is(2L));
+        assertThat("merged first, then deleted", writes.get(0), is("PATCH /releases/4"));
+        assertThat("deletes", writes.subList(1, writes.size()), containsInAnyOrder("DELETE /releases/3", "DELETE /releases/2"));
+    }
+
+    @Test
+    public void testMaxDeletes() throws IOException
+    {
+        GHRepository repo = getRepository();
+        DraftJanitor janitor = new DraftJanitor(repo, repo, false);
+        janitor.setMaxDeletes(1);
+        DraftJanitor.Report report = janitor.run();
+
+        assertThat("deleted", report.getDeleteCount(), is(1L));
+        assertThat("one batch", writes.stream().filter((write) -> write.startsWith("DELETE")).collect(Collectors.toList()), contains("DELETE /releases/3"));
+    }
+}
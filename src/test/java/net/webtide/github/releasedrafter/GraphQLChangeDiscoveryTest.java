@@ -0,0 +1,225 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpServer;
+import net.webtide.github.releasedrafter.discovery.ChangeWindow;
+import net.webtide.github.releasedrafter.discovery.GraphQLChangeDiscovery;
+import net.webtide.github.releasedrafter.http.GraphQLClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kohsuke.github.HttpConnector;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Runs the GraphQL discovery against a local stand-in for the GraphQL endpoint.
+ * The stand-in repository has pull requests #1 to #250, #N merged N hours after {@link #EPOCH}
+ * (and last updated one hour later), every 10th one is not merged.
+ */
+public class GraphQLChangeDiscoveryTest
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Instant EPOCH = Instant.parse("2020-06-01T00:00:00Z");
+    private static final int PULL_REQUESTS = 250;
+    private static final Pattern ALIAS = Pattern.compile("pr(\\d+): pullRequest\\(number: (\\d+)\\)");
+
+    private HttpServer server;
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    @BeforeEach
+    public void startServer() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/graphql", (exchange) ->
+        {
+            requestCount.incrementAndGet();
+            JsonNode request = MAPPER.readTree(exchange.getRequestBody());
+            String query = request.path("query").asText();
+            JsonNode variables = request.path("variables");
+
+            ObjectNode repository = MAPPER.createObjectNode();
+            if (query.contains("pullRequests("))
+            {
+                // newest first, cursor is the next number to return
+                int size = variables.path("size").asInt();
+                int next = variables.path("cursor").isTextual() ? Integer.parseInt(variables.path("cursor").asText()) : PULL_REQUESTS;
+                ArrayNode nodes = MAPPER.createArrayNode();
+                int number = next;
+                for (; number > 0 && nodes.size() < size; number--)
+                {
+                    if (isMerged(number))
+                        nodes.add(pullRequest(number));
+                }
+                ObjectNode pullRequests = repository.putObject("pullRequests");
+                pullRequests.putObject("pageInfo")
+                    .put("hasNextPage", number > 0)
+                    .put("endCursor", Integer.toString(number));
+                pullRequests.set("nodes", nodes);
+            }
+            else
+            {
+                Matcher matcher = ALIAS.matcher(query);
+                while (matcher.find())
+                {
+                    int number = Integer.parseInt(matcher.group(2));
+                    if (number <= PULL_REQUESTS)
+                        repository.set("pr" + number, pullRequest(number));
+                    else
+                        repository.putNull("pr" + number);
+                }
+            }
+
+            ObjectNode response = MAPPER.createObjectNode();
+            response.putObject("data").set("repository", repository);
+            byte[] body = MAPPER.writeValueAsBytes(response);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    private static boolean isMerged(int number)
+    {
+        return number % 10 != 0;
+    }
+
+    private static Instant mergedAt(int number)
+    {
+        return EPOCH.plusSeconds(TimeUnit.HOURS.toSeconds(number));
+    }
+
+    private static ObjectNode pullRequest(int number)
+    {
+        ObjectNode node = MAPPER.createObjectNode();
+        node.put("number", number);
+        node.put("title", "Change " + number);
+        node.put("isDraft", false);
+        node.put("merged", isMerged(number));
+        if (isMerged(number))
+            node.put("mergedAt", mergedAt(number).toString());
+        else
+            node.putNull("mergedAt");
+        node.put("updatedAt", mergedAt(number).plusSeconds(3600).toString());
+        node.put("baseRefName", "jetty-10.0.x");
+        node.putObject("baseRepository").putObject("owner").put("login", "eclipse");
+        ArrayNode labels = node.putObject("labels").putArray("nodes");
+        labels.addObject().put("name", "Bug");
+        labels.addObject().put("name", "Build");
+        if (isMerged(number))
+        {
+            ObjectNode mergeCommit = node.putObject("mergeCommit");
+            mergeCommit.put("committedDate", mergedAt(number).toString());
+            mergeCommit.putObject("author").putObject("user").put("login", "author" + number);
+            mergeCommit.putObject("committer").putObject("user").put("login", "web-flow");
+        }
+        else
+        {
+            node.putNull("mergeCommit");
+        }
+        return node;
+    }
+
+    private GraphQLChangeDiscovery newDiscovery() throws IOException
+    {
+        URL endpoint = new URL("http://localhost:" + server.getAddress().getPort() + "/graphql");
+        GraphQLClient client = new GraphQLClient(HttpConnector.DEFAULT, endpoint, "token secret");
+        return new GraphQLChangeDiscovery(client, "eclipse/jetty.project", "https://api.github.com/repos/eclipse/jetty.project");
+    }
+
+    @Test
+    public void testFindChangesInWindow() throws IOException
+    {
+        GraphQLChangeDiscovery discovery = newDiscovery();
+        // #101 .. #240 merged in the window
+        ChangeWindow window = new ChangeWindow("jetty-10.0.x", Date.from(mergedAt(101)), Date.from(mergedAt(240)));
+        List<ChangeEntry> changes = discovery.findChanges(window);
+
+        List<Integer> expected = IntStream.rangeClosed(101, 240)
+            .filter(GraphQLChangeDiscoveryTest::isMerged)
+            .boxed()
+            .sorted((a, b) -> b - a)
+            .collect(Collectors.toList());
+        List<Integer> numbers = changes.stream().map(ChangeEntry::getPullRequestId).collect(Collectors.toList());
+        assertThat("changes", numbers, is(expected));
+        // 225 merged pull requests, 100 per query, stopped once updated before the window
+        assertThat("queries", requestCount.get(), is(2));
+
+        ChangeEntry change = changes.get(0);
+        assertThat("url", change.getPullRequestUrl(), is("https://api.github.com/repos/eclipse/jetty.project/pulls/239"));
+        assertThat("branch", change.getBranch(), is("eclipse:jetty-10.0.x"));
+        assertThat("title", change.getTitle(), is("Change 239"));
+        assertThat("date", change.getDate().toInstant(), is(mergedAt(239)));
+        assertThat("labels", change.getLabels(), contains("bug", "build"));
+        assertThat("author", change.getAuthor(), is("author239"));
+        assertThat("committer", change.getCommitter(), is("web-flow"));
+    }
+
+    @Test
+    public void testHydrateInBatches() throws IOException
+    {
+        GraphQLChangeDiscovery discovery = newDiscovery();
+        List<Integer> numbers = new ArrayList<>();
+        for (int number = 1; number <= 150; number++)
+        {
+            numbers.add(number);
+        }
+        numbers.add(999); // unknown
+        numbers.add(42); // duplicate
+
+        List<ChangeEntry> changes = discovery.hydrate(numbers);
+
+        assertThat("queries", requestCount.get(), is(2));
+        assertThat("merged pull requests", changes.size(), is(135));
+        assertThat("first", changes.get(0).getPullRequestId(), is(1));
+        assertThat("last", changes.get(changes.size() - 1).getPullRequestId(), is(149));
+    }
+}
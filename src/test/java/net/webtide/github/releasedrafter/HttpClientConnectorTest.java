@@ -0,0 +1,115 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpServer;
+import net.webtide.github.releasedrafter.http.HttpClientConnector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HttpClientConnectorTest
+{
+    private HttpServer server;
+
+    @BeforeEach
+    public void startServer() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/echo", (exchange) ->
+        {
+            byte[] request = exchange.getRequestBody().readAllBytes();
+            String reply = exchange.getRequestMethod() + ":" + new String(request, StandardCharsets.UTF_8);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed))
+            {
+                gzip.write(reply.getBytes(StandardCharsets.UTF_8));
+            }
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, compressed.size());
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                compressed.writeTo(out);
+            }
+        });
+        server.createContext("/missing", (exchange) ->
+        {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    private URL url(String path) throws IOException
+    {
+        return new URL("http://localhost:" + server.getAddress().getPort() + path);
+    }
+
+    @Test
+    public void testPatchWithGzipResponse() throws IOException
+    {
+        HttpClientConnector connector = new HttpClientConnector();
+        HttpURLConnection connection = connector.connect(url("/echo"));
+        connection.setRequestMethod("PATCH");
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream())
+        {
+            out.write("{\"body\":\"x\"}".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertThat("status", connection.getResponseCode(), is(200));
+        assertThat("decoded, so no encoding exposed", connection.getHeaderField("Content-Encoding"), nullValue());
+        try (InputStream in = connection.getInputStream())
+        {
+            assertThat("body", new String(in.readAllBytes(), StandardCharsets.UTF_8), is("PATCH:{\"body\":\"x\"}"));
+        }
+    }
+
+    @Test
+    public void testNotFound() throws IOException
+    {
+        HttpClientConnector connector = new HttpClientConnector();
+        HttpURLConnection connection = connector.connect(url("/missing"));
+        assertThat("status", connection.getResponseCode(), is(404));
+        assertThrows(FileNotFoundException.class, connection::getInputStream);
+    }
+}
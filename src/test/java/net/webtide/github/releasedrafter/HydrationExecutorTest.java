@@ -0,0 +1,122 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import net.webtide.github.releasedrafter.discovery.ChangeWindow;
+import net.webtide.github.releasedrafter.discovery.HydrationExecutor;
+import net.webtide.github.releasedrafter.http.RateLimitScheduler;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HydrationExecutorTest
+{
+    @Test
+    public void testOrderAndConcurrency() throws IOException
+    {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        try (HydrationExecutor executor = new HydrationExecutor(4, null))
+        {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 40; i++)
+            {
+                int number = i;
+                futures.add(executor.submit(() ->
+                {
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    // Later tasks complete first
+                    TimeUnit.MILLISECONDS.sleep(40 - number);
+                    inFlight.decrementAndGet();
+                    return (number % 5 == 0) ? null : number;
+                }));
+            }
+
+            List<Integer> results = HydrationExecutor.collect(futures);
+            assertThat("in submission order, without the nulls", results,
+                is(IntStream.range(0, 40).filter((n) -> n % 5 != 0).boxed().collect(Collectors.toList())));
+            assertThat("bounded", maxInFlight.get(), lessThanOrEqualTo(4));
+            assertThat("concurrent", maxInFlight.get(), greaterThan(1));
+        }
+    }
+
+    @Test
+    public void testDirect() throws IOException
+    {
+        try (HydrationExecutor executor = HydrationExecutor.direct())
+        {
+            Thread caller = Thread.currentThread();
+            Future<Boolean> future = executor.submit(() -> Thread.currentThread() == caller);
+            assertThat("in the calling thread", HydrationExecutor.collect(List.of(future)), contains(true));
+        }
+    }
+
+    @Test
+    public void testStopAtBudgetExhausted() throws IOException
+    {
+        try (HydrationExecutor executor = new HydrationExecutor(2, null))
+        {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++)
+            {
+                int number = i;
+                futures.add(executor.submit(() ->
+                {
+                    if (number == 6)
+                        throw new IOException("read refused", new RateLimitScheduler.BudgetExhaustedException("reserved for writes"));
+                    return number;
+                }));
+            }
+            ChangeWindow window = new ChangeWindow("jetty-10.0.x", new Date(0), new Date());
+            assertThat("results before the refused read", HydrationExecutor.collect(futures, window), contains(0, 1, 2, 3, 4, 5));
+            assertThat("window incomplete", window.isIncomplete(), is(true));
+        }
+    }
+
+    @Test
+    public void testFailure() throws IOException
+    {
+        try (HydrationExecutor executor = new HydrationExecutor(2, null))
+        {
+            List<Future<Integer>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> 1));
+            futures.add(executor.submit(() ->
+            {
+                throw new IOException("Not Found");
+            }));
+            IOException failure = assertThrows(IOException.class, () -> HydrationExecutor.collect(futures));
+            assertThat(failure.getMessage(), is("Not Found"));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class LabelSetTest
+{
+    @Test
+    public void testSet()
+    {
+        LabelSet labels = LabelSet.of(Arrays.asList("documentation", "bug"));
+        assertThat("same set", LabelSet.of(Arrays.asList("bug", "documentation", "bug")), is(labels));
+        assertThat("interned", labels.get(0), sameInstance(LabelSet.of(Collections.singletonList(new String("bug"))).get(0)));
+        assertThat("name order", labels, contains("bug", "documentation"));
+        assertThat("as a list", labels, is(Arrays.asList("bug", "documentation")));
+        assertThat("size", labels.size(), is(2));
+        assertThat("contains", labels.contains("bug"), is(true));
+        assertThat("contains", labels.contains("never-seen"), is(false));
+        assertThat("empty", LabelSet.of(Collections.emptyList()), sameInstance(LabelSet.EMPTY));
+        assertThat("empty", LabelSet.EMPTY, is(Collections.emptyList()));
+    }
+
+    @Test
+    public void testIntersects()
+    {
+        List<String> many = new ArrayList<>();
+        for (int i = 0; i < 150; i++)
+        {
+            many.add(String.format("label-%03d", i));
+        }
+        LabelSet all = LabelSet.of(many);
+        assertThat("size", all.size(), is(150));
+        assertThat("last", all.get(149), is("label-149"));
+
+        LabelSet last = LabelSet.of(Collections.singletonList("label-149"));
+        LabelSet other = LabelSet.of(Arrays.asList("bug", "label-000-not"));
+        assertThat("common label", all.intersects(last), is(true));
+        assertThat("common label", last.intersects(all), is(true));
+        assertThat("nothing in common", all.intersects(other), is(false));
+        assertThat("nothing in common", LabelSet.EMPTY.intersects(all), is(false));
+    }
+}
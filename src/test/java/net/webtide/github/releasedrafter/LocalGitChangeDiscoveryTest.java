@@ -0,0 +1,168 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import net.webtide.github.releasedrafter.discovery.ChangeWindow;
+import net.webtide.github.releasedrafter.discovery.CommitGraph;
+import net.webtide.github.releasedrafter.discovery.LocalGitChangeDiscovery;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+
+public class LocalGitChangeDiscoveryTest
+{
+    @TempDir
+    public Path repoDir;
+
+    private String git(String... args) throws IOException, InterruptedException
+    {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.addAll(Arrays.asList(args));
+        Process process = new ProcessBuilder(command)
+            .directory(repoDir.toFile())
+            .redirectErrorStream(true)
+            .start();
+        String output;
+        try (InputStream in = process.getInputStream())
+        {
+            output = new String(in.readAllBytes(), StandardCharsets.UTF_8).trim();
+        }
+        assertThat(command + ": " + output, process.waitFor(), is(0));
+        return output;
+    }
+
+    private void commit(String message) throws IOException, InterruptedException
+    {
+        git("commit", "--allow-empty", "-q", "-m", message);
+    }
+
+    @Test
+    public void testReachable() throws IOException
+    {
+        // a (head) -> b -> d, c (base) -> d -> e ; b and c are siblings
+        String log = String.join("\n",
+            "a\0b\0Merge pull request #3 from x/y",
+            "c\0d\0Other branch",
+            "b\0d\0Change (#2)",
+            "d\0e\0Base",
+            "e\0\0Initial");
+        CommitGraph graph = CommitGraph.parse(new BufferedReader(new StringReader(log)));
+
+        int[] commits = graph.reachable(graph.indexOf("a"), graph.indexOf("c"));
+        List<String> shas = new ArrayList<>();
+        for (int commit : commits)
+        {
+            shas.add(graph.getSha(commit));
+        }
+        assertThat(shas, contains("a", "b"));
+        assertThat(graph.getFirstParent(graph.indexOf("a")), is(graph.indexOf("b")));
+        assertThat(graph.getFirstParent(graph.indexOf("e")), is(-1));
+    }
+
+    @Test
+    public void testLocalHistory() throws IOException, InterruptedException
+    {
+        git("init", "-q");
+        git("config", "user.name", "Test");
+        git("config", "user.email", "test@example.com");
+        git("checkout", "-q", "-b", "jetty-10.0.x");
+        commit("Initial");
+        commit("Released change (#1)");
+        git("tag", "jetty-10.0.0");
+        commit("Squashed change (#2)");
+        git("checkout", "-q", "-b", "feature");
+        commit("Work on the feature");
+        commit("More work on the feature");
+        git("checkout", "-q", "jetty-10.0.x");
+        commit("Pushed directly");
+        git("merge", "-q", "--no-ff", "feature", "-m", "Merge pull request #3 from someone/feature");
+        commit("Rebased change");
+        String head = git("rev-parse", "HEAD");
+        String rebased = head;
+        String pushed = git("rev-parse", "HEAD~2");
+
+        List<Integer> hydrated = new ArrayList<>();
+        List<String> associated = new ArrayList<>();
+        LocalGitChangeDiscovery discovery = new LocalGitChangeDiscovery(repoDir,
+            (numbers) ->
+            {
+                hydrated.addAll(numbers);
+                return Collections.emptyList();
+            },
+            (branch, shas) ->
+            {
+                associated.addAll(shas);
+                return Collections.singletonMap(rebased, 4);
+            },
+            (window) ->
+            {
+                throw new AssertionError("fallback used");
+            });
+
+        ChangeWindow window = new ChangeWindow("jetty-10.0.x", new Date(0), new Date());
+        window.setBaseRef("jetty-10.0.0");
+        window.setHeadSha(head);
+        discovery.findChanges(window);
+
+        assertThat("only first parent commits without a number looked up", associated, contains(rebased, pushed));
+        assertThat("pull requests", hydrated, containsInAnyOrder(2, 3, 4));
+    }
+
+    @Test
+    public void testNotARepository() throws IOException
+    {
+        // git fails on a directory without a repository, as it does without git installed
+        List<ChangeWindow> fallbacks = new ArrayList<>();
+        LocalGitChangeDiscovery discovery = new LocalGitChangeDiscovery(repoDir,
+            (numbers) ->
+            {
+                throw new AssertionError("local history used");
+            },
+            null,
+            (window) ->
+            {
+                fallbacks.add(window);
+                return Collections.emptyList();
+            });
+
+        ChangeWindow window = new ChangeWindow("jetty-10.0.x", new Date(0), new Date());
+        window.setBaseRef("jetty-10.0.0");
+        window.setHeadSha("49e261a9e014543668539485b65f7bdccbf70bc5");
+        discovery.findChanges(window);
+
+        assertThat("fallback used", fallbacks, contains(window));
+    }
+}
@@ -0,0 +1,212 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.webtide.github.releasedrafter.PrefetchingIterable.PrefetchingIterator;
+import org.junit.jupiter.api.Test;
+import org.kohsuke.github.GHException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PrefetchingIterableTest
+{
+    /**
+     * Pages of consecutive numbers, up to {@code total}.
+     */
+    private static class NumberPages implements PrefetchingIterable.Pages<Integer>
+    {
+        private final int pageSize;
+        private final int total;
+        private final long delayMillis;
+        private final AtomicInteger fetched;
+        private int next = 1;
+
+        NumberPages(int pageSize, int total, long delayMillis, AtomicInteger fetched)
+        {
+            this.pageSize = pageSize;
+            this.total = total;
+            this.delayMillis = delayMillis;
+            this.fetched = fetched;
+        }
+
+        @Override
+        public boolean hasNextPage()
+        {
+            return next <= total;
+        }
+
+        @Override
+        public List<Integer> nextPage()
+        {
+            try
+            {
+                TimeUnit.MILLISECONDS.sleep(delayMillis);
+            }
+            catch (InterruptedException e)
+            {
+                throw new GHException("interrupted", e);
+            }
+            List<Integer> page = new ArrayList<>();
+            for (int i = 0; i < pageSize && next <= total; i++)
+            {
+                page.add(next++);
+            }
+            fetched.incrementAndGet();
+            return page;
+        }
+    }
+
+    @Test
+    public void testPagesOverlapProcessing()
+    {
+        AtomicInteger fetched = new AtomicInteger();
+        PageSizeAdvisor advisor = new PageSizeAdvisor("numbers", 10, 10);
+        PrefetchingIterable<Integer> numbers = new PrefetchingIterable<>((pageSize) -> new NumberPages(pageSize, 50, 100, fetched), advisor);
+
+        long start = System.nanoTime();
+        List<Integer> seen = new ArrayList<>();
+        try (PrefetchingIterator<Integer> iterator = numbers.iterator())
+        {
+            while (iterator.hasNext())
+            {
+                int number = iterator.next();
+                seen.add(number);
+                if (number % 10 == 0)
+                    sleep(100); // processing a page takes as long as fetching one
+            }
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat("all seen", seen.size(), is(50));
+        assertThat("in order", seen.subList(0, 3), contains(1, 2, 3));
+        // 5 pages fetched and 5 processed, one after the other would take 1000ms
+        assertThat("overlapped", elapsed, lessThan(900L));
+    }
+
+    @Test
+    public void testCloseCancelsPrefetch() throws Exception
+    {
+        AtomicInteger fetched = new AtomicInteger();
+        CountDownLatch prefetching = new CountDownLatch(2);
+        PageSizeAdvisor advisor = new PageSizeAdvisor("numbers", 10, 10);
+        PrefetchingIterable<Integer> numbers = new PrefetchingIterable<>((pageSize) -> new NumberPages(pageSize, 1000, 0, fetched)
+        {
+            @Override
+            public List<Integer> nextPage()
+            {
+                prefetching.countDown();
+                if (prefetching.getCount() == 0)
+                    sleep(10_000); // the second page never comes
+                return super.nextPage();
+            }
+        }, advisor);
+
+        try (PrefetchingIterator<Integer> iterator = numbers.iterator())
+        {
+            for (int i = 0; i < 3; i++)
+            {
+                iterator.next();
+            }
+            assertTrue(prefetching.await(5, TimeUnit.SECONDS), "second page requested");
+            // Too old, stop early
+        }
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertThat("prefetch cancelled", fetched.get(), is(1));
+    }
+
+    @Test
+    public void testFailure()
+    {
+        PageSizeAdvisor advisor = new PageSizeAdvisor("numbers", 10, 10);
+        PrefetchingIterable<Integer> numbers = new PrefetchingIterable<>((pageSize) -> new NumberPages(pageSize, 100, 0, new AtomicInteger())
+        {
+            @Override
+            public List<Integer> nextPage()
+            {
+                throw new GHException("Failed to retrieve https://api.github.com/repos/eclipse/jetty.project/pulls");
+            }
+        }, advisor);
+
+        try (PrefetchingIterator<Integer> iterator = numbers.iterator())
+        {
+            GHException failure = assertThrows(GHException.class, iterator::hasNext);
+            assertThat(failure.getMessage(), is("Failed to retrieve https://api.github.com/repos/eclipse/jetty.project/pulls"));
+        }
+    }
+
+    @Test
+    public void testAdvisorFollowsConsumption()
+    {
+        PageSizeAdvisor advisor = new PageSizeAdvisor("pulls", 10, 10);
+        assertThat("initial", advisor.getPageSize(), is(10));
+
+        // Scans going through hundreds of items get bigger pages
+        advisor.onScan(400, false);
+        assertThat("bigger pages", advisor.getPageSize(), is(PageSizeAdvisor.MAX_PAGE_SIZE));
+
+        // Scans stopping early get smaller ones again
+        for (int i = 0; i < 15; i++)
+        {
+            advisor.onScan(25, false);
+        }
+        assertThat("smaller pages", advisor.getPageSize(), lessThan(30));
+        assertThat("not below minimum", advisor.getPageSize(), greaterThan(9));
+    }
+
+    @Test
+    public void testAdvisorFollowsLatency()
+    {
+        long roundTrip = TimeUnit.MILLISECONDS.toNanos(200);
+        PageSizeAdvisor small = new PageSizeAdvisor("tags", 30, 10);
+        PageSizeAdvisor big = new PageSizeAdvisor("pulls", 30, 10);
+        for (int size : new int[]{30, 10, 20, 30})
+        {
+            // Tags are ~0.2ms each, pull requests ~15ms each
+            small.onPage(size, roundTrip + (size * TimeUnit.MICROSECONDS.toNanos(200)));
+            big.onPage(size, roundTrip + (size * TimeUnit.MILLISECONDS.toNanos(15)));
+        }
+        assertThat("small items, big pages", small.getPageSize(), is(PageSizeAdvisor.MAX_PAGE_SIZE));
+        // round trip is at most a quarter: 3 * 200 / 15
+        assertThat("big items, smaller pages", big.getPageSize(), is(40));
+    }
+
+    private static void sleep(long millis)
+    {
+        try
+        {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        }
+        catch (InterruptedException e)
+        {
+            throw new GHException("interrupted", e);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.webtide.github.releasedrafter.release.Category;
+import net.webtide.github.releasedrafter.release.ReleaseDraft;
+import org.eclipse.jetty.toolchain.test.MavenTestingUtils;
+import org.junit.jupiter.api.Test;
+import org.kohsuke.github.GHEventPayload;
+import org.kohsuke.github.GitHub;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+public class PullRequestEventTest
+{
+    private static ChangeEntry loadChange() throws IOException
+    {
+        Path eventPath = MavenTestingUtils.getTestResourcePathFile("event-examples/event-pull-request-closed.json");
+        String payload = Files.readString(eventPath);
+        GHEventPayload.PullRequest event = GitHub.offline().parseEventPayload(new StringReader(payload), GHEventPayload.PullRequest.class);
+        assertThat("action", event.getAction(), is("closed"));
+        assertThat("merged", event.getPullRequest().isMerged(), is(true));
+        return ChangeEntryBuilder.fromEvent(event.getPullRequest(), ChangeEntryBuilder.toEventLabels(new ObjectMapper().readTree(payload)));
+    }
+
+    @Test
+    public void testChangeEntryFromEvent() throws IOException
+    {
+        ChangeEntry change = loadChange();
+        assertThat("number", change.getPullRequestId(), is(42));
+        assertThat("url", change.getPullRequestUrl(), is("https://api.github.com/repos/joakime/bogus-repo/pulls/42"));
+        assertThat("branch", change.getBranch(), is("joakime:jetty-10.0.x"));
+        assertThat("title", change.getTitle(), is("Fix the frobnicator"));
+        assertThat("date", change.getDate().toInstant().toString(), is("2020-10-01T12:00:04Z"));
+        assertThat("labels", change.getLabels(), contains("bug", "documentation"));
+        assertThat("author", change.getAuthor(), is("sbordet"));
+        assertThat("committer", change.getCommitter(), is("joakime"));
+    }
+
+    @Test
+    public void testReplaceInDraft() throws IOException
+    {
+        String body = String.join("\n",
+            "## :mosquito: Bugs",
+            " * Other fix @joakime (#44)",
+            " * Fix the frobnicator (first try) @sbordet (#42)",
+            " * Last fix @gregw (#41)",
+            "## :orange_book: Documentation",
+            " * Document the frobnicator @olamy (#45)",
+            "## 1 Changes Found",
+            " * Other change @gregw (#40)",
+            "",
+            "[//]: # (dateTo: 2020-10-01T12:00:00Z)");
+        ReleaseDraft releaseDraft = loadDefaultConfig();
+        DraftCheckpoint checkpoint = DraftCheckpoint.parse(body, releaseDraft, "joakime:jetty-10.0.x");
+
+        // As GithubDraftUpdate.addChange() does
+        ChangeBuckets changeSet = new ChangeBuckets(releaseDraft);
+        changeSet.addAll(checkpoint.getEntries());
+        assertThat("added", changeSet.add(loadChange()), is(true));
+
+        assertThat("size", changeSet.size(), is(5));
+        List<ChangeEntry> bugs = changeSet.getChanges(indexOf(changeSet, ":mosquito: Bugs"));
+        assertThat("bugs", bugs.stream().map(ChangeEntry::getPullRequestId).collect(Collectors.toList()), contains(44, 41, 42));
+        assertThat("replaced", bugs.get(2).getTitle(), is("Fix the frobnicator"));
+        List<ChangeEntry> docs = changeSet.getChanges(indexOf(changeSet, ":orange_book: Documentation"));
+        assertThat("docs", docs.stream().map(ChangeEntry::getPullRequestId).collect(Collectors.toList()), contains(45));
+        assertThat("uncategorized", changeSet.getUncategorized().stream().map(ChangeEntry::getPullRequestId).collect(Collectors.toList()), contains(40));
+    }
+
+    private static ReleaseDraft loadDefaultConfig() throws IOException
+    {
+        try (InputStream input = PullRequestEventTest.class.getClassLoader().getResourceAsStream("release-config.yml"))
+        {
+            return ReleaseDraft.load(input);
+        }
+    }
+
+    private static int indexOf(ChangeBuckets changeSet, String title)
+    {
+        List<Category> categories = changeSet.getCategories();
+        for (int i = 0; i < categories.size(); i++)
+        {
+            if (title.equals(categories.get(i).getTitle()))
+                return i;
+        }
+        throw new IllegalArgumentException(title);
+    }
+}
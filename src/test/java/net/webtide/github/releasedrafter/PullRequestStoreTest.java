@@ -0,0 +1,202 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Date;
+
+import net.webtide.github.releasedrafter.discovery.PullRequestStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class PullRequestStoreTest
+{
+    private static final Instant EPOCH = Instant.parse("2020-06-01T00:00:00Z");
+
+    @TempDir
+    public Path tempDir;
+
+    private static Date updatedAt(int minutes)
+    {
+        return Date.from(EPOCH.plusSeconds(60L * minutes));
+    }
+
+    private static ChangeEntry newEntry(int number, String title) throws IOException
+    {
+        return new ChangeEntry("https://api.github.com/repos/eclipse/jetty.project/pulls/" + number, number, "eclipse:jetty-10.0.x",
+            title, updatedAt(number).getTime(), Arrays.asList("bug", "documentation"), "joakime", null);
+    }
+
+    @Test
+    public void testReload() throws IOException
+    {
+        Path file = tempDir.resolve("pull-requests").resolve("eclipse_jetty.project.prs");
+        try (PullRequestStore store = PullRequestStore.open(file))
+        {
+            store.put(newEntry(1, "Fix the frobnicator"), updatedAt(10), "9a1c3ff0");
+            store.putUnmerged(2, updatedAt(20));
+        }
+
+        try (PullRequestStore store = PullRequestStore.open(file))
+        {
+            assertThat("size", store.size(), is(2));
+            assertThat("watermark", store.getWatermark(), is(updatedAt(20)));
+
+            PullRequestStore.Record record = store.getCurrent(1, updatedAt(10));
+            assertThat("current", record, notNullValue());
+            assertThat("merge sha", record.getMergeSha(), is("9a1c3ff0"));
+            ChangeEntry entry = record.getEntry();
+            assertThat("title", entry.getTitle(), is("Fix the frobnicator"));
+            assertThat("labels", entry.getLabels(), contains("bug", "documentation"));
+            assertThat("date", entry.getDate(), is(updatedAt(1)));
+            assertThat("committer", entry.getCommitter(), is("joakime"));
+            assertThat("author", entry.getAuthor(), nullValue());
+
+            assertThat("updated since", store.getCurrent(1, updatedAt(11)), nullValue());
+            assertThat("unmerged", store.getCurrent(2, updatedAt(20)).isMerged(), is(false));
+            assertThat("unknown", store.getCurrent(3, updatedAt(20)), nullValue());
+        }
+    }
+
+    @Test
+    public void testAppendOnly() throws IOException
+    {
+        Path file = tempDir.resolve("store.prs");
+        try (PullRequestStore store = PullRequestStore.open(file))
+        {
+            for (int number = 1; number <= 100; number++)
+            {
+                store.put(newEntry(number, "PR " + number), updatedAt(number), null);
+            }
+        }
+        long size = Files.size(file);
+
+        try (PullRequestStore store = PullRequestStore.open(file))
+        {
+            // Same updated_at, nothing to write
+            store.put(newEntry(1, "PR 1"), updatedAt(1), null);
+            store.flush();
+            assertThat("unchanged", Files.size(file), is(size));
+
+            store.put(newEntry(1, "PR 1, renamed"), updatedAt(200), null);
+        }
+        long appended = Files.size(file) - size;
+        assertThat("one record appended", appended, greaterThan(0L));
+        assertThat("one record appended", appended, lessThan(size / 50));
+
+        try (PullRequestStore store = PullRequestStore.open(file))
+        {
+            assertThat("last record wins", store.get(1).getEntry().getTitle(), is("PR 1, renamed"));
+            assertThat("size", store.size(), is(100));
+        }
+    }
+
+    @Test
+    public void testCompactOnClose() throws IOException
+    {
+        Path file = tempDir.resolve("store.prs");
+        try (PullRequestStore store = PullRequestStore.open(file))
+        {
+            for (int update = 1; update <= 3; update++)
+            {
+                for (int number = 1; number <= 10; number++)
+                {
+                    store.put(newEntry(number, "PR " + number + " v" + update), updatedAt(100 * update + number), null);
+                }
+            }
+        }
+        long compacted = Files.size(file);
+
+        try (PullRequestStore store = PullRequestStore.open(file))
+        {
+            assertThat("size", store.size(), is(10));
+            assertThat("latest", store.get(10).getEntry().getTitle(), is("PR 10 v3"));
+            store.compact();
+        }
+        assertThat("already compact", Files.size(file), is(compacted));
+    }
+
+    @Test
+    public void testTruncatedRecordIsDropped() throws IOException
+    {
+        Path file = tempDir.resolve("store.prs");
+        try (PullRequestStore store = PullRequestStore.open(file))
+        {
+            store.put(newEntry(1, "PR 1"), updatedAt(1), null);
+            store.put(newEntry(2, "PR 2"), updatedAt(2), null);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE))
+        {
+            channel.truncate(channel.size() - 5);
+        }
+
+        try (PullRequestStore store = PullRequestStore.open(file))
+        {
+            assertThat("size", store.size(), is(1));
+            assertThat("lost record", store.get(2), nullValue());
+            store.put(newEntry(2, "PR 2"), updatedAt(2), null);
+        }
+
+        try (PullRequestStore store = PullRequestStore.open(file))
+        {
+            assertThat("appended after the good records", store.size(), is(2));
+        }
+    }
+
+    @Test
+    public void testCorruptLengthIsDropped() throws IOException
+    {
+        Path file = tempDir.resolve("store.prs");
+        try (PullRequestStore store = PullRequestStore.open(file))
+        {
+            store.put(newEntry(1, "PR 1"), updatedAt(1), null);
+        }
+        long good = Files.size(file);
+
+        for (int length : new int[]{Integer.MAX_VALUE, -1})
+        {
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file, StandardOpenOption.APPEND)))
+            {
+                out.writeInt(length);
+                out.writeInt(2);
+            }
+
+            try (PullRequestStore store = PullRequestStore.open(file))
+            {
+                assertThat("size", store.size(), is(1));
+            }
+            assertThat("truncated", Files.size(file), is(good));
+        }
+    }
+}
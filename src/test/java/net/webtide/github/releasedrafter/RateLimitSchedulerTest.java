@@ -0,0 +1,193 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import net.webtide.github.releasedrafter.http.RateLimitScheduler;
+import net.webtide.github.releasedrafter.http.RequestMeter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kohsuke.github.HttpConnector;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RateLimitSchedulerTest
+{
+    private HttpServer server;
+    private final AtomicInteger remaining = new AtomicInteger(5000);
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    @BeforeEach
+    public void startServer() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        HttpHandler handler = (exchange) ->
+        {
+            requestCount.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            long reset = Instant.now().getEpochSecond() + 3600;
+            exchange.getResponseHeaders().add("X-RateLimit-Limit", "5000");
+            exchange.getResponseHeaders().add("X-RateLimit-Remaining", Integer.toString(remaining.decrementAndGet()));
+            exchange.getResponseHeaders().add("X-RateLimit-Reset", Long.toString(reset));
+            exchange.getResponseHeaders().add("X-RateLimit-Resource", exchange.getRequestURI().getPath().equals("/graphql") ? "graphql" : "core");
+            byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        };
+        server.createContext("/repos/", handler);
+        server.createContext("/graphql", handler);
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    private int request(HttpConnector connector, String method) throws IOException
+    {
+        return request(connector, method, "/repos/a/b/releases/1");
+    }
+
+    private int request(HttpConnector connector, String method, String path) throws IOException
+    {
+        URL url = new URL("http://localhost:" + server.getAddress().getPort() + path);
+        HttpURLConnection connection = connector.connect(url);
+        connection.setRequestMethod(method);
+        if (!"GET".equals(method))
+        {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream())
+            {
+                out.write("{\"body\":\"x\"}".getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        try (InputStream in = connection.getInputStream())
+        {
+            in.readAllBytes();
+        }
+        return status;
+    }
+
+    @Test
+    public void testReadsStopAtReserve() throws IOException
+    {
+        remaining.set(13);
+        RateLimitScheduler scheduler = new RateLimitScheduler(HttpConnector.DEFAULT, 1000, 100, 10);
+
+        // First response tells us 12 remaining, then 11 and 10 are taken by reads
+        assertThat(request(scheduler, "GET"), is(200));
+        assertThat(request(scheduler, "GET"), is(200));
+        assertThat(request(scheduler, "GET"), is(200));
+        IOException failure = assertThrows(IOException.class, () -> request(scheduler, "GET"));
+        assertTrue(RateLimitScheduler.isBudgetExhausted(failure), "budget exhausted");
+        assertThat("refused read not sent", requestCount.get(), is(3));
+
+        // Writes can use the reserve
+        assertThat(request(scheduler, "POST"), is(200));
+        assertThat("write sent", requestCount.get(), is(4));
+        assertThat("reads", scheduler.getReadCount(), is(3L));
+        assertThat("writes", scheduler.getWriteCount(), is(1L));
+        assertThat("remaining", scheduler.getBudget("core").getRemaining(), is(9));
+    }
+
+    @Test
+    public void testGraphQLQueriesAreReads() throws IOException
+    {
+        remaining.set(12);
+        RateLimitScheduler scheduler = new RateLimitScheduler(HttpConnector.DEFAULT, 1000, 100, 10);
+
+        // First response tells us 11 remaining, then 10 is taken by the second query
+        assertThat(request(scheduler, "POST", "/graphql"), is(200));
+        assertThat(request(scheduler, "POST", "/graphql"), is(200));
+        IOException failure = assertThrows(IOException.class, () -> request(scheduler, "POST", "/graphql"));
+        assertTrue(RateLimitScheduler.isBudgetExhausted(failure), "budget exhausted");
+        assertThat("refused query not sent", requestCount.get(), is(2));
+        assertThat("reads", scheduler.getReadCount(), is(2L));
+        assertThat("writes", scheduler.getWriteCount(), is(0L));
+        assertThat("remaining", scheduler.getBudget("graphql").getRemaining(), is(10));
+    }
+
+    @Test
+    public void testPacing() throws IOException
+    {
+        RateLimitScheduler scheduler = new RateLimitScheduler(HttpConnector.DEFAULT, 20, 1, 0);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++)
+        {
+            request(scheduler, "GET");
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // One token up front, then one every 50ms
+        assertThat("paced", elapsed, greaterThanOrEqualTo(190L));
+    }
+
+    @Test
+    public void testRequestMeter() throws Exception
+    {
+        RateLimitScheduler scheduler = new RateLimitScheduler(HttpConnector.DEFAULT, 1000, 100, 0);
+        RequestMeter meter = new RequestMeter("jetty-10.0.x");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            meter.call(() ->
+            {
+                request(scheduler, "GET");
+                request(scheduler, "POST");
+                // Handed to another thread
+                return executor.submit(RequestMeter.wrap(() -> request(scheduler, "GET"))).get();
+            });
+            // Not metered
+            request(scheduler, "GET");
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        assertThat("reads", meter.getReadCount(), is(2L));
+        assertThat("writes", meter.getWriteCount(), is(1L));
+        assertThat("all requests", scheduler.getRequestCount(), is(4L));
+    }
+}
@@ -0,0 +1,183 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpServer;
+import net.webtide.github.releasedrafter.release.ReleaseDraft;
+import net.webtide.github.releasedrafter.release.ReleaseDraftCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kohsuke.github.GHEventPayload;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GitHub;
+import org.kohsuke.github.GitHubBuilder;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class ReleaseDraftCacheTest
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String CONFIG = "exclude-labels:\n  - 'chore'\n";
+
+    private HttpServer server;
+    private GitHub github;
+    private final List<String> contentRequests = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    public void startServer() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/repos/eclipse/jetty.project", (exchange) ->
+        {
+            String path = exchange.getRequestURI().getPath();
+            String query = exchange.getRequestURI().getQuery();
+            exchange.getRequestBody().readAllBytes();
+            ObjectNode response = MAPPER.createObjectNode();
+            int status = 200;
+            if (path.contains("/contents/"))
+            {
+                contentRequests.add(query);
+                if (query.contains("jetty-9.4.x"))
+                {
+                    status = 404;
+                    response.put("message", "Not Found");
+                }
+                else
+                {
+                    // Same file on both branches
+                    response.put("type", "file");
+                    response.put("path", ".github/release-config.yml");
+                    response.put("sha", "3d21ec53a331a6f037a91c368710b99387d012c1");
+                    response.put("encoding", "base64");
+                    response.put("content", Base64.getEncoder().encodeToString(CONFIG.getBytes(StandardCharsets.UTF_8)));
+                }
+            }
+            else
+            {
+                response.put("name", "jetty.project");
+                response.put("full_name", "eclipse/jetty.project");
+                response.put("url", "http://localhost:" + server.getAddress().getPort() + "/repos/eclipse/jetty.project");
+                response.putObject("owner").put("login", "eclipse");
+            }
+            byte[] body = MAPPER.writeValueAsBytes(response);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        });
+        server.start();
+        github = new GitHubBuilder().withEndpoint("http://localhost:" + server.getAddress().getPort()).build();
+    }
+
+    @AfterEach
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    private GHEventPayload.Push push(String ref, String modified) throws IOException
+    {
+        ObjectNode push = MAPPER.createObjectNode();
+        push.put("ref", ref);
+        push.put("size", 1);
+        push.putObject("repository").put("full_name", "eclipse/jetty.project");
+        ObjectNode commit = push.putArray("commits").addObject();
+        commit.put("sha", "49e261a9e014543668539485b65f7bdccbf70bc5");
+        commit.putArray("modified").add(modified);
+        return github.parseEventPayload(new StringReader(MAPPER.writeValueAsString(push)), GHEventPayload.Push.class);
+    }
+
+    @Test
+    public void testParsedOncePerBlob() throws IOException
+    {
+        GHRepository repo = github.getRepository("eclipse/jetty.project");
+        ReleaseDraftCache cache = new ReleaseDraftCache(ReleaseDraftCache.DEFAULT_MISSING_TTL, System::currentTimeMillis);
+
+        ReleaseDraft releaseDraft = cache.get(repo, ReleaseDraftCache.DEFAULT_PATH, "jetty-10.0.x");
+        assertThat("exclude labels", releaseDraft.getExcludeLabels(), contains("chore"));
+        assertThat("same blob", cache.get(repo, ReleaseDraftCache.DEFAULT_PATH, "jetty-11.0.x"), sameInstance(releaseDraft));
+        assertThat("same blob", cache.get(repo, ReleaseDraftCache.DEFAULT_PATH, "refs/heads/jetty-10.0.x"), sameInstance(releaseDraft));
+        assertThat("parsed once", cache.getParseCount(), is(1L));
+        assertThat("still looked up", contentRequests.size(), is(3));
+    }
+
+    @Test
+    public void testMissing() throws IOException
+    {
+        GHRepository repo = github.getRepository("eclipse/jetty.project");
+        AtomicLong now = new AtomicLong();
+        ReleaseDraftCache cache = new ReleaseDraftCache(TimeUnit.MINUTES.toMillis(10), now::get);
+
+        ReleaseDraft bundled = ReleaseDraftCache.getBundled();
+        assertThat("bundled", bundled, notNullValue());
+        assertThat("default", cache.get(repo, ReleaseDraftCache.DEFAULT_PATH, "jetty-9.4.x"), sameInstance(bundled));
+        assertThat("default", cache.get(repo, ReleaseDraftCache.DEFAULT_PATH, "jetty-9.4.x"), sameInstance(bundled));
+        assertThat("404 remembered", contentRequests.size(), is(1));
+
+        // Unrelated push, or push to another branch
+        assertThat("not touched", cache.onPush(push("refs/heads/jetty-9.4.x", "pom.xml"), ReleaseDraftCache.DEFAULT_PATH), is(false));
+        cache.onPush(push("refs/heads/jetty-10.0.x", ReleaseDraftCache.DEFAULT_PATH), ReleaseDraftCache.DEFAULT_PATH);
+        cache.get(repo, ReleaseDraftCache.DEFAULT_PATH, "jetty-9.4.x");
+        assertThat("404 remembered", contentRequests.size(), is(1));
+
+        // The configuration pushed to the branch
+        assertThat("touched", cache.onPush(push("refs/heads/jetty-9.4.x", ReleaseDraftCache.DEFAULT_PATH), ReleaseDraftCache.DEFAULT_PATH), is(true));
+        cache.get(repo, ReleaseDraftCache.DEFAULT_PATH, "jetty-9.4.x");
+        assertThat("looked up again", contentRequests.size(), is(2));
+
+        // Expired
+        now.addAndGet(TimeUnit.MINUTES.toMillis(11));
+        cache.get(repo, ReleaseDraftCache.DEFAULT_PATH, "jetty-9.4.x");
+        assertThat("looked up again", contentRequests.size(), is(3));
+    }
+
+    @Test
+    public void testExists() throws IOException
+    {
+        GHRepository repo = github.getRepository("eclipse/jetty.project");
+        ReleaseDraftCache cache = new ReleaseDraftCache(ReleaseDraftCache.DEFAULT_MISSING_TTL, System::currentTimeMillis);
+
+        assertThat("found", cache.exists(repo, ReleaseDraftCache.DEFAULT_PATH, "jetty-10.0.x"), is(true));
+        assertThat("not found", cache.exists(repo, ReleaseDraftCache.DEFAULT_PATH, "jetty-9.4.x"), is(false));
+        assertThat("404 remembered", cache.exists(repo, ReleaseDraftCache.DEFAULT_PATH, "jetty-9.4.x"), is(false));
+        assertThat("looked up once each", contentRequests.size(), is(2));
+        assertThat("shared with get", cache.get(repo, ReleaseDraftCache.DEFAULT_PATH, "jetty-10.0.x").getExcludeLabels(), contains("chore"));
+        assertThat("parsed once", cache.getParseCount(), is(1L));
+    }
+}
@@ -0,0 +1,178 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpServer;
+import net.webtide.github.releasedrafter.release.GHReleaseFinder;
+import net.webtide.github.releasedrafter.release.ReleaseIndex;
+import net.webtide.github.releasedrafter.release.VersionComparator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kohsuke.github.GHRelease;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GitHubBuilder;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class ReleaseIndexTest
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private HttpServer server;
+    private final AtomicInteger listCount = new AtomicInteger();
+    private final AtomicInteger byTagCount = new AtomicInteger();
+
+    @BeforeEach
+    public void startServer() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/repos/eclipse/jetty.project", (exchange) ->
+        {
+            String path = exchange.getRequestURI().getPath();
+            Object response;
+            int status = 200;
+            if (path.endsWith("/releases"))
+            {
+                listCount.incrementAndGet();
+                // API order: most recently created first
+                ArrayNode releases = MAPPER.createArrayNode();
+                releases.add(release(6, "jetty-9.4.32.v20200930", "refs/heads/jetty-9.4.x", false, "2020-10-01T10:00:00Z"));
+                releases.add(release(5, "unset-jetty-10.0.x", "refs/heads/jetty-10.0.x", true, null));
+                releases.add(release(4, "jetty-10.0.0.beta2", "refs/heads/jetty-10.0.x", false, "2020-09-20T10:00:00Z"));
+                releases.add(release(3, "jetty-10.0.0.beta10", "refs/heads/jetty-10.0.x", false, "2020-09-10T10:00:00Z"));
+                releases.add(release(2, "jetty-9.4.31.v20200723", "refs/heads/jetty-9.4.x", false, "2020-07-23T10:00:00Z"));
+                releases.add(release(1, "unset-jetty-10.0.x", "refs/heads/jetty-10.0.x", true, null));
+                response = releases;
+            }
+            else if (path.endsWith("/releases/tags/jetty-9.4.31.v20200723"))
+            {
+                byTagCount.incrementAndGet();
+                response = release(2, "jetty-9.4.31.v20200723", "refs/heads/jetty-9.4.x", false, "2020-07-23T10:00:00Z");
+            }
+            else if (path.contains("/releases/tags/"))
+            {
+                byTagCount.incrementAndGet();
+                status = 404;
+                response = MAPPER.createObjectNode().put("message", "Not Found");
+            }
+            else
+            {
+                ObjectNode repo = MAPPER.createObjectNode();
+                repo.put("name", "jetty.project");
+                repo.put("full_name", "eclipse/jetty.project");
+                repo.putObject("owner").put("login", "eclipse");
+                response = repo;
+            }
+            byte[] body = MAPPER.writeValueAsBytes(response);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    private static ObjectNode release(long id, String tag, String target, boolean draft, String publishedAt)
+    {
+        ObjectNode release = MAPPER.createObjectNode();
+        release.put("id", id);
+        release.put("tag_name", tag);
+        release.put("name", draft ? tag.substring("unset-".length()) : tag.replace("jetty-", "Jetty "));
+        release.put("target_commitish", target);
+        release.put("draft", draft);
+        release.put("prerelease", false);
+        release.put("created_at", "2020-0" + (id + 3) + "-01T10:00:00Z");
+        if (publishedAt != null)
+            release.put("published_at", publishedAt);
+        return release;
+    }
+
+    private GHRepository getRepository() throws IOException
+    {
+        return new GitHubBuilder().withEndpoint("http://localhost:" + server.getAddress().getPort()).build()
+            .getRepository("eclipse/jetty.project");
+    }
+
+    @Test
+    public void testIndex() throws IOException
+    {
+        ReleaseIndex index = ReleaseIndex.build(getRepository());
+
+        assertThat("one scan", listCount.get(), is(1));
+        assertThat("size", index.size(), is(6));
+        // By version, not by the (publishing) order of the API
+        assertThat("last 10.0.x release", index.getLastRelease("refs/heads/jetty-10.0.x").getTagName(), is("jetty-10.0.0.beta10"));
+        assertThat("last 9.4.x release", index.getLastRelease("refs/heads/jetty-9.4.x").getTagName(), is("jetty-9.4.32.v20200930"));
+        assertThat("no release", index.getLastRelease("refs/heads/jetty-11.0.x"), nullValue());
+        assertThat("newest draft", index.getActiveDraft("refs/heads/jetty-10.0.x").getId(), is(5L));
+        assertThat("no draft", index.getActiveDraft("refs/heads/jetty-9.4.x"), nullValue());
+        assertThat("by name", index.getByName("JETTY 9.4.31.V20200723").getId(), is(2L));
+        assertThat("by tag", index.getByTagName("jetty-10.0.0.beta2").getId(), is(4L));
+        assertThat("no tag", index.getByTagName("jetty-12.0.0"), nullValue());
+        assertThat("still one scan", listCount.get(), is(1));
+    }
+
+    @Test
+    public void testFinderByTag() throws IOException
+    {
+        GHReleaseFinder finder = new GHReleaseFinder(getRepository());
+
+        GHRelease release = finder.findByTagName("jetty-9.4.31.v20200723");
+        assertThat("found", release.getId(), is(2L));
+        assertThat("missing", finder.findByTagName("jetty-12.0.0"), nullValue());
+        assertThat("direct lookups", byTagCount.get(), is(2));
+        assertThat("no scan", listCount.get(), is(0));
+
+        assertThat("by name", finder.findByName("Jetty 10.0.0.beta2").getId(), is(4L));
+        assertThat("missing name", finder.findByName("Jetty 12.0.0"), nullValue());
+        assertThat("one scan", listCount.get(), is(1));
+    }
+
+    @Test
+    public void testVersionOrder()
+    {
+        List<String> versions = Arrays.asList("jetty-10.0.0", "jetty-9.4.9.v20180320", "jetty-10.0.0.beta10", "jetty-10.0.0.alpha1",
+            "jetty-9.4.10.v20180503", "jetty-10.0.0.RC0", "jetty-10.0.0.beta2", "jetty-10.0.1");
+        versions.sort(VersionComparator.INSTANCE);
+        assertThat(versions, contains("jetty-9.4.9.v20180320", "jetty-9.4.10.v20180503", "jetty-10.0.0.alpha1", "jetty-10.0.0.beta2",
+            "jetty-10.0.0.beta10", "jetty-10.0.0.RC0", "jetty-10.0.0", "jetty-10.0.1"));
+    }
+}
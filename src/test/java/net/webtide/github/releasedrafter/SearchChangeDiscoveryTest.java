@@ -0,0 +1,237 @@
+//
+// ========================================================================
+// Copyright (c) Webtide LLC and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package net.webtide.github.releasedrafter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpServer;
+import net.webtide.github.releasedrafter.discovery.ChangeWindow;
+import net.webtide.github.releasedrafter.discovery.PullRequestHydrator;
+import net.webtide.github.releasedrafter.discovery.PullRequestStore;
+import net.webtide.github.releasedrafter.discovery.SearchChangeDiscovery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kohsuke.github.GitHub;
+import org.kohsuke.github.GitHubBuilder;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Runs the search discovery against a local stand-in for the search API.
+ * The stand-in has 2500 merged pull requests, #N merged N minutes after {@link #EPOCH},
+ * every 7th one labeled {@code dependencies}.
+ */
+public class SearchChangeDiscoveryTest
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Instant EPOCH = Instant.parse("2020-06-01T00:00:00Z");
+    private static final int PULL_REQUESTS = 2500;
+    private static final Pattern MERGED = Pattern.compile("merged:(\\S+)\\.\\.(\\S+)");
+
+    private HttpServer server;
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    @BeforeEach
+    public void startServer() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/search/issues", (exchange) ->
+        {
+            requestCount.incrementAndGet();
+            Map<String, String> params = new HashMap<>();
+            for (String param : exchange.getRequestURI().getRawQuery().split("&"))
+            {
+                String[] pair = param.split("=", 2);
+                params.put(pair[0], URLDecoder.decode(pair[1], StandardCharsets.UTF_8));
+            }
+            String query = params.get("q");
+            Matcher matcher = MERGED.matcher(query);
+            matcher.find();
+            Instant from = Instant.parse(matcher.group(1));
+            Instant to = Instant.parse(matcher.group(2));
+            boolean excludeDependencies = query.contains("-label:\"dependencies\"");
+
+            List<Integer> matches = new ArrayList<>();
+            for (int number = PULL_REQUESTS; number > 0; number--)
+            {
+                Instant merged = mergedAt(number);
+                if (merged.isBefore(from) || merged.isAfter(to))
+                    continue;
+                if (excludeDependencies && number % 7 == 0)
+                    continue;
+                matches.add(number);
+            }
+
+            int perPage = Integer.parseInt(params.getOrDefault("per_page", "30"));
+            int page = Integer.parseInt(params.getOrDefault("page", "1"));
+            int start = (page - 1) * perPage;
+            int end = Math.min(Math.min(matches.size(), SearchChangeDiscovery.MAX_RESULTS), start + perPage);
+
+            ObjectNode response = MAPPER.createObjectNode();
+            response.put("total_count", matches.size());
+            response.put("incomplete_results", false);
+            ArrayNode items = response.putArray("items");
+            for (int i = start; i < end; i++)
+            {
+                items.addObject()
+                    .put("number", matches.get(i))
+                    .put("updated_at", mergedAt(matches.get(i)).toString());
+            }
+            if (end < Math.min(matches.size(), SearchChangeDiscovery.MAX_RESULTS))
+            {
+                String next = "http://localhost:" + server.getAddress().getPort() + exchange.getRequestURI().getPath() +
+                    "?" + exchange.getRequestURI().getRawQuery().replaceAll("&page=\\d+", "") + "&page=" + (page + 1);
+                exchange.getResponseHeaders().add("Link", "<" + next + ">; rel=\"next\"");
+            }
+
+            byte[] body = MAPPER.writeValueAsBytes(response);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    private static Instant mergedAt(int number)
+    {
+        return EPOCH.plusSeconds(60L * number);
+    }
+
+    private GitHub connect() throws IOException
+    {
+        return new GitHubBuilder().withEndpoint("http://localhost:" + server.getAddress().getPort()).build();
+    }
+
+    @Test
+    public void testQuery()
+    {
+        String query = SearchChangeDiscovery.toQuery("eclipse/jetty.project", "jetty-10.0.x",
+            EPOCH.getEpochSecond(), EPOCH.getEpochSecond() + 3600, Arrays.asList("dependencies", "won't fix"));
+        assertThat(query, is("repo:eclipse/jetty.project is:pr is:merged base:jetty-10.0.x " +
+            "merged:2020-06-01T00:00:00Z..2020-06-01T01:00:00Z -label:\"dependencies\" -label:\"won't fix\""));
+    }
+
+    @Test
+    public void testSmallWindow() throws IOException
+    {
+        List<Integer> hydrated = new ArrayList<>();
+        SearchChangeDiscovery discovery = new SearchChangeDiscovery(connect(), "eclipse/jetty.project", (numbers) ->
+        {
+            hydrated.addAll(numbers);
+            return Collections.emptyList();
+        });
+
+        ChangeWindow window = new ChangeWindow("jetty-10.0.x", Date.from(mergedAt(101)), Date.from(mergedAt(300)));
+        window.setExcludeLabels(Collections.singletonList("dependencies"));
+        discovery.findChanges(window);
+
+        List<Integer> expected = new ArrayList<>();
+        for (int number = 300; number >= 101; number--)
+        {
+            if (number % 7 != 0)
+                expected.add(number);
+        }
+        assertThat("pull requests", hydrated, is(expected));
+        assertThat("searches", discovery.getSearchCount(), is(1L));
+        assertThat("requests (pages)", requestCount.get(), is(2));
+    }
+
+    @Test
+    public void testLargeWindowIsSplit() throws IOException
+    {
+        List<Integer> hydrated = new ArrayList<>();
+        SearchChangeDiscovery discovery = new SearchChangeDiscovery(connect(), "eclipse/jetty.project", (numbers) ->
+        {
+            hydrated.addAll(numbers);
+            return Collections.emptyList();
+        });
+
+        ChangeWindow window = new ChangeWindow("jetty-10.0.x", Date.from(EPOCH), Date.from(mergedAt(PULL_REQUESTS)));
+        discovery.findChanges(window);
+
+        assertThat("all pull requests", hydrated.size(), is(PULL_REQUESTS));
+        assertThat("no duplicates", hydrated.stream().distinct().count(), is((long)PULL_REQUESTS));
+        assertThat("oldest", hydrated.stream().sorted().collect(Collectors.toList()).get(0), is(1));
+        // 2500 -> 1250 + 1250 -> 4 x 625
+        assertThat("searches", discovery.getSearchCount(), is(7L));
+    }
+
+    @Test
+    public void testStoredPullRequestsAreNotHydratedAgain() throws IOException
+    {
+        List<Integer> hydrated = new ArrayList<>();
+        PullRequestHydrator hydrator = (numbers) ->
+        {
+            hydrated.addAll(numbers);
+            List<ChangeEntry> entries = new ArrayList<>();
+            for (int number : numbers)
+            {
+                entries.add(new ChangeEntry("https://api.github.com/repos/eclipse/jetty.project/pulls/" + number, number,
+                    "eclipse:jetty-10.0.x", "PR " + number, mergedAt(number).toEpochMilli(), Collections.emptyList(), "joakime", "sbordet"));
+            }
+            return entries;
+        };
+        PullRequestStore store = new PullRequestStore();
+
+        ChangeWindow window = new ChangeWindow("jetty-10.0.x", Date.from(mergedAt(101)), Date.from(mergedAt(200)));
+        List<ChangeEntry> first = new SearchChangeDiscovery(connect(), "eclipse/jetty.project", hydrator, store).findChanges(window);
+        assertThat("hydrated", hydrated.size(), is(100));
+        assertThat("stored", store.size(), is(100));
+
+        hydrated.clear();
+        window = new ChangeWindow("jetty-10.0.x", Date.from(mergedAt(151)), Date.from(mergedAt(250)));
+        List<ChangeEntry> second = new SearchChangeDiscovery(connect(), "eclipse/jetty.project", hydrator, store).findChanges(window);
+        assertThat("only the new ones hydrated", hydrated.stream().sorted().collect(Collectors.toList()),
+            is(IntStream.rangeClosed(201, 250).boxed().collect(Collectors.toList())));
+        assertThat("in search order", second.stream().map(ChangeEntry::getPullRequestId).collect(Collectors.toList()),
+            is(IntStream.rangeClosed(151, 250).map((n) -> 401 - n).boxed().collect(Collectors.toList())));
+        assertThat("first", first.size(), is(100));
+    }
+}